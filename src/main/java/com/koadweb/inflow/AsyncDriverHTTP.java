@@ -0,0 +1,299 @@
+package com.koadweb.inflow;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.Gson;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import okio.BufferedSink;
+import org.influxdb.InfluxDB.ConsistencyLevel;
+import org.influxdb.InfluxDB.RetentionPolicy;
+import org.influxdb.InfluxDBHTTPException;
+import org.influxdb.InfluxDBHTTPInterface;
+import org.influxdb.InfluxDBPartialWriteException;
+import org.influxdb.LineProtocolBody;
+import org.influxdb.TimeUtil;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+import retrofit.RetrofitError;
+import retrofit.client.OkClient;
+import retrofit.mime.TypedOutput;
+import retrofit.mime.TypedString;
+
+/**
+ * A DriverHTTP that also sends writes and queries with the async dispatcher of OkHttp.
+ *
+ * The async calls are queued in the Dispatcher of the OkHttpClient and return a ListenableFuture
+ * right away, so callers do not hold a thread while InfluxDB answers. The dispatcher runs at most
+ * maxRequests calls at once, maxRequestsPerHost of them to InfluxDB, and queues the others without
+ * a thread. Query results are parsed with Gson like the blocking queries. Futures complete on the
+ * dispatcher threads, so listeners should be quick or run on their own executor. Cancelling a
+ * future cancels its call.
+ *
+ * The blocking methods of DriverHTTP work as before. Async writes are not retried and lines
+ * rejected in a partial write are not quarantined, the future fails with the exception instead.
+ *
+ */
+public class AsyncDriverHTTP extends DriverHTTP implements AsyncDriverInterface {
+
+  public static final int DEFAULT_MAX_REQUESTS = 64;
+  public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 64;
+
+  private static final MediaType TEXT_PLAIN = MediaType.parse("text/plain");
+
+  protected final OkHttpClient okHttpClient;
+  protected final HttpUrl baseUrl;
+  private final Gson gson = new Gson();
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  public AsyncDriverHTTP(final String uri, final String username, final String password) {
+    this(uri, username, password, newOkHttpClient(), true);
+  }
+
+  /**
+   * @param okHttpClient the client sending the requests, its connection pool is left open on close
+   */
+  public AsyncDriverHTTP(final String uri, final String username, final String password, final OkHttpClient okHttpClient) {
+    this(uri, username, password, okHttpClient, false);
+  }
+
+  private AsyncDriverHTTP(final String uri, final String username, final String password, final OkHttpClient okHttpClient,
+          final boolean ownConnectionPool) {
+    super(uri, username, password, new OkClient(okHttpClient));
+    this.okHttpClient = okHttpClient;
+    this.baseUrl = HttpUrl.parse(uri);
+    Preconditions.checkArgument(this.baseUrl != null, "URI must be a http or https URL");
+    if (ownConnectionPool) {
+      setOwnedConnectionPool(okHttpClient.getConnectionPool());
+    }
+  }
+
+  private static OkHttpClient newOkHttpClient() {
+    OkHttpClient okHttpClient = new OkHttpClient();
+    okHttpClient.setConnectionPool(newConnectionPool());
+    okHttpClient.getDispatcher().setMaxRequests(DEFAULT_MAX_REQUESTS);
+    okHttpClient.getDispatcher().setMaxRequestsPerHost(DEFAULT_MAX_REQUESTS_PER_HOST);
+    return okHttpClient;
+  }
+
+  /**
+   * Wraps the body of a write request for OkHttp.
+   */
+  private static final class WriteBody extends RequestBody {
+
+    private final TypedOutput body;
+
+    WriteBody(final TypedOutput body) {
+      this.body = body;
+    }
+
+    @Override
+    public MediaType contentType() {
+      return TEXT_PLAIN;
+    }
+
+    @Override
+    public long contentLength() {
+      return this.body.length();
+    }
+
+    @Override
+    public void writeTo(final BufferedSink sink) throws IOException {
+      this.body.writeTo(sink.outputStream());
+    }
+  }
+
+  /**
+   * Completes a future with the response of a call.
+   */
+  private abstract class FutureCallback<T> implements Callback {
+
+    final SettableFuture<T> future = SettableFuture.create();
+
+    @Override
+    public void onFailure(final Request request, final IOException e) {
+      AsyncDriverHTTP.this.inFlight.decrementAndGet();
+      // like the RestAdapter of the blocking methods
+      this.future.setException(RetrofitError.networkError(request.urlString(), e));
+    }
+
+    @Override
+    public void onResponse(final Response response) throws IOException {
+      AsyncDriverHTTP.this.inFlight.decrementAndGet();
+      try (ResponseBody body = response.body()) {
+        if (response.code() >= 400) {
+          String error = body.string();
+          InfluxDBPartialWriteException partialWrite = InfluxDBPartialWriteException.parse(response.code(), error);
+          this.future.setException(partialWrite != null ? partialWrite : new InfluxDBHTTPException(response.code(), error));
+        } else {
+          this.future.set(parse(body));
+        }
+      } catch (IOException e) {
+        this.future.setException(RetrofitError.networkError(response.request().urlString(), e));
+      } catch (RuntimeException e) {
+        this.future.setException(RetrofitError.unexpectedError(response.request().urlString(), e));
+      }
+    }
+
+    abstract T parse(ResponseBody body) throws IOException;
+  }
+
+  private <T> ListenableFuture<T> enqueue(final Request request, final FutureCallback<T> callback) {
+    // tagged to cancel the calls of this driver on close
+    final Call call = this.okHttpClient.newCall(request.newBuilder().tag(this).build());
+    callback.future.addListener(new Runnable() {
+      @Override
+      public void run() {
+        if (callback.future.isCancelled()) {
+          call.cancel();
+        }
+      }
+    }, MoreExecutors.directExecutor());
+    this.inFlight.incrementAndGet();
+    call.enqueue(callback);
+    return callback.future;
+  }
+
+  private ListenableFuture<Void> writeBodyAsync(final String database, final RetentionPolicy retentionPolicy,
+          final ConsistencyLevel consistency, final TimeUnit precision, final TypedOutput body) {
+    boolean gzip = isGzipped(body);
+    HttpUrl.Builder url = this.baseUrl.newBuilder().addPathSegment("write");
+    addQueryParameter(url, InfluxDBHTTPInterface.U, this.username);
+    addQueryParameter(url, InfluxDBHTTPInterface.P, this.password);
+    addQueryParameter(url, InfluxDBHTTPInterface.DB, database);
+    addQueryParameter(url, InfluxDBHTTPInterface.RP, retentionPolicy);
+    addQueryParameter(url, InfluxDBHTTPInterface.PRECISION, TimeUtil.toTimePrecision(precision));
+    addQueryParameter(url, InfluxDBHTTPInterface.CONSISTENCY, consistency);
+    Request.Builder request = new Request.Builder().url(url.build()).post(new WriteBody(requestBody(body, gzip)));
+    if (gzip) {
+      request.header(InfluxDBHTTPInterface.CONTENT_ENCODING, "gzip");
+    }
+    return enqueue(request.build(), new FutureCallback<Void>() {
+      @Override
+      Void parse(final ResponseBody body) {
+        // counted once InfluxDB accepted it, like the blocking writes
+        countRequest();
+        return null;
+      }
+    });
+  }
+
+  private ListenableFuture<QueryResult> queryAsync(final Query query, final String epoch) {
+    HttpUrl.Builder url = this.baseUrl.newBuilder().addPathSegment("query");
+    addQueryParameter(url, InfluxDBHTTPInterface.U, this.username);
+    addQueryParameter(url, InfluxDBHTTPInterface.P, this.password);
+    addQueryParameter(url, InfluxDBHTTPInterface.DB, query.getDatabase());
+    addQueryParameter(url, InfluxDBHTTPInterface.EPOCH, epoch);
+    addQueryParameter(url, InfluxDBHTTPInterface.Q, query.getCommand());
+    return enqueue(new Request.Builder().url(url.build()).get().build(), new FutureCallback<QueryResult>() {
+      @Override
+      QueryResult parse(final ResponseBody body) throws IOException {
+        return AsyncDriverHTTP.this.gson.fromJson(body.charStream(), QueryResult.class);
+      }
+    });
+  }
+
+  // like retrofit, null values are left out
+  private static void addQueryParameter(final HttpUrl.Builder url, final String name, final Object value) {
+    if (value != null) {
+      url.addQueryParameter(name, value.toString());
+    }
+  }
+
+  @Override
+  public ListenableFuture<Void> writeAsync(final String database, final RetentionPolicy retentionPolicy,
+          final ConsistencyLevel consistency, final String records) {
+    return writeBodyAsync(database, retentionPolicy, consistency, TimeUnit.NANOSECONDS, new TypedString(records));
+  }
+
+  @Override
+  public ListenableFuture<Void> writeAsync(final String database, final RetentionPolicy retentionPolicy,
+          final ConsistencyLevel consistency, final List<String> records) {
+    return writeBodyAsync(database, retentionPolicy, consistency, TimeUnit.NANOSECONDS,
+            LineProtocolBody.of(records, this.chunkSize));
+  }
+
+  @Override
+  public ListenableFuture<Void> writeAsync(final BatchPoints batchPoints) {
+    return writeBodyAsync(batchPoints.getDatabase(), batchPoints.getRetentionPolicy(), batchPoints.getConsistency(),
+            batchPoints.getPrecision(), LineProtocolBody.of(batchPoints, this.chunkSize, this.seriesKeyCache));
+  }
+
+  @Override
+  public ListenableFuture<QueryResult> queryAsync(final Query query) {
+    return queryAsync(query, (String) null);
+  }
+
+  @Override
+  public ListenableFuture<QueryResult> queryAsync(final Query query, final TimeUnit timeUnit) {
+    return queryAsync(query, TimeUtil.toTimePrecision(timeUnit));
+  }
+
+  /**
+   * The number of calls run at once, the others are queued without a thread.
+   *
+   * @param maxRequests
+   */
+  public void setMaxRequests(final int maxRequests) {
+    this.okHttpClient.getDispatcher().setMaxRequests(maxRequests);
+  }
+
+  /**
+   * The number of calls to InfluxDB run at once, the others are queued without a thread.
+   *
+   * @param maxRequestsPerHost
+   */
+  public void setMaxRequestsPerHost(final int maxRequestsPerHost) {
+    this.okHttpClient.getDispatcher().setMaxRequestsPerHost(maxRequestsPerHost);
+  }
+
+  /**
+   * @return the number of async calls sent or queued and not answered yet
+   */
+  public int getInFlightCount() {
+    return this.inFlight.get();
+  }
+
+  /**
+   * Close like DriverHTTP, after waiting for the async calls in flight. Calls still in flight when
+   * the timeout passes are cancelled.
+   *
+   * @param timeout the time to wait for the queued Points and the requests in flight
+   * @param unit the unit of timeout
+   * @return the number of batched Points written and dropped while closing
+   */
+  @Override
+  public CloseResult close(final long timeout, final TimeUnit unit) throws InflowException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    try {
+      while (this.inFlight.get() > 0 && System.nanoTime() - deadline < 0) {
+        Thread.sleep(10);
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+    if (this.inFlight.get() > 0) {
+      Logger.getLogger(AsyncDriverHTTP.class.getName()).log(Level.WARNING,
+              "Cancelling " + this.inFlight.get() + " async calls in flight");
+      this.okHttpClient.cancel(this);
+    }
+    return super.close(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+  }
+
+}
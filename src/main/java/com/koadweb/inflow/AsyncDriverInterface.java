@@ -0,0 +1,29 @@
+package com.koadweb.inflow;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.influxdb.InfluxDB.ConsistencyLevel;
+import org.influxdb.InfluxDB.RetentionPolicy;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+
+/**
+ * Writes and queries returning right away with a future, instead of blocking the calling thread
+ * until InfluxDB answered. A failed request fails the future with the exception the blocking
+ * method would throw.
+ */
+public interface AsyncDriverInterface {
+
+  public ListenableFuture<Void> writeAsync(final String database, final RetentionPolicy retentionPolicy, final ConsistencyLevel consistency, final String records);
+
+  public ListenableFuture<Void> writeAsync(final String database, final RetentionPolicy retentionPolicy, final ConsistencyLevel consistency, final List<String> records);
+
+  public ListenableFuture<Void> writeAsync(final BatchPoints batchPoints);
+
+  public ListenableFuture<QueryResult> queryAsync(final Query query);
+
+  public ListenableFuture<QueryResult> queryAsync(final Query query, final TimeUnit timeUnit);
+
+}
@@ -1,17 +1,28 @@
 package com.koadweb.inflow;
 
+import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.influxdb.InfluxDB.ConsistencyLevel;
 import org.influxdb.InfluxDB.RetentionPolicy;
 import org.influxdb.dto.BatchPoints;
 import org.influxdb.dto.Point;
@@ -19,17 +30,104 @@ import org.influxdb.dto.Point;
 /**
  * Collects single point writes and aggregates them to BatchPoints for better write performance.
  *
+ * Puts only enqueue the point. When {@code actions} points or {@code flushBytes} estimated bytes
+ * are queued, or the oldest point is older than {@code maxAge}, a flush thread is signalled to
+ * write them, so producers never wait for a write. Points are batched per database, retention
+ * policy, consistency and precision. Batches larger than {@code flushBytes} are split before they
+ * are written. The queue of collected points can be bounded by a number of points and by their
+ * estimated size in bytes. When it is full, the {@link OverflowPolicy} decides what happens to a
+ * new point.
+ *
  * @author stefan.majer [at] gmail.com
  *
  */
-public class BatchProcessor {
+public class BatchProcessor implements AutoCloseable, DriverHTTP.GiveUpHandler {
+
+  /**
+   * What to do with a point that is put while the queue is full.
+   */
+  public enum OverflowPolicy {
+    /**
+     * Wait for space up to the block timeout, then drop the point and throw an InflowException.
+     */
+    BLOCK,
+    /**
+     * Drop the new point.
+     */
+    DROP_NEWEST,
+    /**
+     * Drop the oldest queued points until the new point fits.
+     */
+    DROP_OLDEST,
+    /**
+     * Drop the new point and throw an InflowException.
+     */
+    FAIL
+  }
+
+  /**
+   * The queue implementation collecting the points.
+   */
+  public enum QueueType {
+    /**
+     * A LinkedBlockingQueue, that allocates a node for every point.
+     */
+    LINKED,
+    /**
+     * A preallocated, lock free {@link RingBufferQueue}, for many concurrent producers. Its
+     * capacity is rounded up to a power of two and is
+     * {@link BatchProcessor#DEFAULT_RING_BUFFER_CAPACITY} when no capacity is set.
+     */
+    RING_BUFFER
+  }
+
+  public static final int DEFAULT_RING_BUFFER_CAPACITY = 1 << 16;
+
+  public static final long DEFAULT_CLOSE_TIMEOUT_SECONDS = 30;
 
-  protected final BlockingQueue<BatchEntry> queue = new LinkedBlockingQueue<>();
-  private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+  private static final int FLUSH_BATCHES_PER_TASK = 8;
+
+  protected final BlockingQueue<BatchEntry> queue;
+  private final ScheduledExecutorService scheduler;
+  // true if the scheduler and flush executor are owned by this processor and shut down on flush
+  private final boolean ownScheduler;
+  private final boolean ownFlushExecutor;
+  private final List<ScheduledFuture<?>> scheduledTasks = new ArrayList<>(2);
   final DriverInterface inflowDriver;
   final int actions;
   private final TimeUnit flushIntervalUnit;
   private final int flushInterval;
+  private final int flushThreads;
+  private final long flushBytes;
+  private final long maxAgeNanos;
+  private final SenderPool senderPool;
+  private final DiskSpool spool;
+  private final boolean spoolAll;
+  // held while taking and sending a batch, so ordered sends follow the queue order
+  private final Object orderLock;
+  private final ExecutorService flushExecutor;
+  // flush tasks submitted to the flush executor and not finished yet
+  private final AtomicInteger pendingFlushes = new AtomicInteger();
+  // set by the interval task, the flush threads write all queued points until the queue is empty
+  private volatile boolean flushRequested = false;
+
+  private final int capacity;
+  private final long capacityBytes;
+  private final OverflowPolicy overflowPolicy;
+  private final long blockTimeoutNanos;
+
+  // producers waiting for space with the BLOCK policy, signalled when entries are taken
+  private final ReentrantLock putLock = new ReentrantLock();
+  private final Condition notFull = this.putLock.newCondition();
+  private final AtomicInteger blockedProducers = new AtomicInteger();
+  private final AtomicLong queuedBytes = new AtomicLong();
+  private final AtomicLong droppedCount = new AtomicLong();
+  private final AtomicLong writtenCount = new AtomicLong();
+  private final AtomicLong failedCount = new AtomicLong();
+  private final AtomicLong flushCount = new AtomicLong();
+  private final AtomicLong flushNanos = new AtomicLong();
+  private final AtomicLong maxFlushNanos = new AtomicLong();
+  private volatile boolean closed = false;
 
   /**
    * The Builder to create a BatchProcessor instance.
@@ -40,11 +138,32 @@ public class BatchProcessor {
     private int actions;
     private TimeUnit flushIntervalUnit;
     private int flushInterval;
+    private int flushThreads = 1;
+    private long flushBytes = Long.MAX_VALUE;
+    private int maxInFlight = 0;
+    private boolean orderedPerDatabase = false;
+    private DiskSpool spool;
+    private boolean spoolAll = false;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService flushExecutor;
+    private double jitter = 0;
+    private long maxAge = 0;
+    private TimeUnit maxAgeUnit = TimeUnit.MILLISECONDS;
+    private int capacity = Integer.MAX_VALUE;
+    private long capacityBytes = Long.MAX_VALUE;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private QueueType queueType = QueueType.LINKED;
+    private long blockTimeout = 1;
+    private TimeUnit blockTimeoutUnit = TimeUnit.SECONDS;
 
     public Builder(final DriverInterface inflowDriver) {
       this.inflowDriver = inflowDriver;
     }
 
+    DriverInterface getDriver() {
+      return this.inflowDriver;
+    }
+
     /**
      * The number of actions after which a batch write must be performed.
      *
@@ -70,6 +189,212 @@ public class BatchProcessor {
       return this;
     }
 
+    /**
+     * The estimated size of queued Points after which a batch write must be performed, and the
+     * maximum size of a written batch. Larger batches are split. Unbounded by default.
+     *
+     * @param bytes the target batch size in bytes
+     * @return this Builder to use it fluent
+     */
+    public Builder flushBytes(final long bytes) {
+      Preconditions.checkArgument(bytes > 0, "flushBytes must be greater than 0");
+      this.flushBytes = bytes;
+      return this;
+    }
+
+    /**
+     * Write batches on a {@link SenderPool} with up to this number of concurrent write requests.
+     * Flush threads wait while all of them are in flight. By default batches are written on the
+     * flush threads.
+     *
+     * @param requests the maximum number of write requests in flight
+     * @return this Builder to use it fluent
+     */
+    public Builder maxInFlight(final int requests) {
+      Preconditions.checkArgument(requests > 0, "maxInFlight must be greater than 0");
+      this.maxInFlight = requests;
+      return this;
+    }
+
+    /**
+     * Write the batches of a database in the order their Points were queued, when writing with
+     * {@link #maxInFlight(int)}. Only writes to different databases are then concurrent.
+     *
+     * @param ordered true to keep the order per database
+     * @return this Builder to use it fluent
+     */
+    public Builder orderedPerDatabase(final boolean ordered) {
+      this.orderedPerDatabase = ordered;
+      return this;
+    }
+
+    /**
+     * Append batches that fail to be written to a DiskSpool, which writes them again later.
+     *
+     * @param diskSpool the spool
+     * @return this Builder to use it fluent
+     */
+    public Builder spool(final DiskSpool diskSpool) {
+      this.spool = diskSpool;
+      return this;
+    }
+
+    /**
+     * Append all batches to the spool instead of writing them, so the spool replay writes every
+     * batch and nothing queued on disk is lost when the process stops. Off by default.
+     *
+     * @param all true to spool all batches
+     * @return this Builder to use it fluent
+     */
+    public Builder spoolAll(final boolean all) {
+      this.spoolAll = all;
+      return this;
+    }
+
+    /**
+     * Run the interval and age checks on a shared scheduler instead of a scheduler of this
+     * processor. The scheduler is not shut down by the processor, its tasks are cancelled on
+     * flush.
+     *
+     * @param sharedScheduler the scheduler
+     * @return this Builder to use it fluent
+     */
+    public Builder scheduler(final ScheduledExecutorService sharedScheduler) {
+      this.scheduler = Preconditions.checkNotNull(sharedScheduler, "scheduler may not be null");
+      return this;
+    }
+
+    /**
+     * Write batches on a shared executor instead of the flush threads of this processor. A
+     * processor has at most {@code flushThreads} tasks on the executor at any time and each task
+     * writes a few batches before it gives the thread to the next one, so busy processors do not
+     * starve the others. The executor is not shut down by the processor.
+     *
+     * @param sharedFlushExecutor the executor
+     * @return this Builder to use it fluent
+     */
+    public Builder flushExecutor(final ExecutorService sharedFlushExecutor) {
+      this.flushExecutor = Preconditions.checkNotNull(sharedFlushExecutor, "flushExecutor may not be null");
+      return this;
+    }
+
+    /**
+     * Use the library wide scheduler and flush pool, so any number of processors are driven by
+     * one scheduler thread and a flush thread per CPU.
+     *
+     * @return this Builder to use it fluent
+     */
+    public Builder sharedExecutors() {
+      this.scheduler = SharedExecutors.scheduler();
+      this.flushExecutor = SharedExecutors.flushExecutor();
+      return this;
+    }
+
+    /**
+     * Start the interval flushes at a random offset of up to this fraction of the interval, so
+     * processors created together do not all flush at the same time. 0 by default.
+     *
+     * @param fraction the fraction of the interval, between 0 and 1
+     * @return this Builder to use it fluent
+     */
+    public Builder jitter(final double fraction) {
+      Preconditions.checkArgument(fraction >= 0 && fraction <= 1, "jitter must be between 0 and 1");
+      this.jitter = fraction;
+      return this;
+    }
+
+    /**
+     * The age of the oldest queued Point after which a batch write must be performed, disabled by
+     * default.
+     *
+     * @param age the maximum age
+     * @param unit the TimeUnit of the age
+     * @return this Builder to use it fluent
+     */
+    public Builder maxAge(final long age, final TimeUnit unit) {
+      Preconditions.checkArgument(age > 0, "maxAge must be greater than 0");
+      Preconditions.checkNotNull(unit, "maxAge unit may not be null");
+      this.maxAge = age;
+      this.maxAgeUnit = unit;
+      return this;
+    }
+
+    /**
+     * The number of threads writing batches once {@code actions} Points are queued, 1 by default.
+     *
+     * @param threads the number of flush threads
+     * @return this Builder to use it fluent
+     */
+    public Builder flushThreads(final int threads) {
+      Preconditions.checkArgument(threads > 0, "flushThreads must be greater than 0");
+      this.flushThreads = threads;
+      return this;
+    }
+
+    /**
+     * The maximum number of queued Points, unbounded by default.
+     *
+     * @param maxPoints the maximum number of Points waiting to be written
+     * @return this Builder to use it fluent
+     */
+    public Builder capacity(final int maxPoints) {
+      Preconditions.checkArgument(maxPoints > 0, "capacity must be greater than 0");
+      this.capacity = maxPoints;
+      return this;
+    }
+
+    /**
+     * The maximum estimated size of queued Points, unbounded by default. A single Point larger
+     * than this is accepted when the queue is empty.
+     *
+     * @param maxBytes the maximum number of bytes waiting to be written
+     * @return this Builder to use it fluent
+     */
+    public Builder capacityBytes(final long maxBytes) {
+      Preconditions.checkArgument(maxBytes > 0, "capacityBytes must be greater than 0");
+      this.capacityBytes = maxBytes;
+      return this;
+    }
+
+    /**
+     * The queue implementation, {@link QueueType#LINKED} by default.
+     *
+     * @param type the queue type
+     * @return this Builder to use it fluent
+     */
+    public Builder queueType(final QueueType type) {
+      Preconditions.checkNotNull(type, "queueType may not be null");
+      this.queueType = type;
+      return this;
+    }
+
+    /**
+     * What to do with Points put while the queue is full, {@link OverflowPolicy#BLOCK} by default.
+     *
+     * @param policy the overflow policy
+     * @return this Builder to use it fluent
+     */
+    public Builder overflowPolicy(final OverflowPolicy policy) {
+      Preconditions.checkNotNull(policy, "overflowPolicy may not be null");
+      this.overflowPolicy = policy;
+      return this;
+    }
+
+    /**
+     * How long a put waits for space with {@link OverflowPolicy#BLOCK}, 1 second by default.
+     *
+     * @param timeout the timeout
+     * @param unit the TimeUnit of the timeout
+     * @return this Builder to use it fluent
+     */
+    public Builder blockTimeout(final long timeout, final TimeUnit unit) {
+      Preconditions.checkArgument(timeout >= 0, "blockTimeout must be 0 or greater");
+      Preconditions.checkNotNull(unit, "blockTimeout unit may not be null");
+      this.blockTimeout = timeout;
+      this.blockTimeoutUnit = unit;
+      return this;
+    }
+
     /**
      * Create the BatchProcessor.
      *
@@ -79,7 +404,8 @@ public class BatchProcessor {
       Preconditions.checkNotNull(this.actions, "actions may not be null");
       Preconditions.checkNotNull(this.flushInterval, "flushInterval may not be null");
       Preconditions.checkNotNull(this.flushIntervalUnit, "flushIntervalUnit may not be null");
-      return new BatchProcessor(this.inflowDriver, this.actions, this.flushIntervalUnit, this.flushInterval);
+      Preconditions.checkArgument(!this.spoolAll || this.spool != null, "spoolAll needs a spool");
+      return new BatchProcessor(this);
     }
   }
 
@@ -88,12 +414,25 @@ public class BatchProcessor {
     private final Point point;
     private final String db;
     private final RetentionPolicy rp;
+    private final ConsistencyLevel consistency;
+    private final TimeUnit precision;
+    private final int size;
+    private final long createdNanos;
 
     public BatchEntry(final Point point, final String db, final RetentionPolicy rp) {
+      this(point, db, rp, ConsistencyLevel.ONE, TimeUnit.NANOSECONDS);
+    }
+
+    public BatchEntry(final Point point, final String db, final RetentionPolicy rp, final ConsistencyLevel consistency,
+            final TimeUnit precision) {
       super();
       this.point = point;
       this.db = db;
       this.rp = rp;
+      this.consistency = consistency;
+      this.precision = precision;
+      this.size = point.estimatedSize();
+      this.createdNanos = System.nanoTime();
     }
 
     public Point getPoint() {
@@ -107,55 +446,393 @@ public class BatchProcessor {
     public RetentionPolicy getRp() {
       return this.rp;
     }
+
+    public ConsistencyLevel getConsistency() {
+      return this.consistency;
+    }
+
+    public TimeUnit getPrecision() {
+      return this.precision;
+    }
+
+    /**
+     * @return the estimated line protocol size of the Point
+     */
+    public int getSize() {
+      return this.size;
+    }
+
+    /**
+     * @return the System.nanoTime() at which the entry was created
+     */
+    public long getCreatedNanos() {
+      return this.createdNanos;
+    }
+  }
+
+  /**
+   * The database, retention policy, consistency and precision Points are batched by. Retention
+   * policies are compared by name.
+   */
+  private static final class BatchKey {
+
+    private final String db;
+    private final String rp;
+    private final ConsistencyLevel consistency;
+    private final TimeUnit precision;
+
+    BatchKey(final BatchEntry batchEntry) {
+      this.db = batchEntry.getDb();
+      this.rp = batchEntry.getRp() == null ? null : batchEntry.getRp().toString();
+      this.consistency = batchEntry.getConsistency();
+      this.precision = batchEntry.getPrecision();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (!(obj instanceof BatchKey)) {
+        return false;
+      }
+      BatchKey other = (BatchKey) obj;
+      return Objects.equal(this.db, other.db) && Objects.equal(this.rp, other.rp)
+              && this.consistency == other.consistency && this.precision == other.precision;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(this.db, this.rp, this.consistency, this.precision);
+    }
   }
 
   public static Builder builder(final DriverInterface inflowDriver) {
     return new Builder(inflowDriver);
   }
 
-  BatchProcessor(final DriverInterface inflowDriver, final int actions, final TimeUnit flushIntervalUnit,
-          final int flushInterval) {
+  BatchProcessor(final Builder builder) {
     super();
-    this.inflowDriver = inflowDriver;
-    this.actions = actions;
-    this.flushIntervalUnit = flushIntervalUnit;
-    this.flushInterval = flushInterval;
+    this.inflowDriver = builder.inflowDriver;
+    this.actions = builder.actions;
+    this.flushIntervalUnit = builder.flushIntervalUnit;
+    this.flushInterval = builder.flushInterval;
+    if (builder.queueType == QueueType.RING_BUFFER) {
+      int ringCapacity = builder.capacity == Integer.MAX_VALUE ? DEFAULT_RING_BUFFER_CAPACITY : builder.capacity;
+      this.queue = new RingBufferQueue<>(ringCapacity);
+      this.capacity = this.queue.remainingCapacity();
+    } else {
+      this.queue = new LinkedBlockingQueue<>(builder.capacity);
+      this.capacity = builder.capacity;
+    }
+    this.capacityBytes = builder.capacityBytes;
+    this.overflowPolicy = builder.overflowPolicy;
+    this.blockTimeoutNanos = builder.blockTimeoutUnit.toNanos(builder.blockTimeout);
+    this.flushThreads = builder.flushThreads;
+    this.flushBytes = builder.flushBytes;
+    this.maxAgeNanos = builder.maxAgeUnit.toNanos(builder.maxAge);
+    this.spool = builder.spool;
+    this.spoolAll = builder.spoolAll;
+    if (builder.maxInFlight > 0) {
+      SenderPool.FailureHandler failureHandler = new SenderPool.FailureHandler() {
+        @Override
+        public void failed(final BatchPoints batchPoints, final Exception cause) {
+          // counted as written when handed to the pool
+          failedAfterSend(batchPoints, cause);
+        }
+      };
+      this.senderPool = new SenderPool(this.inflowDriver, builder.maxInFlight, builder.orderedPerDatabase, failureHandler);
+      this.orderLock = builder.orderedPerDatabase ? new Object() : null;
+    } else {
+      this.senderPool = null;
+      this.orderLock = null;
+    }
+    if (builder.flushExecutor != null) {
+      this.flushExecutor = builder.flushExecutor;
+      this.ownFlushExecutor = false;
+    } else {
+      this.flushExecutor = Executors.newFixedThreadPool(this.flushThreads,
+              new ThreadFactoryBuilder().setNameFormat("inflow-batch-flush-%d").setDaemon(true).build());
+      this.ownFlushExecutor = true;
+    }
+    if (builder.scheduler != null) {
+      this.scheduler = builder.scheduler;
+      this.ownScheduler = false;
+    } else {
+      this.scheduler = Executors.newScheduledThreadPool(1);
+      this.ownScheduler = true;
+    }
 
-    // Flush at specified Rate
-    this.scheduler.scheduleAtFixedRate(new Runnable() {
+    // Flush at specified Rate, the first time at a random offset when jittered. The scheduler may be
+    // shared, so the task only signals the flush threads and never writes itself
+    long intervalNanos = this.flushIntervalUnit.toNanos(this.flushInterval);
+    long initialDelayNanos = intervalNanos - (long) (intervalNanos * builder.jitter * ThreadLocalRandom.current().nextDouble());
+    this.scheduledTasks.add(this.scheduler.scheduleAtFixedRate(new Runnable() {
       @Override
       public void run() {
         try {
-          write();
-        } catch (InflowException ie) {
-          Logger.getLogger(BatchProcessor.class.getName()).log(Level.SEVERE, null, ie);
+          if (!BatchProcessor.this.queue.isEmpty()) {
+            BatchProcessor.this.flushRequested = true;
+            signalFlush();
+          }
+        } catch (RuntimeException e) {
+          // an exception would cancel the periodic task
+          Logger.getLogger(BatchProcessor.class.getName()).log(Level.SEVERE, null, e);
         }
       }
-    }, this.flushInterval, this.flushInterval, this.flushIntervalUnit);
+    }, initialDelayNanos, intervalNanos, TimeUnit.NANOSECONDS));
 
+    if (this.maxAgeNanos > 0) {
+      // check a few times per maxAge, so points are written at most a quarter late
+      long checkNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), this.maxAgeNanos / 4);
+      this.scheduledTasks.add(this.scheduler.scheduleAtFixedRate(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            if (isOldestExpired()) {
+              signalFlush();
+            }
+          } catch (RuntimeException e) {
+            Logger.getLogger(BatchProcessor.class.getName()).log(Level.SEVERE, null, e);
+          }
+        }
+      }, checkNanos, checkNanos, TimeUnit.NANOSECONDS));
+    }
   }
 
+  /**
+   * Write all queued Points, in batches of at most {@code actions} Points.
+   */
   void write() throws InflowException {
-    if (this.queue.isEmpty()) {
-      return;
+    while (!this.queue.isEmpty()) {
+      if (writeBatch() == 0) {
+        return;
+      }
     }
+  }
 
-    Map<String, BatchPoints> databaseToBatchPoints = Maps.newHashMap();
-    List<BatchEntry> batchEntries = new ArrayList<>(this.queue.size());
-    this.queue.drainTo(batchEntries);
+  /**
+   * Take up to {@code actions} Points from the queue and write them.
+   *
+   * @return the number of Points written
+   */
+  private int writeBatch() throws InflowException {
+    long start = System.nanoTime();
+    int written;
+    if (this.orderLock != null) {
+      synchronized (this.orderLock) {
+        written = takeAndSendBatch();
+      }
+    } else {
+      written = takeAndSendBatch();
+    }
+    if (written > 0) {
+      flushed(System.nanoTime() - start);
+    }
+    return written;
+  }
+
+  private void flushed(final long nanos) {
+    this.flushCount.incrementAndGet();
+    this.flushNanos.addAndGet(nanos);
+    long max = this.maxFlushNanos.get();
+    while (nanos > max && !this.maxFlushNanos.compareAndSet(max, nanos)) {
+      max = this.maxFlushNanos.get();
+    }
+  }
+
+  private int takeAndSendBatch() throws InflowException {
+    int batchSize = this.actions > 0 ? this.actions : Integer.MAX_VALUE;
+    List<BatchEntry> batchEntries = new ArrayList<>(Math.min(batchSize, Math.max(this.queue.size(), 1)));
+    this.queue.drainTo(batchEntries, batchSize);
+    taken(batchEntries);
+    if (batchEntries.isEmpty()) {
+      return 0;
+    }
+    sendBatches(batchEntries, this.spoolAll);
+    return batchEntries.size();
+  }
 
+  /**
+   * Group the entries into BatchPoints and send them. A failed batch does not stop the other ones,
+   * the first failure is thrown after all were sent.
+   */
+  private void sendBatches(final List<BatchEntry> batchEntries, final boolean toSpool) throws InflowException {
+    Exception failure = null;
+    Map<BatchKey, BatchPoints> keyToBatchPoints = Maps.newLinkedHashMap();
+    Map<BatchKey, Long> keyToBytes = Maps.newHashMap();
     for (BatchEntry batchEntry : batchEntries) {
-      String dbName = batchEntry.getDb();
-      if (!databaseToBatchPoints.containsKey(dbName)) {
-        BatchPoints batchPoints = BatchPoints.database(dbName).retentionPolicy(batchEntry.getRp()).build();
-        databaseToBatchPoints.put(dbName, batchPoints);
+      BatchKey key = new BatchKey(batchEntry);
+      BatchPoints batchPoints = keyToBatchPoints.get(key);
+      long bytes = batchPoints == null ? 0 : keyToBytes.get(key);
+      if (batchPoints != null && bytes + batchEntry.getSize() > this.flushBytes) {
+        // split the batch before it gets larger than flushBytes
+        failure = trySend(batchPoints, toSpool, failure);
+        batchPoints = null;
+        bytes = 0;
+      }
+      if (batchPoints == null) {
+        batchPoints = BatchPoints.database(key.db).retentionPolicy(batchEntry.getRp())
+                .consistency(key.consistency).precision(key.precision).build();
+        keyToBatchPoints.put(key, batchPoints);
+      }
+      batchPoints.point(batchEntry.getPoint());
+      keyToBytes.put(key, bytes + batchEntry.getSize());
+    }
+
+    for (BatchPoints batchPoints : keyToBatchPoints.values()) {
+      failure = trySend(batchPoints, toSpool, failure);
+    }
+    if (failure != null) {
+      rethrow(failure);
+    }
+  }
+
+  /**
+   * @return the first failure, the given one or the one of this send
+   */
+  private Exception trySend(final BatchPoints batchPoints, final boolean toSpool, final Exception failure) {
+    try {
+      send(batchPoints, toSpool);
+      return failure;
+    } catch (InflowException | RuntimeException e) {
+      this.failedCount.addAndGet(batchPoints.getPoints().size());
+      return failure == null ? e : failure;
+    }
+  }
+
+  private static void rethrow(final Exception cause) throws InflowException {
+    if (cause instanceof InflowException) {
+      throw (InflowException) cause;
+    }
+    throw (RuntimeException) cause;
+  }
+
+  private void send(final BatchPoints batchPoints, final boolean toSpool) throws InflowException {
+    if (toSpool) {
+      spool(batchPoints);
+    } else if (this.senderPool != null) {
+      this.senderPool.send(batchPoints);
+      this.writtenCount.addAndGet(batchPoints.getPoints().size());
+    } else {
+      try {
+        this.inflowDriver.write(batchPoints);
+        this.writtenCount.addAndGet(batchPoints.getPoints().size());
+      } catch (InflowException | RuntimeException e) {
+        writeFailed(batchPoints, e);
+      }
+    }
+  }
+
+  /**
+   * Spool a batch that failed to be written, or rethrow the failure without a spool.
+   */
+  private void writeFailed(final BatchPoints batchPoints, final Exception cause) throws InflowException {
+    if (this.spool == null) {
+      rethrow(cause);
+    }
+    Logger.getLogger(BatchProcessor.class.getName()).log(Level.WARNING, "Write failed, spooling batch", cause);
+    spool(batchPoints);
+  }
+
+  /**
+   * Spool a batch which was counted as written and failed later, or count it as failed.
+   */
+  private void failedAfterSend(final BatchPoints batchPoints, final Exception cause) {
+    int points = batchPoints.getPoints().size();
+    this.writtenCount.addAndGet(-points);
+    try {
+      writeFailed(batchPoints, cause);
+    } catch (InflowException | RuntimeException e) {
+      this.failedCount.addAndGet(points);
+      Logger.getLogger(BatchProcessor.class.getName()).log(Level.SEVERE, null, e);
+    }
+  }
+
+  /**
+   * Spool a batch a DriverHTTP gave up after retrying it in the background, or count it as failed
+   * without a spool. A DriverHTTP hands its batches to the processor enabled on it; set this
+   * processor as the give up handler of the driver when it was built without enableBatch.
+   *
+   * @param batchPoints the batch of the failed write request
+   * @param cause the error of the last attempt
+   */
+  @Override
+  public void gaveUp(final BatchPoints batchPoints, final Exception cause) {
+    // counted as written when the driver accepted it for a retry
+    failedAfterSend(batchPoints, cause);
+  }
+
+  private void spool(final BatchPoints batchPoints) throws InflowException {
+    if (this.spool.append(batchPoints)) {
+      this.writtenCount.addAndGet(batchPoints.getPoints().size());
+    } else {
+      this.droppedCount.addAndGet(batchPoints.getPoints().size());
+    }
+  }
+
+  /**
+   * Submit a flush task unless all flush threads already have one.
+   */
+  private void signalFlush() {
+    if (this.closed) {
+      return;
+    }
+    int pending;
+    do {
+      pending = this.pendingFlushes.get();
+      if (pending >= this.flushThreads) {
+        return;
       }
-      Point point = batchEntry.getPoint();
-      databaseToBatchPoints.get(dbName).point(point);
+    } while (!this.pendingFlushes.compareAndSet(pending, pending + 1));
+
+    try {
+      this.flushExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            // a few batches per task, then the thread is left to other tasks of a shared executor
+            for (int i = 0; i < FLUSH_BATCHES_PER_TASK && shouldFlush(); i++) {
+              if (writeBatch() == 0) {
+                break;
+              }
+            }
+            if (BatchProcessor.this.queue.isEmpty()) {
+              BatchProcessor.this.flushRequested = false;
+            }
+          } catch (InflowException | RuntimeException e) {
+            Logger.getLogger(BatchProcessor.class.getName()).log(Level.SEVERE, null, e);
+          } finally {
+            BatchProcessor.this.pendingFlushes.decrementAndGet();
+          }
+          // points queued while this task was finishing did not submit another one
+          if (!BatchProcessor.this.queue.isEmpty() && shouldFlush()) {
+            signalFlush();
+          }
+        }
+      });
+    } catch (RejectedExecutionException ree) {
+      // the processor was flushed, remaining points are written by flush()
+      this.pendingFlushes.decrementAndGet();
     }
+  }
 
-    for (BatchPoints batchPoints : databaseToBatchPoints.values()) {
-      BatchProcessor.this.inflowDriver.write(batchPoints);
+  /**
+   * Release the capacity of entries taken from the queue and wake up blocked producers.
+   */
+  private void taken(final List<BatchEntry> batchEntries) {
+    if (batchEntries.isEmpty()) {
+      return;
+    }
+    long bytes = 0;
+    for (BatchEntry batchEntry : batchEntries) {
+      bytes += batchEntry.getSize();
+    }
+    this.queuedBytes.addAndGet(-bytes);
+    if (this.blockedProducers.get() > 0) {
+      this.putLock.lock();
+      try {
+        this.notFull.signalAll();
+      } finally {
+        this.putLock.unlock();
+      }
     }
   }
 
@@ -163,12 +840,184 @@ public class BatchProcessor {
    * Put a single BatchEntry to the cache for later processing.
    *
    * @param batchEntry the batchEntry to write to the cache.
+   * @throws InflowException if the queue is full and the overflow policy is BLOCK after the
+   * timeout or FAIL
    */
   void put(final BatchEntry batchEntry) throws InflowException {
-    this.queue.add(batchEntry);
-    if (this.queue.size() >= this.actions) {
+    if (!enqueue(batchEntry)) {
+      return;
+    }
+    if (this.closed) {
+      // the processor was flushed while the entry was put, nobody else writes it
       write();
+      return;
+    }
+    if (this.queue.size() >= this.actions || this.queuedBytes.get() >= this.flushBytes) {
+      signalFlush();
+    }
+  }
+
+  /**
+   * @return true if the interval passed or a flush trigger is reached
+   */
+  private boolean shouldFlush() {
+    return this.flushRequested || this.queue.size() >= this.actions || this.queuedBytes.get() >= this.flushBytes || isOldestExpired();
+  }
+
+  /**
+   * @return true if the oldest queued Point is older than maxAge
+   */
+  private boolean isOldestExpired() {
+    if (this.maxAgeNanos <= 0) {
+      return false;
     }
+    BatchEntry oldest = this.queue.peek();
+    return oldest != null && System.nanoTime() - oldest.getCreatedNanos() >= this.maxAgeNanos;
+  }
+
+  /**
+   * Add the entry to the queue if it has space, otherwise apply the overflow policy.
+   *
+   * @return true if the entry was queued, false if it was dropped
+   */
+  private boolean enqueue(final BatchEntry batchEntry) throws InflowException {
+    while (!tryEnqueue(batchEntry)) {
+      switch (this.overflowPolicy) {
+        case DROP_NEWEST:
+          this.droppedCount.incrementAndGet();
+          return false;
+        case DROP_OLDEST:
+          BatchEntry oldest = this.queue.poll();
+          if (oldest != null) {
+            this.queuedBytes.addAndGet(-oldest.getSize());
+            this.droppedCount.incrementAndGet();
+          }
+          break;
+        case FAIL:
+          this.droppedCount.incrementAndGet();
+          throw new InflowException("BatchProcessor queue is full, dropped point");
+        default:
+          return awaitEnqueue(batchEntry);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Wait up to the block timeout until the entry fits.
+   */
+  private boolean awaitEnqueue(final BatchEntry batchEntry) throws InflowException {
+    long nanos = this.blockTimeoutNanos;
+    this.putLock.lock();
+    this.blockedProducers.incrementAndGet();
+    try {
+      while (!tryEnqueue(batchEntry)) {
+        if (nanos <= 0) {
+          this.droppedCount.incrementAndGet();
+          throw new InflowException("BatchProcessor queue is still full after the block timeout, dropped point");
+        }
+        try {
+          nanos = this.notFull.awaitNanos(nanos);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          this.droppedCount.incrementAndGet();
+          throw new InflowException("Interrupted while waiting for BatchProcessor queue space", ie);
+        }
+      }
+      return true;
+    } finally {
+      this.blockedProducers.decrementAndGet();
+      this.putLock.unlock();
+    }
+  }
+
+  /**
+   * Reserve the estimated bytes of the entry and add it to the queue, without waiting.
+   *
+   * @return true if the entry was queued
+   */
+  private boolean tryEnqueue(final BatchEntry batchEntry) {
+    int size = batchEntry.getSize();
+    long bytes;
+    do {
+      bytes = this.queuedBytes.get();
+      if (bytes != 0 && bytes + size > this.capacityBytes) {
+        return false;
+      }
+    } while (!this.queuedBytes.compareAndSet(bytes, bytes + size));
+
+    if (this.queue.offer(batchEntry)) {
+      return true;
+    }
+    this.queuedBytes.addAndGet(-size);
+    return false;
+  }
+
+  /**
+   * @return the number of Points waiting to be written
+   */
+  public int getQueuedCount() {
+    return this.queue.size();
+  }
+
+  /**
+   * @return the estimated size in bytes of the Points waiting to be written
+   */
+  public long getQueuedBytes() {
+    return this.queuedBytes.get();
+  }
+
+  /**
+   * @return the number of Points dropped because the queue or the spool was full
+   */
+  public long getDroppedCount() {
+    return this.droppedCount.get();
+  }
+
+  /**
+   * @return the number of Points written, handed to the sender pool or spooled
+   */
+  public long getWrittenCount() {
+    return this.writtenCount.get();
+  }
+
+  /**
+   * @return the number of Points whose write failed and was not spooled
+   */
+  public long getFailedCount() {
+    return this.failedCount.get();
+  }
+
+  /**
+   * @return the number of batches taken from the queue and written
+   */
+  public long getFlushCount() {
+    return this.flushCount.get();
+  }
+
+  /**
+   * @return the total time spent taking batches from the queue and writing them, in nanoseconds
+   */
+  public long getFlushNanos() {
+    return this.flushNanos.get();
+  }
+
+  /**
+   * @return the longest time spent taking a batch from the queue and writing it, in nanoseconds
+   */
+  public long getMaxFlushNanos() {
+    return this.maxFlushNanos.get();
+  }
+
+  /**
+   * @return the maximum number of queued Points
+   */
+  public int getCapacity() {
+    return this.capacity;
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return this.overflowPolicy;
   }
 
   /**
@@ -177,8 +1026,117 @@ public class BatchProcessor {
    *
    */
   void flush() throws InflowException {
-    this.write();
-    this.scheduler.shutdown();
+    close();
+  }
+
+  /**
+   * Write the queued Points and stop the processor, waiting up to
+   * {@link #DEFAULT_CLOSE_TIMEOUT_SECONDS} for the writes.
+   */
+  @Override
+  public void close() throws InflowException {
+    close(DEFAULT_CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Write the queued Points, wait for the flushes and writes in flight and stop the processor.
+   * Points still queued when the timeout passes are spooled if there is a spool and dropped
+   * otherwise. Points put after the processor was
+   * closed are written by the putting thread.
+   *
+   * @param timeout the time to wait for the queued Points and the writes in flight
+   * @param unit the unit of timeout
+   * @return the number of Points written and dropped while closing
+   */
+  public CloseResult close(final long timeout, final TimeUnit unit) throws InflowException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    long written = this.writtenCount.get();
+    long dropped = this.droppedCount.get() + this.failedCount.get();
+
+    this.closed = true;
+    if (this.ownFlushExecutor) {
+      this.flushExecutor.shutdown();
+    }
+    while (!this.queue.isEmpty() && System.nanoTime() - deadline < 0) {
+      try {
+        if (writeBatch() == 0) {
+          break;
+        }
+      } catch (InflowException | RuntimeException e) {
+        Logger.getLogger(BatchProcessor.class.getName()).log(Level.SEVERE, "Write failed while closing", e);
+      }
+    }
+    awaitFlushes(deadline);
+    List<BatchEntry> remaining = new ArrayList<>();
+    this.queue.drainTo(remaining);
+    taken(remaining);
+    if (!remaining.isEmpty()) {
+      if (this.spool != null) {
+        try {
+          sendBatches(remaining, true);
+        } catch (InflowException | RuntimeException e) {
+          Logger.getLogger(BatchProcessor.class.getName()).log(Level.SEVERE, "Spooling failed while closing", e);
+        }
+      } else {
+        this.droppedCount.addAndGet(remaining.size());
+      }
+    }
+
+    if (this.ownScheduler) {
+      this.scheduler.shutdown();
+    } else {
+      for (ScheduledFuture<?> scheduledTask : this.scheduledTasks) {
+        scheduledTask.cancel(false);
+      }
+    }
+    if (this.senderPool != null) {
+      try {
+        if (!this.senderPool.awaitSent(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+          Logger.getLogger(BatchProcessor.class.getName()).log(Level.WARNING,
+                  "Closed with " + this.senderPool.getInFlightCount() + " writes still in flight");
+        }
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      } finally {
+        this.senderPool.shutdown();
+      }
+    }
+
+    CloseResult result = new CloseResult(this.writtenCount.get() - written,
+            this.droppedCount.get() + this.failedCount.get() - dropped);
+    if (result.getDroppedCount() > 0) {
+      Logger.getLogger(BatchProcessor.class.getName()).log(Level.WARNING, "Closed BatchProcessor: " + result);
+    }
+    return result;
+  }
+
+  /**
+   * Wait until the flush tasks of this processor wrote the batches they took from the queue.
+   */
+  private void awaitFlushes(final long deadline) {
+    try {
+      if (this.ownFlushExecutor) {
+        this.flushExecutor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      } else {
+        // a shared executor runs the tasks of other processors too
+        while (this.pendingFlushes.get() > 0 && System.nanoTime() - deadline < 0) {
+          Thread.sleep(1);
+        }
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+    if (this.pendingFlushes.get() > 0) {
+      Logger.getLogger(BatchProcessor.class.getName()).log(Level.WARNING,
+              "Closed with " + this.pendingFlushes.get() + " flushes still running");
+    }
+  }
+
+  /**
+   * @return the pool writing batches, or null when batches are written on the flush threads
+   */
+  public SenderPool getSenderPool() {
+    return this.senderPool;
   }
 
 }
@@ -0,0 +1,47 @@
+package com.koadweb.inflow;
+
+/**
+ * The Points written and dropped while closing a BatchProcessor or a driver.
+ *
+ */
+public class CloseResult {
+
+  private final long flushedCount;
+  private final long droppedCount;
+
+  public CloseResult(final long flushedCount, final long droppedCount) {
+    this.flushedCount = flushedCount;
+    this.droppedCount = droppedCount;
+  }
+
+  /**
+   * @return the number of queued Points written or spooled while closing
+   */
+  public long getFlushedCount() {
+    return this.flushedCount;
+  }
+
+  /**
+   * @return the number of queued Points dropped while closing, because the deadline passed or
+   * their write failed
+   */
+  public long getDroppedCount() {
+    return this.droppedCount;
+  }
+
+  /**
+   * @return the sum of both results
+   */
+  CloseResult plus(final CloseResult other) {
+    return new CloseResult(this.flushedCount + other.flushedCount, this.droppedCount + other.droppedCount);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "CloseResult [flushed=" + this.flushedCount + ", dropped=" + this.droppedCount + "]";
+  }
+
+}
@@ -0,0 +1,613 @@
+package com.koadweb.inflow;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import org.influxdb.InfluxDB.ConsistencyLevel;
+import org.influxdb.InfluxDB.RetentionPolicy;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.LineProtocolEncoder;
+import org.influxdb.dto.Point;
+
+/**
+ * A local write ahead spool of BatchPoints, stored as line protocol in append only segment files
+ * and replayed through a driver once it accepts writes again.
+ *
+ * Batches are appended to the active segment, which is rotated when it reaches
+ * {@code maxSegmentBytes}. A replay thread writes the records of the oldest segments in order, at
+ * most {@code replayBytesPerSecond}, and deletes a segment once all its records are written. A
+ * failed write stops the replay until the next {@code replayInterval}. Segments left by a previous
+ * process are replayed too, so a batch can be written more than once but is not lost. Appends are
+ * rejected and counted as dropped once the segments take {@code maxTotalBytes}.
+ *
+ * Every record is framed by its length and a CRC32, a torn record at the end of a segment ends
+ * the replay of that segment. A segment with an unreadable record before its end is renamed with
+ * a {@code .corrupt} suffix instead of deleted, so the records after it can be recovered by hand.
+ */
+public class DiskSpool {
+
+  private static final Logger LOGGER = Logger.getLogger(DiskSpool.class.getName());
+
+  static final String SEGMENT_PREFIX = "spool-";
+  static final String SEGMENT_SUFFIX = ".lp";
+  static final String CORRUPT_SUFFIX = ".corrupt";
+  private static final byte FORMAT_VERSION = 1;
+  // record length and CRC32
+  private static final int RECORD_HEADER_SIZE = 8;
+
+  private final File directory;
+  private final DriverInterface inflowDriver;
+  private final long maxSegmentBytes;
+  private final long maxTotalBytes;
+  private final boolean syncOnWrite;
+  private final RateLimiter replayLimiter;
+  private final long replayIntervalMillis;
+
+  // closed segments waiting for replay, oldest first
+  private final Deque<File> segments = new ArrayDeque<>();
+  private long nextSegmentId;
+  private File activeSegment;
+  private FileChannel activeChannel;
+  private long activeBytes;
+  private long totalBytes;
+  private final LineProtocolEncoder encoder = new LineProtocolEncoder();
+
+  // replay progress in the oldest segment, only one thread replays at a time
+  private final ReentrantLock replayLock = new ReentrantLock();
+  private File replaySegment;
+  private long replayPosition;
+
+  private final ScheduledExecutorService scheduler;
+
+  private final AtomicLong spooledCount = new AtomicLong();
+  private final AtomicLong replayedCount = new AtomicLong();
+  private final AtomicLong droppedCount = new AtomicLong();
+  private final AtomicLong corruptCount = new AtomicLong();
+
+  /**
+   * The Builder to create a DiskSpool instance.
+   */
+  public static final class Builder {
+
+    private final File directory;
+    private final DriverInterface inflowDriver;
+    private long maxSegmentBytes = 16 * 1024 * 1024;
+    private long maxTotalBytes = 1024L * 1024 * 1024;
+    private boolean syncOnWrite = false;
+    private double replayBytesPerSecond = 1024 * 1024;
+    private long replayInterval = 5;
+    private TimeUnit replayIntervalUnit = TimeUnit.SECONDS;
+
+    Builder(final File directory, final DriverInterface inflowDriver) {
+      this.directory = directory;
+      this.inflowDriver = inflowDriver;
+    }
+
+    /**
+     * The size after which the active segment is rotated, 16 MiB by default.
+     *
+     * @param bytes the maximum segment size
+     * @return this Builder to use it fluent
+     */
+    public Builder maxSegmentBytes(final long bytes) {
+      Preconditions.checkArgument(bytes > 0, "maxSegmentBytes must be greater than 0");
+      this.maxSegmentBytes = bytes;
+      return this;
+    }
+
+    /**
+     * The disk space the segments may take, 1 GiB by default.
+     *
+     * @param bytes the maximum size of all segments
+     * @return this Builder to use it fluent
+     */
+    public Builder maxTotalBytes(final long bytes) {
+      Preconditions.checkArgument(bytes > 0, "maxTotalBytes must be greater than 0");
+      this.maxTotalBytes = bytes;
+      return this;
+    }
+
+    /**
+     * Force every append to the disk, off by default.
+     *
+     * @param sync true to sync every append
+     * @return this Builder to use it fluent
+     */
+    public Builder syncOnWrite(final boolean sync) {
+      this.syncOnWrite = sync;
+      return this;
+    }
+
+    /**
+     * The maximum rate at which spooled line protocol is written again, 1 MiB/s by default.
+     *
+     * @param bytesPerSecond the replay rate
+     * @return this Builder to use it fluent
+     */
+    public Builder replayBytesPerSecond(final double bytesPerSecond) {
+      Preconditions.checkArgument(bytesPerSecond > 0, "replayBytesPerSecond must be greater than 0");
+      this.replayBytesPerSecond = bytesPerSecond;
+      return this;
+    }
+
+    /**
+     * How often the replay is attempted, 5 seconds by default.
+     *
+     * @param interval the interval
+     * @param unit the TimeUnit of the interval
+     * @return this Builder to use it fluent
+     */
+    public Builder replayInterval(final long interval, final TimeUnit unit) {
+      Preconditions.checkArgument(interval > 0, "replayInterval must be greater than 0");
+      Preconditions.checkNotNull(unit, "replayInterval unit may not be null");
+      this.replayInterval = interval;
+      this.replayIntervalUnit = unit;
+      return this;
+    }
+
+    /**
+     * Create the DiskSpool and recover the segments found in its directory.
+     *
+     * @return the DiskSpool instance.
+     * @throws InflowException if the directory can not be used
+     */
+    public DiskSpool build() throws InflowException {
+      Preconditions.checkNotNull(this.directory, "directory may not be null");
+      Preconditions.checkNotNull(this.inflowDriver, "inflowDriver may not be null");
+      Preconditions.checkArgument(this.maxSegmentBytes <= this.maxTotalBytes, "maxSegmentBytes must not exceed maxTotalBytes");
+      return new DiskSpool(this);
+    }
+  }
+
+  public static Builder builder(final File directory, final DriverInterface inflowDriver) {
+    return new Builder(directory, inflowDriver);
+  }
+
+  DiskSpool(final Builder builder) throws InflowException {
+    this.directory = builder.directory;
+    this.inflowDriver = builder.inflowDriver;
+    this.maxSegmentBytes = builder.maxSegmentBytes;
+    this.maxTotalBytes = builder.maxTotalBytes;
+    this.syncOnWrite = builder.syncOnWrite;
+    this.replayLimiter = RateLimiter.create(builder.replayBytesPerSecond);
+    this.replayIntervalMillis = builder.replayIntervalUnit.toMillis(builder.replayInterval);
+
+    if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+      throw new InflowException("Can not create spool directory " + this.directory);
+    }
+    recover();
+
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("inflow-spool-replay-%d").setDaemon(true).build());
+    this.scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          replay();
+        } catch (RuntimeException re) {
+          LOGGER.log(Level.SEVERE, null, re);
+        }
+      }
+    }, this.replayIntervalMillis, this.replayIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Queue the segments of a previous process for replay, oldest first.
+   */
+  private void recover() {
+    File[] files = this.directory.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(final File dir, final String name) {
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+      }
+    });
+    if (files == null) {
+      return;
+    }
+    // the zero padded ids sort like the numbers
+    Arrays.sort(files);
+    for (File file : files) {
+      this.segments.add(file);
+      this.totalBytes += file.length();
+      this.nextSegmentId = Math.max(this.nextSegmentId, segmentId(file) + 1);
+    }
+  }
+
+  private static long segmentId(final File file) {
+    String name = file.getName();
+    try {
+      return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    } catch (NumberFormatException nfe) {
+      return -1;
+    }
+  }
+
+  /**
+   * Append a batch to the spool. A batch larger than a segment is split into records of whole
+   * points that fit in one.
+   *
+   * @param batchPoints the batch to spool
+   * @return true if the batch was appended, false if it was dropped because the spool is full or
+   * one of its points does not fit in a segment
+   * @throws InflowException if the segment can not be written
+   */
+  public synchronized boolean append(final BatchPoints batchPoints) throws InflowException {
+    if (batchPoints.getPoints().isEmpty()) {
+      return true;
+    }
+    List<ByteBuffer> records = encode(batchPoints);
+    if (records == null) {
+      this.droppedCount.incrementAndGet();
+      LOGGER.log(Level.WARNING, "Dropped a batch of {0} points, a point does not fit in a spool segment of {1} bytes",
+              new Object[]{batchPoints.getPoints().size(), this.maxSegmentBytes});
+      return false;
+    }
+    long recordsSize = 0;
+    for (ByteBuffer record : records) {
+      recordsSize += record.remaining();
+    }
+    if (this.totalBytes + recordsSize > this.maxTotalBytes) {
+      this.droppedCount.incrementAndGet();
+      return false;
+    }
+
+    try {
+      for (ByteBuffer record : records) {
+        int recordSize = record.remaining();
+        if (this.activeChannel != null && this.activeBytes + recordSize > this.maxSegmentBytes) {
+          rotate();
+        }
+        if (this.activeChannel == null) {
+          this.activeSegment = new File(this.directory, String.format("%s%020d%s", SEGMENT_PREFIX, this.nextSegmentId++, SEGMENT_SUFFIX));
+          this.activeChannel = FileChannel.open(this.activeSegment.toPath(), StandardOpenOption.CREATE,
+                  StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+          this.activeBytes = 0;
+        }
+        while (record.hasRemaining()) {
+          this.activeChannel.write(record);
+        }
+        this.activeBytes += recordSize;
+        this.totalBytes += recordSize;
+      }
+      if (this.syncOnWrite) {
+        this.activeChannel.force(false);
+      }
+    } catch (IOException ioe) {
+      throw new InflowException("Can not append to spool segment " + this.activeSegment + ": " + ioe.getMessage(), ioe);
+    }
+    this.spooledCount.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Encode a batch into records of at most {@code maxSegmentBytes}.
+   *
+   * @return the records, or null if a single point does not fit in a segment
+   */
+  private List<ByteBuffer> encode(final BatchPoints batchPoints) {
+    byte[] database = batchPoints.getDatabase().getBytes(StandardCharsets.UTF_8);
+    // an empty retention policy is written as the default one
+    String retentionPolicyName = batchPoints.getRetentionPolicy() == null ? "" : batchPoints.getRetentionPolicy().toString();
+    byte[] retentionPolicy = retentionPolicyName.getBytes(StandardCharsets.UTF_8);
+    byte[] consistency = batchPoints.getConsistency().toString().getBytes(StandardCharsets.UTF_8);
+    int prefixSize = 1 + 2 + database.length + 2 + retentionPolicy.length + 2 + consistency.length;
+
+    List<ByteBuffer> records = new ArrayList<>();
+    // records are replayed without a precision, so they are kept in nanoseconds
+    this.encoder.reset();
+    try {
+      int start = 0;
+      int end = 0;
+      for (Point point : batchPoints.getPoints()) {
+        this.encoder.encodeLine(point);
+        int lineEnd = this.encoder.size();
+        if (RECORD_HEADER_SIZE + prefixSize + lineEnd - end > this.maxSegmentBytes) {
+          return null;
+        }
+        if (RECORD_HEADER_SIZE + prefixSize + lineEnd - start > this.maxSegmentBytes) {
+          records.add(record(database, retentionPolicy, consistency, start, end));
+          start = end;
+        }
+        end = lineEnd;
+      }
+      records.add(record(database, retentionPolicy, consistency, start, end));
+    } finally {
+      this.encoder.reset();
+    }
+    return records;
+  }
+
+  /**
+   * Frame the encoded lines from {@code start} to {@code end} as a record.
+   */
+  private ByteBuffer record(final byte[] database, final byte[] retentionPolicy, final byte[] consistency,
+          final int start, final int end) {
+    int payloadSize = 1 + 2 + database.length + 2 + retentionPolicy.length + 2 + consistency.length + end - start;
+    ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payloadSize);
+    record.putInt(payloadSize);
+    record.putInt(0);
+    record.put(FORMAT_VERSION);
+    putString(record, database);
+    putString(record, retentionPolicy);
+    putString(record, consistency);
+    record.put(this.encoder.array(), start, end - start);
+
+    CRC32 crc = new CRC32();
+    crc.update(record.array(), RECORD_HEADER_SIZE, payloadSize);
+    record.putInt(4, (int) crc.getValue());
+    record.flip();
+    return record;
+  }
+
+  private static void putString(final ByteBuffer buffer, final byte[] bytes) {
+    buffer.putShort((short) bytes.length);
+    buffer.put(bytes);
+  }
+
+  private static String getString(final ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getShort() & 0xffff];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Close the active segment, so it can be replayed.
+   */
+  private void rotate() throws IOException {
+    if (this.activeChannel == null) {
+      return;
+    }
+    this.activeChannel.close();
+    this.activeChannel = null;
+    this.segments.add(this.activeSegment);
+    this.activeSegment = null;
+  }
+
+  /**
+   * Write the spooled records through the driver, oldest first, until the spool is empty or a
+   * write fails.
+   *
+   * @return the number of records written
+   */
+  public int replay() {
+    if (!this.replayLock.tryLock()) {
+      // already replaying on another thread
+      return 0;
+    }
+    try {
+      return replaySegments();
+    } finally {
+      this.replayLock.unlock();
+    }
+  }
+
+  private int replaySegments() {
+    int replayed = 0;
+    for (;;) {
+      File segment;
+      long position;
+      synchronized (this) {
+        if (this.segments.isEmpty()) {
+          try {
+            rotate();
+          } catch (IOException ioe) {
+            LOGGER.log(Level.SEVERE, "Can not close spool segment " + this.activeSegment, ioe);
+            return replayed;
+          }
+        }
+        segment = this.segments.peek();
+        if (segment == null) {
+          return replayed;
+        }
+        if (!segment.equals(this.replaySegment)) {
+          this.replaySegment = segment;
+          this.replayPosition = 0;
+        }
+        position = this.replayPosition;
+      }
+
+      boolean corrupt = false;
+      try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        for (;;) {
+          header.clear();
+          if (!readFully(channel, header, position)) {
+            break;
+          }
+          int payloadSize = header.getInt(0);
+          int checksum = header.getInt(4);
+          long end = position + RECORD_HEADER_SIZE + payloadSize;
+          // a record written with a larger maxSegmentBytes is still read, only the framing bounds it
+          if (payloadSize <= 0 || end > size) {
+            this.corruptCount.incrementAndGet();
+            // a record running past the end of the segment is a torn tail, records after an
+            // unreadable length can not be found
+            corrupt = payloadSize <= 0 && position + RECORD_HEADER_SIZE < size;
+            break;
+          }
+          ByteBuffer payload = ByteBuffer.allocate(payloadSize);
+          if (!readFully(channel, payload, position + RECORD_HEADER_SIZE)) {
+            this.corruptCount.incrementAndGet();
+            break;
+          }
+          CRC32 crc = new CRC32();
+          crc.update(payload.array(), 0, payloadSize);
+          if ((int) crc.getValue() != checksum) {
+            this.corruptCount.incrementAndGet();
+            corrupt = end < size;
+            break;
+          }
+
+          this.replayLimiter.acquire(payloadSize);
+          if (!write(payload)) {
+            return replayed;
+          }
+          replayed++;
+          this.replayedCount.incrementAndGet();
+          position = end;
+          synchronized (this) {
+            this.replayPosition = position;
+          }
+        }
+      } catch (IOException ioe) {
+        LOGGER.log(Level.SEVERE, "Can not read spool segment " + segment, ioe);
+        return replayed;
+      }
+
+      synchronized (this) {
+        this.segments.poll();
+        this.totalBytes -= segment.length();
+        this.replaySegment = null;
+        this.replayPosition = 0;
+      }
+      if (corrupt) {
+        keepCorrupt(segment, position);
+      } else if (!segment.delete()) {
+        LOGGER.log(Level.WARNING, "Can not delete replayed spool segment {0}", segment);
+      }
+    }
+  }
+
+  /**
+   * Keep a segment with an unreadable record before its end, out of the replay.
+   */
+  private static void keepCorrupt(final File segment, final long position) {
+    File corrupt = new File(segment.getPath() + CORRUPT_SUFFIX);
+    if (segment.renameTo(corrupt)) {
+      LOGGER.log(Level.SEVERE, "Unreadable record at byte {0} of spool segment {1}, the segment is kept as {2}",
+              new Object[]{position, segment, corrupt});
+    } else {
+      LOGGER.log(Level.SEVERE, "Unreadable record at byte {0} of spool segment {1}, the segment is replayed again by the next DiskSpool",
+              new Object[]{position, segment});
+    }
+  }
+
+  private static boolean readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+    long offset = position;
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, offset);
+      if (read < 0) {
+        return false;
+      }
+      offset += read;
+    }
+    buffer.flip();
+    return true;
+  }
+
+  private boolean write(final ByteBuffer payload) {
+    byte version = payload.get();
+    if (version != FORMAT_VERSION) {
+      // written by a newer version, skip it
+      this.corruptCount.incrementAndGet();
+      return true;
+    }
+    String database = getString(payload);
+    RetentionPolicy retentionPolicy = new RetentionPolicy(getString(payload));
+    ConsistencyLevel consistency = consistencyLevel(getString(payload));
+    String records = new String(payload.array(), payload.position(), payload.remaining(), StandardCharsets.UTF_8);
+    try {
+      this.inflowDriver.write(database, retentionPolicy, consistency, records);
+      return true;
+    } catch (InflowException | RuntimeException e) {
+      LOGGER.log(Level.FINE, "Spool replay failed, retrying later", e);
+      return false;
+    }
+  }
+
+  private static ConsistencyLevel consistencyLevel(final String level) {
+    for (ConsistencyLevel consistencyLevel : ConsistencyLevel.values()) {
+      if (consistencyLevel.equals(level)) {
+        return consistencyLevel;
+      }
+    }
+    return ConsistencyLevel.ONE;
+  }
+
+  /**
+   * Stop the replay thread and close the active segment. Spooled records stay on disk and are
+   * replayed by the next DiskSpool of the directory.
+   *
+   * @throws InflowException if the active segment can not be closed
+   */
+  public void close() throws InflowException {
+    this.scheduler.shutdownNow();
+    synchronized (this) {
+      try {
+        rotate();
+      } catch (IOException ioe) {
+        throw new InflowException("Can not close spool segment: " + ioe.getMessage(), ioe);
+      }
+    }
+  }
+
+  public File getDirectory() {
+    return this.directory;
+  }
+
+  /**
+   * @return the number of bytes of all segments
+   */
+  public synchronized long getTotalBytes() {
+    return this.totalBytes;
+  }
+
+  /**
+   * @return the number of segments, including the active one
+   */
+  public synchronized int getSegmentCount() {
+    return this.segments.size() + (this.activeChannel != null ? 1 : 0);
+  }
+
+  /**
+   * @return the number of batches appended
+   */
+  public long getSpooledCount() {
+    return this.spooledCount.get();
+  }
+
+  /**
+   * @return the number of records written by the replay, a batch larger than a segment is
+   * spooled as several records
+   */
+  public long getReplayedCount() {
+    return this.replayedCount.get();
+  }
+
+  /**
+   * @return the number of batches not appended because the spool was full or a point did not
+   * fit in a segment
+   */
+  public long getDroppedCount() {
+    return this.droppedCount.get();
+  }
+
+  /**
+   * @return the number of unreadable records found during the replay
+   */
+  public long getCorruptCount() {
+    return this.corruptCount.get();
+  }
+
+}
@@ -1,34 +1,53 @@
 package com.koadweb.inflow;
 
-import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.koadweb.inflow.BatchProcessor.BatchEntry;
+import com.squareup.okhttp.ConnectionPool;
 import com.squareup.okhttp.OkHttpClient;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
 import org.influxdb.InfluxDB.ConsistencyLevel;
 import org.influxdb.InfluxDB.RetentionPolicy;
+import org.influxdb.CountingBody;
+import org.influxdb.GzipBody;
 import org.influxdb.InfluxDBHTTPErrorHandler;
 import org.influxdb.InfluxDBHTTPInterface;
+import org.influxdb.InfluxDBPartialWriteException;
+import org.influxdb.LineProtocolBody;
 import org.influxdb.TimeUtil;
 import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.LineProtocolEncoder;
 import org.influxdb.dto.Point;
 import org.influxdb.dto.Pong;
 import org.influxdb.dto.Query;
 import org.influxdb.dto.QueryResult;
+import org.influxdb.dto.SeriesKeyCache;
 import retrofit.RestAdapter;
 import retrofit.client.Client;
 import retrofit.client.Header;
 import retrofit.client.OkClient;
 import retrofit.client.Response;
+import retrofit.mime.TypedOutput;
 import retrofit.mime.TypedString;
 
-public class DriverHTTP implements DriverInterface, QueryDriverInterface {
+public class DriverHTTP implements DriverInterface, QueryDriverInterface, AutoCloseable {
 
   protected Map<String, String> parameters;
 
@@ -38,12 +57,43 @@ public class DriverHTTP implements DriverInterface, QueryDriverInterface {
   protected Client client;
   protected RestAdapter restAdapter;
   protected InfluxDBHTTPInterface restService;
+  protected final SeriesKeyCache seriesKeyCache = new SeriesKeyCache();
+  protected int chunkSize = LineProtocolBody.DEFAULT_CHUNK_SIZE;
 
-  private BatchProcessor batchProcessor;
-  private final AtomicBoolean batchEnabled = new AtomicBoolean(false);
+  public static final int DEFAULT_GZIP_LEVEL = Deflater.DEFAULT_COMPRESSION;
+  public static final int DEFAULT_GZIP_MIN_SIZE = 1024;
+
+  private volatile boolean gzipEnabled = false;
+  private volatile int gzipLevel = DEFAULT_GZIP_LEVEL;
+  private volatile int gzipMinSize = DEFAULT_GZIP_MIN_SIZE;
+  private final AtomicLong gzipRawBytes = new AtomicLong();
+  private final AtomicLong gzipCompressedBytes = new AtomicLong();
+
+  private volatile RetryPolicy retryPolicy;
+  private ScheduledExecutorService retryScheduler;
+  private final AtomicInteger pendingRetries = new AtomicInteger();
+  private final Set<RetryWrite> retries = Collections.newSetFromMap(new ConcurrentHashMap<RetryWrite, Boolean>());
+  private volatile GiveUpHandler giveUpHandler;
+  private final AtomicLong retryCount = new AtomicLong();
+  private final AtomicLong giveUpCount = new AtomicLong();
+
+  private volatile QuarantineHandler quarantineHandler;
+  private final AtomicLong quarantinedCount = new AtomicLong();
+
+  private volatile BatchProcessor batchProcessor;
   private final AtomicLong writeCount = new AtomicLong();
   private final AtomicLong unBatchedCount = new AtomicLong();
   private final AtomicLong batchedCount = new AtomicLong();
+  private final AtomicLong requestCount = new AtomicLong();
+  private final AtomicLong byteCount = new AtomicLong();
+
+  public static final int DEFAULT_CLOSE_TIMEOUT_SECONDS = 30;
+  public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+  public static final long DEFAULT_KEEP_ALIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  // the connection pool created for this driver, evicted on close; shared pools are left open
+  private volatile ConnectionPool connectionPool;
+  private volatile boolean closed = false;
 
   public DriverHTTP(final String uri, final String username, final String password, Client client) {
     Preconditions.checkArgument(!Strings.isNullOrEmpty(uri), "URI can not be null or empty");
@@ -53,8 +103,11 @@ public class DriverHTTP implements DriverInterface, QueryDriverInterface {
     this.username = username;
     this.password = password;
 
-    if (this.client == null) {
-      this.client = new OkClient(new OkHttpClient());
+    if (client == null) {
+      OkHttpClient okHttpClient = new OkHttpClient();
+      okHttpClient.setConnectionPool(newConnectionPool());
+      this.connectionPool = okHttpClient.getConnectionPool();
+      this.client = new OkClient(okHttpClient);
     } else {
       this.client = client;
     }
@@ -71,6 +124,24 @@ public class DriverHTTP implements DriverInterface, QueryDriverInterface {
     this(uri, username, password, null);
   }
 
+  /**
+   * @return a connection pool for a single driver, instead of the default pool shared by all
+   * OkHttpClients
+   */
+  static ConnectionPool newConnectionPool() {
+    return new ConnectionPool(DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_KEEP_ALIVE_MILLIS);
+  }
+
+  /**
+   * Set the pool owned by this driver, its connections are evicted when this driver is closed.
+   *
+   * @param connectionPool the pool of the OkHttpClient given to this driver, not shared with others
+   */
+  void setOwnedConnectionPool(final ConnectionPool connectionPool) {
+    Preconditions.checkArgument(connectionPool != ConnectionPool.getDefault(), "The default ConnectionPool is shared");
+    this.connectionPool = connectionPool;
+  }
+
   public Pong ping() {
     Stopwatch watch = Stopwatch.createStarted();
     Response response = this.restService.ping();
@@ -93,49 +164,582 @@ public class DriverHTTP implements DriverInterface, QueryDriverInterface {
 
   @Override
   public void write(final String database, final RetentionPolicy retentionPolicy, final Point point) throws InflowException {
-    if (this.batchEnabled.get()) {
-      BatchEntry batchEntry = new BatchEntry(point, database, retentionPolicy);
-      this.batchProcessor.put(batchEntry);
+    write(database, retentionPolicy, ConsistencyLevel.ONE, TimeUnit.NANOSECONDS, point);
+  }
+
+  /**
+   * Write a Point, through the batch processor if batching is enabled. Batched Points are
+   * grouped into one request per database, retention policy, consistency and precision.
+   *
+   * @param database the database to write to
+   * @param retentionPolicy the retention policy to write to
+   * @param consistency the consistency level of the write
+   * @param precision the precision the timestamp is written in
+   * @param point the Point to write
+   */
+  public void write(final String database, final RetentionPolicy retentionPolicy, final ConsistencyLevel consistency,
+          final TimeUnit precision, final Point point) throws InflowException {
+    BatchProcessor processor = this.batchProcessor;
+    if (processor != null) {
+      BatchEntry batchEntry = new BatchEntry(point, database, retentionPolicy, consistency, precision);
+      processor.put(batchEntry);
     } else {
-      BatchPoints batchPoints = BatchPoints.database(database).retentionPolicy(retentionPolicy).build();
+      BatchPoints batchPoints = BatchPoints.database(database).retentionPolicy(retentionPolicy)
+              .consistency(consistency).precision(precision).build();
       batchPoints.point(point);
-      this.write(batchPoints);
+      writeBatchPoints(batchPoints);
       this.unBatchedCount.incrementAndGet();
     }
     this.writeCount.incrementAndGet();
   }
 
+  /**
+   * Collect single Point writes in a batch processor, created from the Builder, and write them in
+   * batches. A batch processor enabled before is flushed and replaced.
+   *
+   * @param builder the settings of the batch processor, created with
+   * {@code BatchProcessor.builder(driver)} for this driver
+   */
+  public synchronized void enableBatch(final BatchProcessor.Builder builder) throws InflowException {
+    Preconditions.checkArgument(builder.getDriver() == this, "The BatchProcessor.Builder must be created for this driver");
+    BatchProcessor previous = this.batchProcessor;
+    this.batchProcessor = builder.build();
+    if (previous != null) {
+      previous.flush();
+    }
+  }
+
+  /**
+   * Collect single Point writes and write them in batches.
+   *
+   * @param actions the number of Points after which a batch is written
+   * @param flushDuration the time after which the collected Points are written
+   * @param flushDurationTimeUnit the unit of flushDuration
+   */
+  public void enableBatch(final int actions, final int flushDuration, final TimeUnit flushDurationTimeUnit) throws InflowException {
+    enableBatch(BatchProcessor.builder(this).actions(actions).interval(flushDuration, flushDurationTimeUnit));
+  }
+
+  /**
+   * Stop batching single Point writes, the collected Points are written before this returns.
+   */
+  public synchronized void disableBatch() throws InflowException {
+    BatchProcessor previous = this.batchProcessor;
+    this.batchProcessor = null;
+    if (previous != null) {
+      previous.flush();
+    }
+  }
+
+  public boolean isBatchEnabled() {
+    return this.batchProcessor != null;
+  }
+
+  /**
+   * @return the batch processor collecting single Point writes, or null if batching is disabled
+   */
+  public BatchProcessor getBatchProcessor() {
+    return this.batchProcessor;
+  }
+
+  /**
+   * @return a snapshot of the write statistics
+   */
+  public WriteStats getStats() {
+    return new WriteStats(this.writeCount.get(), this.unBatchedCount.get(), this.batchedCount.get(),
+            this.requestCount.get(), this.byteCount.get(), this.batchProcessor);
+  }
+
   @Override
   public void write(final String database, final RetentionPolicy retentionPolicy, final ConsistencyLevel consistency, final String records) {
-    restService.writePoints(
-            this.username,
-            this.password,
-            database,
-            retentionPolicy.toString(),
-            TimeUtil.toTimePrecision(TimeUnit.NANOSECONDS),
-            consistency.toString(),
-            new TypedString(records));
+    try {
+      writeBody(database, retentionPolicy, consistency, TimeUnit.NANOSECONDS, new TypedString(records), null);
+    } catch (InfluxDBPartialWriteException e) {
+      resendAccepted(database, retentionPolicy, consistency, TimeUnit.NANOSECONDS, Arrays.asList(records.split("\n")), e);
+    }
   }
 
   @Override
   public void write(final String database, final RetentionPolicy retentionPolicy, final ConsistencyLevel consistency, final List<String> records) {
-    final String joinedRecords = Joiner.on("\n").join(records);
-    write(database, retentionPolicy, consistency, joinedRecords);
+    try {
+      writeBody(database, retentionPolicy, consistency, TimeUnit.NANOSECONDS, LineProtocolBody.of(records, this.chunkSize), null);
+    } catch (InfluxDBPartialWriteException e) {
+      resendAccepted(database, retentionPolicy, consistency, TimeUnit.NANOSECONDS, records, e);
+    }
   }
   
   @Override
   public void write(final BatchPoints batchPoints) {
     this.batchedCount.addAndGet(batchPoints.getPoints().size());
-    TypedString lineProtocol = new TypedString(batchPoints.lineProtocol());
+    writeBatchPoints(batchPoints);
+  }
+
+  private void writeBatchPoints(final BatchPoints batchPoints) {
+    LineProtocolBody lineProtocol = LineProtocolBody.of(batchPoints, this.chunkSize, this.seriesKeyCache);
+    try {
+      writeBody(batchPoints.getDatabase(), batchPoints.getRetentionPolicy(), batchPoints.getConsistency(),
+              batchPoints.getPrecision(), lineProtocol, batchPoints);
+    } catch (InfluxDBPartialWriteException e) {
+      List<String> lines = new ArrayList<>(batchPoints.getPoints().size());
+      LineProtocolEncoder encoder = new LineProtocolEncoder();
+      encoder.setPrecision(batchPoints.getPrecision());
+      for (Point point : batchPoints.getPoints()) {
+        lines.add(encoder.reset().encode(point).toString());
+      }
+      resendAccepted(batchPoints.getDatabase(), batchPoints.getRetentionPolicy(), batchPoints.getConsistency(),
+              batchPoints.getPrecision(), lines, e);
+    }
+  }
+
+  /**
+   * Receives the lines of a write request InfluxDB rejected.
+   */
+  public interface QuarantineHandler {
+
+    /**
+     * @param database the database the lines were written to
+     * @param retentionPolicy the retention policy the lines were written to
+     * @param lines the rejected lines
+     * @param cause the error InfluxDB answered with
+     */
+    void quarantined(String database, RetentionPolicy retentionPolicy, List<String> lines, InfluxDBPartialWriteException cause);
+  }
+
+  /**
+   * Quarantine the lines InfluxDB named in a partial write error and send the other lines once
+   * more. Writing a point twice stores it once, so lines InfluxDB already accepted are not
+   * duplicated. The error is thrown if it names none of the lines.
+   */
+  private void resendAccepted(final String database, final RetentionPolicy retentionPolicy, final ConsistencyLevel consistency,
+          final TimeUnit precision, final List<String> lines, final InfluxDBPartialWriteException e) {
+    if (!e.hasRejectedLines()) {
+      throw e;
+    }
+    List<String> accepted = new ArrayList<>(lines.size());
+    List<String> rejected = new ArrayList<>();
+    for (String line : lines) {
+      if (line.isEmpty()) {
+        continue;
+      }
+      if (e.isRejected(line)) {
+        rejected.add(line);
+      } else {
+        accepted.add(line);
+      }
+    }
+    if (rejected.isEmpty()) {
+      throw e;
+    }
+    quarantine(database, retentionPolicy, rejected, e);
+    if (!accepted.isEmpty()) {
+      send(database, retentionPolicy, consistency, precision, LineProtocolBody.of(accepted, this.chunkSize));
+    }
+  }
+
+  private void quarantine(final String database, final RetentionPolicy retentionPolicy, final List<String> lines,
+          final InfluxDBPartialWriteException e) {
+    this.quarantinedCount.addAndGet(lines.size());
+    QuarantineHandler handler = this.quarantineHandler;
+    if (handler != null) {
+      handler.quarantined(database, retentionPolicy, lines, e);
+    } else {
+      Logger.getLogger(DriverHTTP.class.getName()).log(Level.WARNING,
+              "Quarantined " + lines.size() + " rejected lines, the first one: " + lines.get(0), e);
+    }
+  }
+
+  /**
+   * Receives the batches of write requests which failed after they were handed to the retry
+   * scheduler, so the caller was not told about the failure.
+   */
+  public interface GiveUpHandler {
+
+    /**
+     * @param batchPoints the batch of the failed write request
+     * @param cause the error of the last attempt
+     */
+    void gaveUp(BatchPoints batchPoints, Exception cause);
+  }
+
+  /**
+   * @param batchPoints the batch the body was encoded from, or null for records
+   */
+  private void writeBody(final String database, final RetentionPolicy retentionPolicy, final ConsistencyLevel consistency,
+          final TimeUnit precision, final TypedOutput body, final BatchPoints batchPoints) {
+    RetryPolicy policy = this.retryPolicy;
+    // records could not be handed to a give up handler, their failure is thrown to the caller
+    if (policy == null || batchPoints == null) {
+      send(database, retentionPolicy, consistency, precision, body);
+      return;
+    }
+    try {
+      send(database, retentionPolicy, consistency, precision, body);
+    } catch (RuntimeException e) {
+      if (!policy.isRetryable(e) || !policy.canRetry(1)) {
+        throw e;
+      }
+      if (this.pendingRetries.incrementAndGet() > policy.getMaxPending()) {
+        // hand the failure back to the caller instead of queueing without bound
+        this.pendingRetries.decrementAndGet();
+        this.giveUpCount.incrementAndGet();
+        throw e;
+      }
+      RetryWrite retry = new RetryWrite(policy, database, retentionPolicy, consistency, precision, body, batchPoints,
+              this.batchProcessor);
+      this.retries.add(retry);
+      scheduleRetry(retry, 1);
+    }
+  }
+
+  /**
+   * A write request sent again on the retry scheduler after it failed.
+   */
+  private class RetryWrite implements Runnable {
+
+    private final RetryPolicy policy;
+    private final String database;
+    private final RetentionPolicy retentionPolicy;
+    private final ConsistencyLevel consistency;
+    private final TimeUnit precision;
+    private final TypedOutput body;
+    private final BatchPoints batchPoints;
+    // the processor batching on this driver when the write failed, the default give up handler
+    private final BatchProcessor batchProcessor;
+    private volatile int attempt = 1;
+
+    RetryWrite(final RetryPolicy policy, final String database, final RetentionPolicy retentionPolicy,
+            final ConsistencyLevel consistency, final TimeUnit precision, final TypedOutput body,
+            final BatchPoints batchPoints, final BatchProcessor batchProcessor) {
+      this.policy = policy;
+      this.database = database;
+      this.retentionPolicy = retentionPolicy;
+      this.consistency = consistency;
+      this.precision = precision;
+      this.body = body;
+      this.batchPoints = batchPoints;
+      this.batchProcessor = batchProcessor;
+    }
+
+    @Override
+    public void run() {
+      this.attempt++;
+      retryCount.incrementAndGet();
+      try {
+        send(this.database, this.retentionPolicy, this.consistency, this.precision, this.body);
+      } catch (RuntimeException e) {
+        if (this.policy.isRetryable(e) && this.policy.canRetry(this.attempt)) {
+          scheduleRetry(this, this.attempt);
+          return;
+        }
+        giveUp(this, e);
+        return;
+      }
+      if (retries.remove(this)) {
+        pendingRetries.decrementAndGet();
+      }
+    }
+  }
+
+  private void scheduleRetry(final RetryWrite retry, final int attempt) {
+    long delay = retry.policy.delayNanos(attempt);
+    try {
+      retryScheduler().schedule(retry, delay, TimeUnit.NANOSECONDS);
+    } catch (RuntimeException e) {
+      giveUp(retry, e);
+    }
+  }
+
+  /**
+   * Hand the batch of a retry which is given up to the give up handler, or log the failure.
+   */
+  private void giveUp(final RetryWrite retry, final Exception e) {
+    if (!this.retries.remove(retry)) {
+      // given up on close already
+      return;
+    }
+    this.giveUpCount.incrementAndGet();
+    GiveUpHandler handler = this.giveUpHandler;
+    if (handler == null) {
+      handler = retry.batchProcessor;
+    }
+    try {
+      if (handler == null) {
+        Logger.getLogger(DriverHTTP.class.getName()).log(Level.SEVERE, "Write failed after " + retry.attempt + " attempts", e);
+      } else {
+        handler.gaveUp(retry.batchPoints, e);
+      }
+    } catch (RuntimeException re) {
+      Logger.getLogger(DriverHTTP.class.getName()).log(Level.SEVERE, "Give up handler failed", re);
+    } finally {
+      // pending until the batch was handed over
+      this.pendingRetries.decrementAndGet();
+    }
+  }
+
+  private synchronized ScheduledExecutorService retryScheduler() {
+    if (this.closed) {
+      throw new RejectedExecutionException("DriverHTTP is closed");
+    }
+    if (this.retryScheduler == null) {
+      this.retryScheduler = Executors.newSingleThreadScheduledExecutor(
+              new ThreadFactoryBuilder().setNameFormat("inflow-retry-%d").setDaemon(true).build());
+    }
+    return this.retryScheduler;
+  }
+
+  private void send(final String database, final RetentionPolicy retentionPolicy, final ConsistencyLevel consistency,
+          final TimeUnit precision, final TypedOutput body) {
+    boolean gzip = isGzipped(body);
     restService.writePoints(
             this.username,
             this.password,
-            batchPoints.getDatabase(),
-            batchPoints.getRetentionPolicy().toString(),
-            TimeUtil.toTimePrecision(TimeUnit.NANOSECONDS),
-            batchPoints.getConsistency().toString(),
-            lineProtocol);
+            database,
+            retentionPolicy.toString(),
+            TimeUtil.toTimePrecision(precision),
+            consistency.toString(),
+            gzip ? "gzip" : null,
+            requestBody(body, gzip));
+    this.requestCount.incrementAndGet();
+  }
+
+  /**
+   * @param body the body of a write request
+   * @return true if the body is sent compressed
+   */
+  boolean isGzipped(final TypedOutput body) {
+    return this.gzipEnabled && !isShorterThan(body, this.gzipMinSize);
+  }
+
+  /**
+   * @param body the body of a write request
+   * @param gzip true to compress the body
+   * @return the body to send, counting the bytes sent
+   */
+  TypedOutput requestBody(final TypedOutput body, final boolean gzip) {
+    TypedOutput requestBody = body;
+    if (gzip) {
+      requestBody = new GzipBody(body, this.gzipLevel, this.gzipRawBytes, this.gzipCompressedBytes);
+    }
+    return new CountingBody(requestBody, this.byteCount);
+  }
+
+  /**
+   * Count a write request sent without the RestAdapter.
+   */
+  void countRequest() {
+    this.requestCount.incrementAndGet();
+  }
+
+
+  private static boolean isShorterThan(final TypedOutput body, final int bytes) {
+    if (body instanceof LineProtocolBody) {
+      return ((LineProtocolBody) body).isShorterThan(bytes);
+    }
+    return body.length() >= 0 && body.length() < bytes;
+  }
+
+  /**
+   * Close with the default timeout of {@value #DEFAULT_CLOSE_TIMEOUT_SECONDS} seconds.
+   *
+   * @see #close(long, TimeUnit)
+   */
+  @Override
+  public void close() throws InflowException {
+    close(DEFAULT_CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Flush and close the batch processor, wait for the pending retries and evict the connections
+   * of the pool this driver created. Retries still pending when the timeout passes are given up.
+   *
+   * @param timeout the time to wait for the queued Points and the requests in flight
+   * @param unit the unit of timeout
+   * @return the number of batched Points written and dropped while closing
+   */
+  public CloseResult close(final long timeout, final TimeUnit unit) throws InflowException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    CloseResult result = new CloseResult(0, 0);
+    BatchProcessor processor;
+    synchronized (this) {
+      processor = this.batchProcessor;
+      this.batchProcessor = null;
+    }
+    if (processor != null) {
+      result = processor.close(timeout, unit);
+    }
+
+    ScheduledExecutorService scheduler;
+    synchronized (this) {
+      this.closed = true;
+      scheduler = this.retryScheduler;
+    }
+    if (scheduler != null) {
+      // delayed retries still run after shutdown
+      scheduler.shutdown();
+      try {
+        if (!scheduler.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+          Logger.getLogger(DriverHTTP.class.getName()).log(Level.WARNING,
+                  "Closed with " + this.pendingRetries.get() + " retries pending");
+        }
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      } finally {
+        scheduler.shutdownNow();
+        for (RetryWrite retry : this.retries) {
+          giveUp(retry, new RejectedExecutionException("DriverHTTP is closed"));
+        }
+      }
+    }
+
+    ConnectionPool pool = this.connectionPool;
+    if (pool != null) {
+      pool.evictAll();
+    }
+    return result;
+  }
+
+  /**
+   * @return true once close was called, writes are still sent but not retried
+   */
+  public boolean isClosed() {
+    return this.closed;
+  }
+
+  /**
+   * Retry failed write requests in the background. The first attempt is made on the caller
+   * thread, errors which are not retried are thrown to the caller. Write requests of records are
+   * not retried, their errors are thrown to the caller, which keeps the records, like the replay of
+   * a DiskSpool.
+   *
+   * @param retryPolicy the policy, or null to not retry
+   */
+  public void setRetryPolicy(final RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  public RetryPolicy getRetryPolicy() {
+    return this.retryPolicy;
+  }
+
+  /**
+   * @return the number of write requests sent again
+   */
+  public long getRetryCount() {
+    return this.retryCount.get();
+  }
+
+  /**
+   * @return the number of write requests which failed after a retry or could not be retried
+   */
+  public long getGiveUpCount() {
+    return this.giveUpCount.get();
+  }
+
+  /**
+   * @return the number of write requests waiting for a retry
+   */
+  public int getPendingRetryCount() {
+    return this.pendingRetries.get();
+  }
+
+  /**
+   * Receive the batches of write requests given up after their retries, instead of logging them.
+   * By default they are handed to the batch processor enabled on this driver, which spools them
+   * or counts them as failed.
+   *
+   * @param giveUpHandler the handler, or null to use the batch processor
+   */
+  public void setGiveUpHandler(final GiveUpHandler giveUpHandler) {
+    this.giveUpHandler = giveUpHandler;
+  }
+
+  /**
+   * Receive the lines InfluxDB rejected in a partial write, instead of logging them.
+   *
+   * @param quarantineHandler the handler, or null to log the lines
+   */
+  public void setQuarantineHandler(final QuarantineHandler quarantineHandler) {
+    this.quarantineHandler = quarantineHandler;
+  }
+
+  /**
+   * @return the number of lines InfluxDB rejected in partial writes
+   */
+  public long getQuarantinedCount() {
+    return this.quarantinedCount.get();
+  }
+
+  /**
+   * Send write requests with gzip compression, with the default level and minimum size.
+   */
+  public void enableGzip() {
+    enableGzip(DEFAULT_GZIP_LEVEL, DEFAULT_GZIP_MIN_SIZE);
+  }
+
+  /**
+   * Send write requests with gzip compression.
+   *
+   * @param level the compression level, from 0 to 9 or {@link Deflater#DEFAULT_COMPRESSION}
+   * @param minSize the size in bytes below which request bodies are sent uncompressed
+   */
+  public void enableGzip(final int level, final int minSize) {
+    Preconditions.checkArgument(level == Deflater.DEFAULT_COMPRESSION || (level >= 0 && level <= 9),
+            "gzip level must be between 0 and 9");
+    Preconditions.checkArgument(minSize >= 0, "gzip minSize must be 0 or greater");
+    this.gzipLevel = level;
+    this.gzipMinSize = minSize;
+    this.gzipEnabled = true;
+  }
+
+  public void disableGzip() {
+    this.gzipEnabled = false;
+  }
+
+  public boolean isGzipEnabled() {
+    return this.gzipEnabled;
+  }
+
+  public int getGzipLevel() {
+    return this.gzipLevel;
+  }
+
+  public int getGzipMinSize() {
+    return this.gzipMinSize;
+  }
+
+  /**
+   * @return the number of bytes written in compressed requests, before compression
+   */
+  public long getGzipRawBytes() {
+    return this.gzipRawBytes.get();
+  }
+
+  /**
+   * @return the number of bytes written in compressed requests, after compression
+   */
+  public long getGzipCompressedBytes() {
+    return this.gzipCompressedBytes.get();
+  }
+
+  /**
+   * The number of encoded bytes buffered before they are written to the request stream.
+   *
+   * @param chunkSize the chunk size in bytes
+   */
+  public void setChunkSize(final int chunkSize) {
+    Preconditions.checkArgument(chunkSize > 0, "chunkSize must be greater than 0");
+    this.chunkSize = chunkSize;
+  }
+
+  public int getChunkSize() {
+    return this.chunkSize;
+  }
 
+  /**
+   * @return the cache of escaped series keys used when writing BatchPoints
+   */
+  public SeriesKeyCache getSeriesKeyCache() {
+    return this.seriesKeyCache;
   }
 
   @Override
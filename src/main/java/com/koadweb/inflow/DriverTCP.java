@@ -0,0 +1,322 @@
+package com.koadweb.inflow;
+
+import com.google.common.base.Preconditions;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.LineProtocolEncoder;
+import org.influxdb.dto.Point;
+import org.influxdb.dto.SeriesKeyCache;
+
+/**
+ * Streams newline delimited line protocol over a persistent TCP connection, for listeners like
+ * the socket_listener of Telegraf or an InfluxDB relay.
+ *
+ * Writes are encoded into a direct buffer and written to one long lived SocketChannel, flushed at
+ * the end of every write and whenever the buffer is full. Writes are serialized, so the lines of
+ * concurrent callers do not interleave. Before a write the driver checks whether the listener
+ * closed the connection, like after an idle timeout, and connects again. When a write or a
+ * connect fails the write is sent once more on a new connection; if that fails too, writes fail
+ * right away with an InflowException until the backoff of the reconnect policy passed.
+ *
+ * The database, retention policy and consistency are set in the configuration of the listener and
+ * are ignored here; the times of a BatchPoints are written in its precision, which has to match
+ * the precision of the listener.
+ *
+ */
+public class DriverTCP implements DriverInterface, AutoCloseable {
+
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+  public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+  public static final int DEFAULT_WRITE_TIMEOUT_MILLIS = 10000;
+
+  protected String host;
+  protected int port;
+  protected final SeriesKeyCache seriesKeyCache = new SeriesKeyCache();
+
+  private final LineProtocolEncoder encoder = new LineProtocolEncoder(1024, this.seriesKeyCache);
+  private final ByteBuffer buffer;
+  // the few bytes a listener may send back are read and discarded
+  private final ByteBuffer probe = ByteBuffer.allocate(256);
+
+  private volatile int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+  private volatile int writeTimeoutMillis = DEFAULT_WRITE_TIMEOUT_MILLIS;
+  private volatile RetryPolicy reconnectPolicy = RetryPolicy.builder()
+          .maxAttempts(Integer.MAX_VALUE)
+          .baseDelay(RetryPolicy.DEFAULT_BASE_DELAY_MILLIS, TimeUnit.MILLISECONDS)
+          .maxDelay(RetryPolicy.DEFAULT_MAX_DELAY_MILLIS, TimeUnit.MILLISECONDS)
+          .build();
+
+  private SocketChannel channel;
+  private Selector selector;
+  // the number of failed connects since the last successful one, and when to try again
+  private int failedConnects = 0;
+  private long nextConnectAt;
+
+  private final AtomicLong connectCount = new AtomicLong();
+  private final AtomicLong lineCount = new AtomicLong();
+  private final AtomicLong byteCount = new AtomicLong();
+
+  public DriverTCP(String host, int port) {
+    this(host, port, DEFAULT_BUFFER_SIZE);
+  }
+
+  public DriverTCP(String host, int port, int bufferSize) {
+    Preconditions.checkArgument(bufferSize > 0, "bufferSize must be greater than 0");
+    this.host = host;
+    this.port = port;
+    this.buffer = ByteBuffer.allocateDirect(bufferSize);
+  }
+
+  @Override
+  public void write(final String database, final InfluxDB.RetentionPolicy retentionPolicy, final InfluxDB.ConsistencyLevel consistency, final String records) throws InflowException {
+    write(database, retentionPolicy, consistency, Collections.singletonList(records));
+  }
+
+  @Override
+  public synchronized void write(final String database, final InfluxDB.RetentionPolicy retentionPolicy, final InfluxDB.ConsistencyLevel consistency, final List<String> records) throws InflowException {
+    this.encoder.reset();
+    for (String record : records) {
+      this.encoder.encodeRecord(record);
+      if (record.length() > 0 && record.charAt(record.length() - 1) != '\n') {
+        this.encoder.encodeRecord("\n");
+      }
+    }
+    send(records.size());
+  }
+
+  @Override
+  public synchronized void write(final String database, final InfluxDB.RetentionPolicy retentionPolicy, final Point point) throws InflowException {
+    this.encoder.reset();
+    this.encoder.encodeLine(point);
+    send(1);
+  }
+
+  @Override
+  public synchronized void write(final BatchPoints batchPoints) throws InflowException {
+    this.encoder.reset();
+    this.encoder.encode(batchPoints);
+    send(batchPoints.getPoints().size());
+  }
+
+  /**
+   * Write the encoded lines, on a new connection once more if the write fails.
+   */
+  private void send(final int lines) throws InflowException {
+    try {
+      try {
+        connect();
+        writeEncoded();
+      } catch (IOException first) {
+        disconnect();
+        Logger.getLogger(DriverTCP.class.getName()).log(Level.FINE, "Write failed, connecting again", first);
+        try {
+          connect();
+          writeEncoded();
+        } catch (IOException ioe) {
+          disconnect();
+          backoff();
+          throw new InflowException("SocketChannel IOException: " + ioe.getMessage(), ioe);
+        }
+      }
+      this.lineCount.addAndGet(lines);
+    } finally {
+      this.encoder.reset();
+    }
+  }
+
+  private void writeEncoded() throws IOException {
+    int size = this.encoder.size();
+    if (size > this.buffer.capacity()) {
+      writeFully(ByteBuffer.wrap(this.encoder.array(), 0, size));
+    } else {
+      this.buffer.clear();
+      this.encoder.writeTo(this.buffer);
+      this.buffer.flip();
+      writeFully(this.buffer);
+    }
+    this.byteCount.addAndGet(size);
+  }
+
+  private void writeFully(final ByteBuffer bytes) throws IOException {
+    while (bytes.hasRemaining()) {
+      if (this.channel.write(bytes) == 0) {
+        // the send buffer is full, wait until the listener reads
+        if (this.selector.select(this.writeTimeoutMillis) == 0) {
+          throw new IOException("Write timed out after " + this.writeTimeoutMillis + " ms");
+        }
+        this.selector.selectedKeys().clear();
+      }
+    }
+  }
+
+  /**
+   * Connect unless connected, or fail during the backoff after failed connects.
+   */
+  private void connect() throws IOException, InflowException {
+    if (this.channel != null) {
+      if (!isClosedByPeer()) {
+        return;
+      }
+      disconnect();
+    }
+    if (this.failedConnects > 0 && System.nanoTime() - this.nextConnectAt < 0) {
+      throw new InflowException("Not connected to " + endpoint() + ", reconnecting in "
+              + TimeUnit.NANOSECONDS.toMillis(this.nextConnectAt - System.nanoTime()) + " ms");
+    }
+    SocketChannel opened = openChannel();
+    try {
+      opened.configureBlocking(false);
+      Selector opener = Selector.open();
+      opened.register(opener, SelectionKey.OP_WRITE);
+      this.selector = opener;
+      this.channel = opened;
+    } catch (IOException | RuntimeException e) {
+      opened.close();
+      throw e;
+    }
+    this.failedConnects = 0;
+    this.connectCount.incrementAndGet();
+  }
+
+  /**
+   * Open a connected, blocking channel to the listener.
+   *
+   * @return the channel
+   * @throws IOException if the connect fails
+   */
+  protected SocketChannel openChannel() throws IOException {
+    SocketChannel opened = SocketChannel.open();
+    try {
+      opened.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+      // resolved on every connect to follow DNS changes
+      opened.socket().connect(new InetSocketAddress(this.host, this.port), this.connectTimeoutMillis);
+    } catch (IOException | RuntimeException e) {
+      opened.close();
+      throw e;
+    }
+    return opened;
+  }
+
+  /**
+   * @return the address of the listener, for messages
+   */
+  protected String endpoint() {
+    return this.host + ":" + this.port;
+  }
+
+  /**
+   * @return true if the listener closed the connection, the bytes it sent are discarded
+   */
+  private boolean isClosedByPeer() {
+    try {
+      int read;
+      do {
+        this.probe.clear();
+        read = this.channel.read(this.probe);
+      } while (read > 0);
+      return read < 0;
+    } catch (IOException ioe) {
+      return true;
+    }
+  }
+
+  private void backoff() {
+    this.failedConnects++;
+    this.nextConnectAt = System.nanoTime() + this.reconnectPolicy.delayNanos(this.failedConnects);
+  }
+
+  private void disconnect() {
+    if (this.selector != null) {
+      try {
+        this.selector.close();
+      } catch (IOException ioe) {
+        Logger.getLogger(DriverTCP.class.getName()).log(Level.FINE, null, ioe);
+      }
+      this.selector = null;
+    }
+    if (this.channel != null) {
+      try {
+        this.channel.close();
+      } catch (IOException ioe) {
+        Logger.getLogger(DriverTCP.class.getName()).log(Level.FINE, null, ioe);
+      }
+      this.channel = null;
+    }
+  }
+
+  /**
+   * The backoff between connects after a failed one, only its delays are used.
+   *
+   * @param reconnectPolicy
+   */
+  public void setReconnectPolicy(final RetryPolicy reconnectPolicy) {
+    Preconditions.checkNotNull(reconnectPolicy, "reconnectPolicy must not be null");
+    this.reconnectPolicy = reconnectPolicy;
+  }
+
+  public RetryPolicy getReconnectPolicy() {
+    return this.reconnectPolicy;
+  }
+
+  public void setConnectTimeout(final int timeout, final TimeUnit unit) {
+    Preconditions.checkArgument(timeout >= 0, "timeout must not be negative");
+    this.connectTimeoutMillis = (int) unit.toMillis(timeout);
+  }
+
+  public void setWriteTimeout(final int timeout, final TimeUnit unit) {
+    Preconditions.checkArgument(timeout > 0, "timeout must be greater than 0");
+    this.writeTimeoutMillis = (int) unit.toMillis(timeout);
+  }
+
+  public synchronized boolean isConnected() {
+    return this.channel != null;
+  }
+
+  /**
+   * @return the number of connections opened
+   */
+  public long getConnectCount() {
+    return this.connectCount.get();
+  }
+
+  /**
+   * @return the number of Points and records written
+   */
+  public long getLineCount() {
+    return this.lineCount.get();
+  }
+
+  /**
+   * @return the number of bytes written
+   */
+  public long getByteCount() {
+    return this.byteCount.get();
+  }
+
+  public SeriesKeyCache getSeriesKeyCache() {
+    return this.seriesKeyCache;
+  }
+
+  /**
+   * Close the connection, a later write connects again.
+   */
+  @Override
+  public synchronized void close() {
+    disconnect();
+    this.failedConnects = 0;
+  }
+
+}
@@ -1,74 +1,708 @@
 package com.koadweb.inflow;
 
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.Closeable;
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
 import java.net.UnknownHostException;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.influxdb.InfluxDB;
 import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.LineProtocolEncoder;
 import org.influxdb.dto.Point;
+import org.influxdb.dto.SeriesKeyCache;
 
-public class DriverUDP implements DriverInterface {
+/**
+ * Writes Points as UDP datagrams to the UDP listener of InfluxDB.
+ *
+ * All writes of a driver are sent through one long lived, unconnected DatagramChannel, which is
+ * safe for concurrent callers. Points are encoded and copied into a direct ByteBuffer reused by
+ * the writing thread, so a write allocates nothing. The host is resolved again every
+ * resolveInterval to follow DNS changes; if that fails the last address is kept.
+ *
+ * Batches and records are packed into datagrams of up to payloadSize bytes, as many newline
+ * separated lines as fit. A line can not be split across datagrams, the UDP listener parses each
+ * datagram on its own, so lines longer than payloadSize are rejected and counted, single Points
+ * included. The database, retention policy and consistency are set in the configuration of the
+ * UDP listener and are ignored here; the times of a BatchPoints are written in its precision,
+ * which has to match the precision of the listener.
+ *
+ * In async mode writes only enqueue the Points and records into a bounded lock free
+ * RingBufferQueue and never block; when the queue is full they are dropped and counted. A single
+ * background thread drains the queue, packs the lines and sends them through its own non
+ * blocking DatagramChannel; it parks while the queue is empty and is unparked by the next write.
+ * Datagrams the kernel has no send buffer for are dropped as well, and so are single Points
+ * longer than payloadSize.
+ *
+ */
+public class DriverUDP implements DriverInterface, AutoCloseable {
+
+  // the largest payload of an IPv4 UDP datagram
+  public static final int MAX_DATAGRAM_SIZE = 65507;
+  public static final int DEFAULT_BUFFER_SIZE = 1500;
+  public static final long DEFAULT_RESOLVE_INTERVAL_SECONDS = 60;
+  // below the usual Ethernet MTU, so datagrams are not fragmented
+  public static final int DEFAULT_PAYLOAD_SIZE = 1400;
+  public static final int DEFAULT_ASYNC_CAPACITY = 64 * 1024;
+  public static final int DEFAULT_CLOSE_TIMEOUT_SECONDS = 30;
+  // the lines packed per drain of the async queue
+  private static final int ASYNC_DRAIN_SIZE = 1024;
+  private static final long ASYNC_POLL_MILLIS = 100;
+  private static final long ASYNC_SEND_WAIT_MILLIS = 10;
+
+  private static final ThreadLocal<DatagramBuffer> BUFFERS = new ThreadLocal<DatagramBuffer>() {
+    @Override
+    protected DatagramBuffer initialValue() {
+      return new DatagramBuffer();
+    }
+  };
 
   protected String host;
-  protected InetAddress ipAddress;
   protected int port;
+  protected final SeriesKeyCache seriesKeyCache = new SeriesKeyCache();
+
+  private volatile InetSocketAddress address;
+  private volatile long resolvedAt;
+  // not the driver monitor, which close holds while the async sender still resolves
+  private final Object resolveLock = new Object();
+  private volatile long resolveIntervalNanos = TimeUnit.SECONDS.toNanos(DEFAULT_RESOLVE_INTERVAL_SECONDS);
+  private volatile int payloadSize = DEFAULT_PAYLOAD_SIZE;
+  // SO_SNDBUF of the channels, 0 for the default of the OS
+  private volatile int sendBufferSize = 0;
+  private DatagramChannel channel;
+  private final AtomicLong datagramCount = new AtomicLong();
+  private final AtomicLong rejectedCount = new AtomicLong();
+
+  private volatile AsyncSender asyncSender;
+  private final AtomicLong queueDroppedCount = new AtomicLong();
+  private final AtomicLong sendDroppedCount = new AtomicLong();
+  private final AtomicLong asyncSentCount = new AtomicLong();
 
   public DriverUDP(String host, int port) {
     this.host = host;
     this.port = port;
   }
-  
+
+  /**
+   * The encoder and the direct buffer of a writing thread.
+   */
+  private static final class DatagramBuffer {
+
+    private final LineProtocolEncoder encoder = new LineProtocolEncoder(DEFAULT_BUFFER_SIZE);
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE);
+
+    /**
+     * Empty the direct buffer, growing it to hold at least capacity bytes.
+     */
+    void clear(final int capacity) {
+      if (capacity > this.buffer.capacity()) {
+        this.buffer = ByteBuffer.allocateDirect(Math.min(Integer.highestOneBit(capacity - 1) << 1, MAX_DATAGRAM_SIZE));
+      }
+      this.buffer.clear();
+    }
+  }
+
+  /**
+   * Packs lines into datagrams of up to payloadSize bytes and sends each full datagram.
+   */
+  private class Packer {
+
+    private final DatagramBuffer datagram;
+    private final int payloadSize;
+    private int rejected = 0;
+    private int lines = 0;
+
+    Packer(final DatagramBuffer datagram) {
+      this.datagram = datagram;
+      this.payloadSize = DriverUDP.this.payloadSize;
+      datagram.clear(this.payloadSize);
+    }
+
+    /**
+     * Add the line in the encoder to the datagram, sending the datagram first if it is full.
+     */
+    void pack() throws InflowException {
+      int size = this.datagram.encoder.size();
+      if (size == 0) {
+        return;
+      }
+      if (size > this.payloadSize) {
+        this.rejected++;
+        return;
+      }
+      ByteBuffer packet = this.datagram.buffer;
+      if (packet.position() > 0 && packet.position() + 1 + size > this.payloadSize) {
+        flush();
+      }
+      if (packet.position() > 0) {
+        packet.put((byte) '\n');
+      }
+      this.datagram.encoder.writeTo(packet);
+      this.lines++;
+    }
+
+    /**
+     * Add every line of a record, which may hold several lines.
+     */
+    void packRecord(final String record) throws InflowException {
+      int start = 0;
+      while (start < record.length()) {
+        int end = record.indexOf('\n', start);
+        if (end < 0) {
+          end = record.length();
+        }
+        this.datagram.encoder.reset();
+        this.datagram.encoder.encodeRecord(record.subSequence(start, end));
+        pack();
+        start = end + 1;
+      }
+    }
+
+    /**
+     * Send the packed lines, if any.
+     */
+    void flush() throws InflowException {
+      ByteBuffer packet = this.datagram.buffer;
+      if (packet.position() > 0) {
+        packet.flip();
+        int packed = this.lines;
+        this.lines = 0;
+        try {
+          sendPacket(packet, packed);
+        } finally {
+          packet.clear();
+        }
+      }
+    }
+
+    /**
+     * Send a datagram of packed lines.
+     */
+    void sendPacket(final ByteBuffer packet, final int lines) throws InflowException {
+      send(packet);
+    }
+
+    /**
+     * Send the last datagram and count the rejected lines.
+     */
+    void finish() throws InflowException {
+      flush();
+      if (this.rejected > 0) {
+        DriverUDP.this.rejectedCount.addAndGet(this.rejected);
+        Logger.getLogger(DriverUDP.class.getName()).log(Level.WARNING,
+                "Rejected " + this.rejected + " lines longer than the UDP payload size of " + this.payloadSize);
+      }
+    }
+  }
+
+  private DatagramBuffer acquireBuffer() {
+    DatagramBuffer datagram = BUFFERS.get();
+    datagram.encoder.reset();
+    datagram.encoder.setSeriesKeyCache(this.seriesKeyCache);
+    return datagram;
+  }
+
+  private static void releaseBuffer(final DatagramBuffer datagram) {
+    datagram.encoder.reset();
+    datagram.encoder.setSeriesKeyCache(null);
+    datagram.encoder.setPrecision(TimeUnit.NANOSECONDS);
+  }
+
   @Override
   public void write(final String database, final InfluxDB.RetentionPolicy retentionPolicy, final InfluxDB.ConsistencyLevel consistency, final String records) throws InflowException {
-    throw new InflowException("TODO: implement DriverUDP.write(database, retentionPolicy, consistencyLevel, records)");
+    write(database, retentionPolicy, consistency, Collections.singletonList(records));
   }
 
   @Override
   public void write(final String database, final InfluxDB.RetentionPolicy retentionPolicy, final InfluxDB.ConsistencyLevel consistency, final List<String> records) throws InflowException {
-    throw new InflowException("TODO: implement DriverUDP.write(database, retentionPolicy, consistencyLevel, records)");
+    AsyncSender sender = this.asyncSender;
+    if (sender != null) {
+      for (String record : records) {
+        sender.offer(new AsyncLine(null, null, record));
+      }
+      return;
+    }
+    DatagramBuffer datagram = acquireBuffer();
+    try {
+      Packer packer = new Packer(datagram);
+      for (String record : records) {
+        packer.packRecord(record);
+      }
+      packer.finish();
+    } finally {
+      releaseBuffer(datagram);
+    }
   }
 
   @Override
   public void write(final String database, final InfluxDB.RetentionPolicy retentionPolicy, final Point point) throws InflowException {
-    DatagramSocket datagramSocket;
+    // see https://docs.influxdata.com/influxdb/v0.9/write_protocols/write_syntax/
+    AsyncSender sender = this.asyncSender;
+    if (sender != null) {
+      sender.offer(new AsyncLine(point, TimeUnit.NANOSECONDS, null));
+      return;
+    }
+    DatagramBuffer datagram = acquireBuffer();
+    try {
+      Packer packer = new Packer(datagram);
+      datagram.encoder.encode(point);
+      packer.pack();
+      packer.finish();
+    } finally {
+      releaseBuffer(datagram);
+    }
+  }
+
+  @Override
+  public void write(final BatchPoints batchPoints) throws InflowException {
+    AsyncSender sender = this.asyncSender;
+    if (sender != null) {
+      for (Point point : batchPoints.getPoints()) {
+        sender.offer(new AsyncLine(point, batchPoints.getPrecision(), null));
+      }
+      return;
+    }
+    DatagramBuffer datagram = acquireBuffer();
+    datagram.encoder.setPrecision(batchPoints.getPrecision());
+    try {
+      Packer packer = new Packer(datagram);
+      for (Point point : batchPoints.getPoints()) {
+        datagram.encoder.reset();
+        datagram.encoder.encode(point);
+        packer.pack();
+      }
+      packer.finish();
+    } finally {
+      releaseBuffer(datagram);
+    }
+  }
+
+  private void send(final ByteBuffer buffer) throws InflowException {
+    InetSocketAddress target = address();
     try {
-      datagramSocket = new DatagramSocket();
-    } catch (SocketException se) {
-      throw new InflowException("DatagramSocket SocketException: " + se.getMessage(), se);
+      channel().send(buffer, target);
+      this.datagramCount.incrementAndGet();
+    } catch (IOException ioe) {
+      throw new InflowException("DatagramChannel IOException: " + ioe.getMessage(), ioe);
+    }
+  }
+
+  private synchronized DatagramChannel channel() throws IOException {
+    if (this.channel == null || !this.channel.isOpen()) {
+      this.channel = openChannel();
+    }
+    return this.channel;
+  }
+
+  private DatagramChannel openChannel() throws IOException {
+    DatagramChannel opened = DatagramChannel.open();
+    if (this.sendBufferSize > 0) {
+      opened.setOption(StandardSocketOptions.SO_SNDBUF, this.sendBufferSize);
     }
-    
-    if ( this.ipAddress == null ) {
+    return opened;
+  }
+
+  /**
+   * A Point with the precision of its time, or a record, queued in async mode.
+   */
+  private static final class AsyncLine {
+
+    private final Point point;
+    private final TimeUnit precision;
+    private final String record;
+
+    AsyncLine(final Point point, final TimeUnit precision, final String record) {
+      this.point = point;
+      this.precision = precision;
+      this.record = record;
+    }
+  }
+
+  /**
+   * The queue of the async mode and the thread draining it.
+   */
+  private final class AsyncSender implements Runnable {
+
+    private final RingBufferQueue<AsyncLine> queue;
+    private final Thread thread;
+    private volatile boolean stopping = false;
+    // set while the sender thread is about to park on an empty queue, so writers unpark it
+    private volatile boolean waiting = false;
+    private DatagramChannel senderChannel;
+    private Selector selector;
+
+    AsyncSender(final int capacity) {
+      this.queue = new RingBufferQueue<>(capacity);
+      this.thread = new ThreadFactoryBuilder().setNameFormat("inflow-udp-sender-%d").setDaemon(true).build().newThread(this);
+    }
+
+    void offer(final AsyncLine line) {
+      if (this.stopping || !this.queue.offer(line)) {
+        DriverUDP.this.queueDroppedCount.incrementAndGet();
+      } else if (this.waiting) {
+        LockSupport.unpark(this.thread);
+      }
+    }
+
+    /**
+     * @return the next queued line, or null if none was queued within the poll interval
+     */
+    private AsyncLine await() throws InterruptedException {
+      AsyncLine line = this.queue.poll();
+      if (line != null) {
+        return line;
+      }
+      this.waiting = true;
       try {
-        this.ipAddress = InetAddress.getByName(this.host);
-      } catch (UnknownHostException uhe) {
-        throw new InflowException("InetAddress UnknownHostException: " + uhe.getMessage(), uhe);
+        // a line queued before waiting was set is polled here, one queued after it unparks
+        line = this.queue.poll();
+        if (line == null && !this.stopping) {
+          LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(ASYNC_POLL_MILLIS));
+          line = this.queue.poll();
+        }
+      } finally {
+        this.waiting = false;
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
       }
+      return line;
     }
-    
-    // see https://docs.influxdata.com/influxdb/v0.9/write_protocols/write_syntax/
-    String line = point.lineProtocol();
 
-    byte[] sendData = line.getBytes(StandardCharsets.UTF_8);
+    @Override
+    public void run() {
+      List<AsyncLine> lines = new ArrayList<>(ASYNC_DRAIN_SIZE);
+      DatagramBuffer datagram = acquireBuffer();
+      try {
+        this.senderChannel = openChannel();
+        this.senderChannel.configureBlocking(false);
+        this.selector = Selector.open();
+        this.senderChannel.register(this.selector, SelectionKey.OP_WRITE);
+        while (true) {
+          AsyncLine first = await();
+          if (first == null) {
+            if (this.stopping) {
+              break;
+            }
+            continue;
+          }
+          lines.add(first);
+          this.queue.drainTo(lines, ASYNC_DRAIN_SIZE - 1);
+          sendLines(datagram, lines);
+          lines.clear();
+        }
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      } catch (IOException ioe) {
+        Logger.getLogger(DriverUDP.class.getName()).log(Level.SEVERE, "Opening the async DatagramChannel failed", ioe);
+      } finally {
+        releaseBuffer(datagram);
+        closeQuietly(this.selector);
+        closeQuietly(this.senderChannel);
+        // left when interrupted or failed
+        DriverUDP.this.sendDroppedCount.addAndGet(lines.size() + this.queue.size());
+        this.queue.clear();
+      }
+    }
+
+    private void sendLines(final DatagramBuffer datagram, final List<AsyncLine> lines) {
+      Packer packer = new Packer(datagram) {
+        @Override
+        void sendPacket(final ByteBuffer packet, final int packed) throws InflowException {
+          if (sendNonBlocking(packet)) {
+            DriverUDP.this.datagramCount.incrementAndGet();
+            DriverUDP.this.asyncSentCount.addAndGet(packed);
+          } else {
+            DriverUDP.this.sendDroppedCount.addAndGet(packed);
+          }
+        }
+      };
+      try {
+        for (AsyncLine line : lines) {
+          if (line.point != null) {
+            datagram.encoder.setPrecision(line.precision);
+            datagram.encoder.reset();
+            datagram.encoder.encode(line.point);
+            packer.pack();
+          } else {
+            packer.packRecord(line.record);
+          }
+        }
+        packer.finish();
+      } catch (InflowException | RuntimeException e) {
+        Logger.getLogger(DriverUDP.class.getName()).log(Level.WARNING, "Async UDP send failed", e);
+      }
+    }
+
+    /**
+     * @return false if the send buffer stayed full
+     */
+    private boolean sendNonBlocking(final ByteBuffer packet) throws InflowException {
+      InetSocketAddress target = address();
+      try {
+        if (this.senderChannel.send(packet, target) > 0) {
+          return true;
+        }
+        this.selector.select(ASYNC_SEND_WAIT_MILLIS);
+        this.selector.selectedKeys().clear();
+        return this.senderChannel.send(packet, target) > 0;
+      } catch (IOException ioe) {
+        throw new InflowException("DatagramChannel IOException: " + ioe.getMessage(), ioe);
+      }
+    }
+
+    /**
+     * Send the queued lines and stop the thread.
+     *
+     * @return false if the thread did not stop before the deadline and was interrupted
+     */
+    boolean stop(final long deadline) throws InterruptedException {
+      this.stopping = true;
+      LockSupport.unpark(this.thread);
+      long remaining = deadline - System.nanoTime();
+      if (remaining > 0) {
+        TimeUnit.NANOSECONDS.timedJoin(this.thread, remaining);
+      }
+      if (this.thread.isAlive()) {
+        this.thread.interrupt();
+        this.thread.join();
+        return false;
+      }
+      return true;
+    }
+  }
+
+  private static void closeQuietly(final Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException ioe) {
+        Logger.getLogger(DriverUDP.class.getName()).log(Level.FINE, null, ioe);
+      }
+    }
+  }
 
-    DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, this.ipAddress, this.port);
+  /**
+   * Enqueue writes for a background thread instead of sending them on the calling thread.
+   *
+   * @param capacity the number of Points and records queued at most, further writes are dropped
+   */
+  public synchronized void enableAsync(final int capacity) throws InflowException {
+    Preconditions.checkArgument(capacity > 0, "capacity must be greater than 0");
+    disableAsync();
+    AsyncSender sender = new AsyncSender(capacity);
+    sender.thread.start();
+    this.asyncSender = sender;
+  }
 
+  /**
+   * Enqueue writes for a background thread, with a capacity of
+   * {@value #DEFAULT_ASYNC_CAPACITY}.
+   */
+  public void enableAsync() throws InflowException {
+    enableAsync(DEFAULT_ASYNC_CAPACITY);
+  }
+
+  /**
+   * Send the queued writes and stop the background thread, later writes are sent by the caller.
+   */
+  public synchronized void disableAsync() throws InflowException {
+    closeAsync(System.nanoTime() + TimeUnit.SECONDS.toNanos(DEFAULT_CLOSE_TIMEOUT_SECONDS));
+  }
+
+  private synchronized CloseResult closeAsync(final long deadline) throws InflowException {
+    AsyncSender sender = this.asyncSender;
+    if (sender == null) {
+      return new CloseResult(0, 0);
+    }
+    this.asyncSender = null;
+    long sent = this.asyncSentCount.get();
+    long dropped = this.sendDroppedCount.get() + this.queueDroppedCount.get();
     try {
-      datagramSocket.send(sendPacket);
-    } catch (IOException ioe) {
-      throw new InflowException("DatagramSocket IOException: " + ioe.getMessage(), ioe);
+      if (!sender.stop(deadline)) {
+        Logger.getLogger(DriverUDP.class.getName()).log(Level.WARNING, "Stopped the async UDP sender before the queue was sent");
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new InflowException("Interrupted while stopping the async UDP sender", ie);
+    }
+    return new CloseResult(this.asyncSentCount.get() - sent,
+            this.sendDroppedCount.get() + this.queueDroppedCount.get() - dropped);
+  }
+
+  public boolean isAsyncEnabled() {
+    return this.asyncSender != null;
+  }
+
+  /**
+   * @return the number of Points and records waiting in the async queue
+   */
+  public int getQueuedCount() {
+    AsyncSender sender = this.asyncSender;
+    return sender == null ? 0 : sender.queue.size();
+  }
+
+  /**
+   * @return the number of lines sent by the async sender
+   */
+  public long getAsyncSentCount() {
+    return this.asyncSentCount.get();
+  }
+
+  /**
+   * @return the number of Points and records dropped because the async queue was full
+   */
+  public long getQueueDroppedCount() {
+    return this.queueDroppedCount.get();
+  }
+
+  /**
+   * @return the number of lines dropped by the async sender, because the send buffer was full or
+   * the send failed
+   */
+  public long getSendDroppedCount() {
+    return this.sendDroppedCount.get();
+  }
+
+  /**
+   * The SO_SNDBUF of the channels opened after this call, a larger buffer absorbs bursts of
+   * datagrams. 0 keeps the default of the OS.
+   *
+   * @param sendBufferSize the size in bytes
+   */
+  public void setSendBufferSize(final int sendBufferSize) {
+    Preconditions.checkArgument(sendBufferSize >= 0, "sendBufferSize must not be negative");
+    this.sendBufferSize = sendBufferSize;
+  }
+
+  public int getSendBufferSize() {
+    return this.sendBufferSize;
+  }
+
+  /**
+   * @return the address of the host, resolved again once the resolve interval passed
+   */
+  private InetSocketAddress address() throws InflowException {
+    InetSocketAddress current = this.address;
+    if (current != null && System.nanoTime() - this.resolvedAt < this.resolveIntervalNanos) {
+      return current;
+    }
+    synchronized (this.resolveLock) {
+      if (this.address != current) {
+        return this.address;
+      }
+      try {
+        this.address = new InetSocketAddress(InetAddress.getByName(this.host), this.port);
+      } catch (UnknownHostException uhe) {
+        if (current == null) {
+          throw new InflowException("InetAddress UnknownHostException: " + uhe.getMessage(), uhe);
+        }
+        Logger.getLogger(DriverUDP.class.getName()).log(Level.WARNING,
+                "Resolving " + this.host + " failed, keeping " + current.getAddress(), uhe);
+      }
+      this.resolvedAt = System.nanoTime();
+      return this.address;
     }
+  }
+
+  /**
+   * How often the host is resolved again, defaults to {@value #DEFAULT_RESOLVE_INTERVAL_SECONDS}
+   * seconds.
+   *
+   * @param interval
+   * @param unit
+   */
+  public void setResolveInterval(final long interval, final TimeUnit unit) {
+    Preconditions.checkArgument(interval >= 0, "interval must not be negative");
+    this.resolveIntervalNanos = unit.toNanos(interval);
+  }
+
+  /**
+   * The maximum size of a datagram sent for batches and records, defaults to
+   * {@value #DEFAULT_PAYLOAD_SIZE} bytes to stay below the MTU. Larger datagrams need fewer
+   * sends, but are fragmented and lost as a whole when one fragment is lost.
+   *
+   * @param payloadSize the size in bytes, at most {@value #MAX_DATAGRAM_SIZE}
+   */
+  public void setPayloadSize(final int payloadSize) {
+    Preconditions.checkArgument(payloadSize > 0 && payloadSize <= MAX_DATAGRAM_SIZE,
+            "payloadSize must be between 1 and " + MAX_DATAGRAM_SIZE);
+    this.payloadSize = payloadSize;
+  }
 
-    datagramSocket.close();
+  public int getPayloadSize() {
+    return this.payloadSize;
   }
 
+  /**
+   * @return the number of datagrams sent
+   */
+  public long getDatagramCount() {
+    return this.datagramCount.get();
+  }
+
+  /**
+   * @return the number of lines not sent because they are longer than the payload size
+   */
+  public long getRejectedCount() {
+    return this.rejectedCount.get();
+  }
+
+  /**
+   * @return the address datagrams are sent to, or null before the first write
+   */
+  public InetSocketAddress getAddress() {
+    return this.address;
+  }
+
+  public SeriesKeyCache getSeriesKeyCache() {
+    return this.seriesKeyCache;
+  }
+
+  /**
+   * Close with the default timeout of {@value #DEFAULT_CLOSE_TIMEOUT_SECONDS} seconds.
+   *
+   * @see #close(long, TimeUnit)
+   */
   @Override
-  public void write(final BatchPoints batchPoints) throws InflowException {
-    throw new InflowException("TODO: implement DriverUDP.write(BatchPoints batchPoints)");
+  public void close() throws InflowException {
+    close(DEFAULT_CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Send the queued writes of the async mode and close the DatagramChannels, a later write opens a
+   * new one and is sent by the caller.
+   *
+   * @param timeout the time to wait for the async queue to be sent
+   * @param unit the unit of timeout
+   * @return the number of queued lines sent and dropped while closing
+   */
+  public synchronized CloseResult close(final long timeout, final TimeUnit unit) throws InflowException {
+    CloseResult result = closeAsync(System.nanoTime() + unit.toNanos(timeout));
+    if (this.channel != null) {
+      try {
+        this.channel.close();
+      } catch (IOException ioe) {
+        throw new InflowException("DatagramChannel IOException: " + ioe.getMessage(), ioe);
+      } finally {
+        this.channel = null;
+      }
+    }
+    return result;
   }
 
 }
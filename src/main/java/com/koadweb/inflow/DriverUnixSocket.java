@@ -0,0 +1,99 @@
+package com.koadweb.inflow;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Streams newline delimited line protocol over a Unix domain socket, for a relay or Telegraf
+ * running on the same host, without the loopback TCP stack.
+ *
+ * Writes, reconnects and the backoff work like the ones of DriverTCP. Unix domain socket channels
+ * were added in Java 16 and are looked up at runtime, creating the driver on an older JVM fails
+ * with an InflowException. Only stream sockets are supported.
+ *
+ */
+public class DriverUnixSocket extends DriverTCP {
+
+  private static final Method ADDRESS_OF;
+  private static final Method OPEN;
+  private static final ProtocolFamily UNIX;
+
+  static {
+    Method addressOf = null;
+    Method open = null;
+    ProtocolFamily unix = null;
+    try {
+      addressOf = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class);
+      open = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+      unix = StandardProtocolFamily.valueOf("UNIX");
+    } catch (ClassNotFoundException | NoSuchMethodException | IllegalArgumentException e) {
+      // Java 15 or older
+    }
+    ADDRESS_OF = addressOf;
+    OPEN = open;
+    UNIX = unix;
+  }
+
+  protected String path;
+
+  public DriverUnixSocket(String path) throws InflowException {
+    this(path, DEFAULT_BUFFER_SIZE);
+  }
+
+  public DriverUnixSocket(String path, int bufferSize) throws InflowException {
+    super(null, 0, bufferSize);
+    Preconditions.checkArgument(!Strings.isNullOrEmpty(path), "path can not be null or empty");
+    if (!isSupported()) {
+      throw new InflowException("Unix domain sockets need Java 16 or later, running " + System.getProperty("java.version"));
+    }
+    this.path = path;
+  }
+
+  /**
+   * @return true if the JVM supports Unix domain socket channels
+   */
+  public static boolean isSupported() {
+    return ADDRESS_OF != null && OPEN != null && UNIX != null;
+  }
+
+  @Override
+  protected SocketChannel openChannel() throws IOException {
+    SocketChannel opened;
+    SocketAddress address;
+    try {
+      address = (SocketAddress) ADDRESS_OF.invoke(null, this.path);
+      opened = (SocketChannel) OPEN.invoke(null, UNIX);
+    } catch (IllegalAccessException e) {
+      throw new IOException("Opening a Unix domain socket failed", e);
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Opening a Unix domain socket failed", e.getCause());
+    }
+    try {
+      opened.connect(address);
+    } catch (IOException | RuntimeException e) {
+      opened.close();
+      throw e;
+    }
+    return opened;
+  }
+
+  @Override
+  protected String endpoint() {
+    return this.path;
+  }
+
+  public String getPath() {
+    return this.path;
+  }
+
+}
@@ -0,0 +1,66 @@
+package com.koadweb.inflow;
+
+import com.google.common.base.Preconditions;
+import org.influxdb.InfluxDB.RetentionPolicy;
+import org.influxdb.dto.PointSchema;
+
+/**
+ * Writes points of a fixed {@link PointSchema} layout through a driver.
+ *
+ * Each write encodes the point with the precomputed fragments of the schema and hands it to
+ * {@link DriverInterface#write(String, RetentionPolicy, org.influxdb.dto.Point)}, so batching and
+ * transport work as for any other Point.
+ *
+ */
+public class PointWriter {
+
+  protected final DriverInterface driver;
+  protected final PointSchema schema;
+  protected final RetentionPolicy retentionPolicy;
+
+  public PointWriter(final DriverInterface driver, final PointSchema schema, final RetentionPolicy retentionPolicy) {
+    Preconditions.checkNotNull(driver, "driver may not be null");
+    Preconditions.checkNotNull(schema, "schema may not be null");
+    Preconditions.checkNotNull(retentionPolicy, "retentionPolicy may not be null");
+    this.driver = driver;
+    this.schema = schema;
+    this.retentionPolicy = retentionPolicy;
+  }
+
+  public PointWriter(final DriverInterface driver, final PointSchema schema) {
+    this(driver, schema, new RetentionPolicy("default"));
+  }
+
+  /**
+   * Write a point with float fields only.
+   *
+   * @param database the database to write to
+   * @param tagValues the tag values in schema declaration order
+   * @param fieldValues the float field values in schema declaration order
+   * @param time the time in the precision of the schema
+   * @throws InflowException if the driver fails to write
+   */
+  public void write(final String database, final String[] tagValues, final double[] fieldValues, final long time) throws InflowException {
+    this.driver.write(database, this.retentionPolicy, this.schema.point(tagValues, fieldValues, time));
+  }
+
+  /**
+   * Write a point with float and integer fields.
+   *
+   * @param database the database to write to
+   * @param tagValues the tag values in schema declaration order
+   * @param fieldValues the float field values in schema declaration order
+   * @param integerFieldValues the integer field values in schema declaration order
+   * @param time the time in the precision of the schema
+   * @throws InflowException if the driver fails to write
+   */
+  public void write(final String database, final String[] tagValues, final double[] fieldValues,
+          final long[] integerFieldValues, final long time) throws InflowException {
+    this.driver.write(database, this.retentionPolicy, this.schema.point(tagValues, fieldValues, integerFieldValues, time));
+  }
+
+  public PointSchema getSchema() {
+    return this.schema;
+  }
+
+}
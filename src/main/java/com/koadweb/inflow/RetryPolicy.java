@@ -0,0 +1,234 @@
+package com.koadweb.inflow;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.influxdb.InfluxDBHTTPException;
+import retrofit.RetrofitError;
+
+/**
+ * When and how often a failed write request is sent again.
+ *
+ * Network errors, like timeouts and connection resets, and the responses with a retryable
+ * status are retried up to maxAttempts in total, with an exponential backoff from baseDelay up to
+ * maxDelay. Jitter spreads the retries of many clients: the delay of an attempt is chosen at
+ * random between {@code (1 - jitter) * backoff} and the backoff. Other errors, like a 400 for a
+ * field type conflict, are never retried. Policies are immutable and can be shared.
+ *
+ */
+public class RetryPolicy {
+
+  public static final int DEFAULT_MAX_ATTEMPTS = 5;
+  public static final long DEFAULT_BASE_DELAY_MILLIS = 100;
+  public static final long DEFAULT_MAX_DELAY_MILLIS = 10000;
+  public static final double DEFAULT_JITTER = 0.5;
+  public static final int DEFAULT_MAX_PENDING = 1000;
+  public static final Set<Integer> DEFAULT_RETRYABLE_STATUSES = ImmutableSet.of(408, 429, 500, 502, 503, 504);
+
+  private final int maxAttempts;
+  private final long baseDelayNanos;
+  private final long maxDelayNanos;
+  private final double jitter;
+  private final int maxPending;
+  private final Set<Integer> retryableStatuses;
+
+  RetryPolicy(final Builder builder) {
+    this.maxAttempts = builder.maxAttempts;
+    this.baseDelayNanos = builder.baseDelayNanos;
+    this.maxDelayNanos = builder.maxDelayNanos;
+    this.jitter = builder.jitter;
+    this.maxPending = builder.maxPending;
+    this.retryableStatuses = ImmutableSet.copyOf(builder.retryableStatuses);
+  }
+
+  /**
+   * @return a Builder for a RetryPolicy with the default settings
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Builder for a RetryPolicy.
+   */
+  public static final class Builder {
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long baseDelayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_BASE_DELAY_MILLIS);
+    private long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_DELAY_MILLIS);
+    private double jitter = DEFAULT_JITTER;
+    private int maxPending = DEFAULT_MAX_PENDING;
+    private Set<Integer> retryableStatuses = DEFAULT_RETRYABLE_STATUSES;
+
+    Builder() {
+    }
+
+    /**
+     * The number of attempts to send a request, including the first one.
+     *
+     * @param maxAttempts
+     * @return this Builder to use it fluent
+     */
+    public Builder maxAttempts(final int maxAttempts) {
+      Preconditions.checkArgument(maxAttempts > 0, "maxAttempts must be greater than 0");
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    /**
+     * The backoff before the first retry, doubled for every further retry.
+     *
+     * @param delay
+     * @param unit
+     * @return this Builder to use it fluent
+     */
+    public Builder baseDelay(final long delay, final TimeUnit unit) {
+      Preconditions.checkArgument(delay > 0, "baseDelay must be greater than 0");
+      this.baseDelayNanos = unit.toNanos(delay);
+      return this;
+    }
+
+    /**
+     * The maximum backoff between two attempts.
+     *
+     * @param delay
+     * @param unit
+     * @return this Builder to use it fluent
+     */
+    public Builder maxDelay(final long delay, final TimeUnit unit) {
+      Preconditions.checkArgument(delay > 0, "maxDelay must be greater than 0");
+      this.maxDelayNanos = unit.toNanos(delay);
+      return this;
+    }
+
+    /**
+     * The random part of the backoff, 0 for none and 1 for a delay anywhere up to the backoff.
+     *
+     * @param jitter
+     * @return this Builder to use it fluent
+     */
+    public Builder jitter(final double jitter) {
+      Preconditions.checkArgument(jitter >= 0 && jitter <= 1, "jitter must be between 0 and 1");
+      this.jitter = jitter;
+      return this;
+    }
+
+    /**
+     * The maximum number of requests waiting for a retry, failures beyond it are not retried.
+     *
+     * @param maxPending
+     * @return this Builder to use it fluent
+     */
+    public Builder maxPending(final int maxPending) {
+      Preconditions.checkArgument(maxPending > 0, "maxPending must be greater than 0");
+      this.maxPending = maxPending;
+      return this;
+    }
+
+    /**
+     * The HTTP status codes of responses which are retried.
+     *
+     * @param statuses
+     * @return this Builder to use it fluent
+     */
+    public Builder retryableStatuses(final Integer... statuses) {
+      this.retryableStatuses = ImmutableSet.copyOf(statuses);
+      return this;
+    }
+
+    /**
+     * Create the RetryPolicy.
+     *
+     * @return the RetryPolicy
+     */
+    public RetryPolicy build() {
+      Preconditions.checkArgument(this.baseDelayNanos <= this.maxDelayNanos, "baseDelay must not exceed maxDelay");
+      return new RetryPolicy(this);
+    }
+  }
+
+  /**
+   * @param error the error of a write request
+   * @return true if the request may succeed when it is sent again
+   */
+  public boolean isRetryable(final Throwable error) {
+    if (error instanceof InfluxDBHTTPException) {
+      return this.retryableStatuses.contains(((InfluxDBHTTPException) error).getStatus());
+    }
+    if (error instanceof RetrofitError) {
+      RetrofitError retrofitError = (RetrofitError) error;
+      switch (retrofitError.getKind()) {
+        case NETWORK:
+          return true;
+        case HTTP:
+          return this.retryableStatuses.contains(retrofitError.getResponse().getStatus());
+        default:
+          return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param attempt the number of the attempt that failed, starting at 1
+   * @return true if another attempt is allowed
+   */
+  public boolean canRetry(final int attempt) {
+    return attempt < this.maxAttempts;
+  }
+
+  /**
+   * @param attempt the number of the attempt that failed, starting at 1
+   * @return the delay in nanoseconds before the next attempt
+   */
+  public long delayNanos(final int attempt) {
+    int shift = Math.min(attempt - 1, 62);
+    long backoff = this.baseDelayNanos << shift;
+    if (backoff <= 0 || backoff > this.maxDelayNanos || (backoff >> shift) != this.baseDelayNanos) {
+      backoff = this.maxDelayNanos;
+    }
+    if (this.jitter == 0) {
+      return backoff;
+    }
+    return backoff - (long) (backoff * this.jitter * ThreadLocalRandom.current().nextDouble());
+  }
+
+  public int getMaxAttempts() {
+    return this.maxAttempts;
+  }
+
+  public int getMaxPending() {
+    return this.maxPending;
+  }
+
+  public double getJitter() {
+    return this.jitter;
+  }
+
+  public Set<Integer> getRetryableStatuses() {
+    return this.retryableStatuses;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("RetryPolicy [maxAttempts=");
+    builder.append(this.maxAttempts);
+    builder.append(", baseDelayNanos=");
+    builder.append(this.baseDelayNanos);
+    builder.append(", maxDelayNanos=");
+    builder.append(this.maxDelayNanos);
+    builder.append(", jitter=");
+    builder.append(this.jitter);
+    builder.append(", retryableStatuses=");
+    builder.append(this.retryableStatuses);
+    builder.append("]");
+    return builder.toString();
+  }
+
+}
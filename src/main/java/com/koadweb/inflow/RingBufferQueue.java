@@ -0,0 +1,283 @@
+package com.koadweb.inflow;
+
+import com.google.common.base.Preconditions;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock free, multi producer multi consumer queue backed by a preallocated ring.
+ *
+ * Every slot has a sequence number telling whether it can be written for the current lap or read,
+ * so producers and consumers only compete with a CAS on the tail or head counter and never
+ * allocate. {@link #drainTo(Collection, int)} claims a run of published slots with a single CAS.
+ * The capacity is rounded up to a power of two, and is at least 2. Blocking methods spin briefly
+ * and then park.
+ *
+ * @param <E> the type of the queued elements
+ */
+public class RingBufferQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+  private static final int SPINS = 64;
+  private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  /**
+   * An AtomicLong padded to its own cache line, so the head and tail counters do not share one.
+   */
+  @SuppressWarnings("serial")
+  static final class PaddedAtomicLong extends AtomicLong {
+
+    long p1, p2, p3, p4, p5, p6, p7;
+  }
+
+  private final int mask;
+  private final AtomicReferenceArray<E> buffer;
+  // the position a slot can be written at, or the position + 1 once it was published
+  private final AtomicLongArray sequences;
+  private final PaddedAtomicLong head = new PaddedAtomicLong();
+  private final PaddedAtomicLong tail = new PaddedAtomicLong();
+
+  /**
+   * @param capacity the minimum capacity, rounded up to a power of two of at least 2
+   */
+  public RingBufferQueue(final int capacity) {
+    Preconditions.checkArgument(capacity > 0 && capacity <= 1 << 30, "capacity must be between 1 and 2^30");
+    // a single slot can not tell a published element from a free slot of the next lap
+    int size = Math.max(2, Integer.highestOneBit(capacity));
+    if (size < capacity) {
+      size <<= 1;
+    }
+    this.mask = size - 1;
+    this.buffer = new AtomicReferenceArray<>(size);
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      this.sequences.set(i, i);
+    }
+  }
+
+  /**
+   * @return the number of slots of the ring
+   */
+  public int capacity() {
+    return this.mask + 1;
+  }
+
+  @Override
+  public boolean offer(final E e) {
+    Preconditions.checkNotNull(e);
+    long position = this.tail.get();
+    int index;
+    for (;;) {
+      index = (int) position & this.mask;
+      long difference = this.sequences.get(index) - position;
+      if (difference == 0) {
+        if (this.tail.compareAndSet(position, position + 1)) {
+          break;
+        }
+        position = this.tail.get();
+      } else if (difference < 0) {
+        // the slot still holds the element of the previous lap
+        return false;
+      } else {
+        position = this.tail.get();
+      }
+    }
+    this.buffer.lazySet(index, e);
+    this.sequences.lazySet(index, position + 1);
+    return true;
+  }
+
+  @Override
+  public E poll() {
+    long position = this.head.get();
+    int index;
+    for (;;) {
+      index = (int) position & this.mask;
+      long difference = this.sequences.get(index) - (position + 1);
+      if (difference == 0) {
+        if (this.head.compareAndSet(position, position + 1)) {
+          break;
+        }
+        position = this.head.get();
+      } else if (difference < 0) {
+        // nothing published at this position yet
+        return null;
+      } else {
+        position = this.head.get();
+      }
+    }
+    return take(index, position);
+  }
+
+  private E take(final int index, final long position) {
+    E e = this.buffer.get(index);
+    this.buffer.lazySet(index, null);
+    this.sequences.lazySet(index, position + this.mask + 1);
+    return e;
+  }
+
+  @Override
+  public E peek() {
+    for (;;) {
+      long position = this.head.get();
+      int index = (int) position & this.mask;
+      if (this.sequences.get(index) != position + 1) {
+        return null;
+      }
+      E e = this.buffer.get(index);
+      if (e != null && this.head.get() == position) {
+        return e;
+      }
+    }
+  }
+
+  @Override
+  public int drainTo(final Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(final Collection<? super E> c, final int maxElements) {
+    Preconditions.checkNotNull(c);
+    Preconditions.checkArgument(c != this, "can not drain a queue to itself");
+    int drained = 0;
+    while (drained < maxElements) {
+      long position = this.head.get();
+      // count the published slots from the head, up to one lap
+      int limit = Math.min(maxElements - drained, this.mask + 1);
+      int available = 0;
+      while (available < limit) {
+        long slot = position + available;
+        if (this.sequences.get((int) slot & this.mask) != slot + 1) {
+          break;
+        }
+        available++;
+      }
+      if (available == 0) {
+        return drained;
+      }
+      if (!this.head.compareAndSet(position, position + available)) {
+        continue;
+      }
+      for (int i = 0; i < available; i++) {
+        long slot = position + i;
+        c.add(take((int) slot & this.mask, slot));
+      }
+      drained += available;
+    }
+    return drained;
+  }
+
+  @Override
+  public int size() {
+    for (;;) {
+      long before = this.head.get();
+      long tailPosition = this.tail.get();
+      long after = this.head.get();
+      if (before == after) {
+        long size = tailPosition - after;
+        return (int) Math.max(0, Math.min(size, this.mask + 1));
+      }
+    }
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return this.mask + 1 - size();
+  }
+
+  @Override
+  public void put(final E e) throws InterruptedException {
+    int idle = 0;
+    while (!offer(e)) {
+      idle = idle(idle);
+    }
+  }
+
+  @Override
+  public boolean offer(final E e, final long timeout, final TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    int idle = 0;
+    while (!offer(e)) {
+      if (System.nanoTime() - deadline >= 0) {
+        return false;
+      }
+      idle = idle(idle);
+    }
+    return true;
+  }
+
+  @Override
+  public E take() throws InterruptedException {
+    int idle = 0;
+    E e;
+    while ((e = poll()) == null) {
+      idle = idle(idle);
+    }
+    return e;
+  }
+
+  @Override
+  public E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    int idle = 0;
+    E e;
+    while ((e = poll()) == null) {
+      if (System.nanoTime() - deadline >= 0) {
+        return null;
+      }
+      idle = idle(idle);
+    }
+    return e;
+  }
+
+  /**
+   * Wait a little before retrying, spinning first and parking after {@link #SPINS} retries.
+   */
+  private static int idle(final int idle) throws InterruptedException {
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    if (idle < SPINS) {
+      Thread.yield();
+    } else {
+      LockSupport.parkNanos(PARK_NANOS);
+    }
+    return idle + 1;
+  }
+
+  /**
+   * A weakly consistent snapshot of the queued elements, that does not support remove.
+   *
+   * @return an iterator over the elements queued when it was created
+   */
+  @Override
+  public Iterator<E> iterator() {
+    List<E> snapshot = new ArrayList<>();
+    long position = this.head.get();
+    long tailPosition = this.tail.get();
+    for (long slot = position; slot < tailPosition; slot++) {
+      int index = (int) slot & this.mask;
+      E e = this.buffer.get(index);
+      if (this.sequences.get(index) == slot + 1 && e != null) {
+        snapshot.add(e);
+      }
+    }
+    return Collections.unmodifiableList(snapshot).iterator();
+  }
+
+}
@@ -0,0 +1,231 @@
+package com.koadweb.inflow;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.influxdb.dto.BatchPoints;
+
+/**
+ * Writes BatchPoints through a driver on a pool of threads, with at most {@code maxInFlight}
+ * writes submitted and not finished.
+ *
+ * {@link #send(BatchPoints)} blocks while the window is full, which pushes back on the caller. When
+ * ordered, the BatchPoints of a database are written one after the other in the order they were
+ * sent, and only writes to different databases run concurrently.
+ */
+public class SenderPool {
+
+  private final DriverInterface inflowDriver;
+  private final int maxInFlight;
+  private final boolean ordered;
+  private final Semaphore window;
+  private final ExecutorService executor;
+  // the serial lanes of the databases, when ordered
+  private final ConcurrentMap<String, SerialLane> lanes = new ConcurrentHashMap<>();
+
+  private final FailureHandler failureHandler;
+
+  private final AtomicLong sentCount = new AtomicLong();
+  private final AtomicLong failedCount = new AtomicLong();
+
+  /**
+   * @param inflowDriver the driver to write with
+   * @param maxInFlight the maximum number of concurrent writes
+   * @param ordered true to write the BatchPoints of a database in the order they were sent
+   */
+  public SenderPool(final DriverInterface inflowDriver, final int maxInFlight, final boolean ordered) {
+    this(inflowDriver, maxInFlight, ordered, null);
+  }
+
+  /**
+   * @param inflowDriver the driver to write with
+   * @param maxInFlight the maximum number of concurrent writes
+   * @param ordered true to write the BatchPoints of a database in the order they were sent
+   * @param failureHandler called with the BatchPoints of failed writes, may be null
+   */
+  public SenderPool(final DriverInterface inflowDriver, final int maxInFlight, final boolean ordered,
+          final FailureHandler failureHandler) {
+    Preconditions.checkNotNull(inflowDriver, "inflowDriver may not be null");
+    Preconditions.checkArgument(maxInFlight > 0, "maxInFlight must be greater than 0");
+    this.inflowDriver = inflowDriver;
+    this.maxInFlight = maxInFlight;
+    this.ordered = ordered;
+    this.failureHandler = failureHandler;
+    this.window = new Semaphore(maxInFlight);
+    this.executor = Executors.newFixedThreadPool(maxInFlight,
+            new ThreadFactoryBuilder().setNameFormat("inflow-sender-%d").setDaemon(true).build());
+  }
+
+  /**
+   * Handles the BatchPoints of a failed write.
+   */
+  public interface FailureHandler {
+
+    /**
+     * @param batchPoints the BatchPoints that were not written
+     * @param cause the failure of the write
+     */
+    void failed(BatchPoints batchPoints, Exception cause);
+  }
+
+  /**
+   * Runs the tasks given to it one at a time, in order, on another executor.
+   */
+  static final class SerialLane implements Executor {
+
+    private final Executor executor;
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private Runnable active;
+
+    SerialLane(final Executor executor) {
+      this.executor = executor;
+    }
+
+    @Override
+    public synchronized void execute(final Runnable task) {
+      this.tasks.add(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            task.run();
+          } finally {
+            scheduleNext();
+          }
+        }
+      });
+      if (this.active == null) {
+        scheduleNext();
+      }
+    }
+
+    private synchronized void scheduleNext() {
+      this.active = this.tasks.poll();
+      if (this.active != null) {
+        this.executor.execute(this.active);
+      }
+    }
+  }
+
+  /**
+   * Submit a write, waiting while {@code maxInFlight} writes are in flight. Failed writes are
+   * counted and given to the failure handler, or logged without one.
+   *
+   * @param batchPoints the BatchPoints to write
+   * @throws InflowException if interrupted while waiting or if the pool is shut down
+   */
+  public void send(final BatchPoints batchPoints) throws InflowException {
+    try {
+      this.window.acquire();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new InflowException("Interrupted while waiting for a free write slot", ie);
+    }
+
+    Runnable write = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          SenderPool.this.inflowDriver.write(batchPoints);
+          SenderPool.this.sentCount.incrementAndGet();
+        } catch (InflowException | RuntimeException e) {
+          SenderPool.this.failedCount.incrementAndGet();
+          if (SenderPool.this.failureHandler != null) {
+            SenderPool.this.failureHandler.failed(batchPoints, e);
+          } else {
+            Logger.getLogger(SenderPool.class.getName()).log(Level.SEVERE, null, e);
+          }
+        } finally {
+          SenderPool.this.window.release();
+        }
+      }
+    };
+    try {
+      if (this.ordered) {
+        lane(batchPoints.getDatabase()).execute(write);
+      } else {
+        this.executor.execute(write);
+      }
+    } catch (RejectedExecutionException ree) {
+      this.window.release();
+      throw new InflowException("SenderPool is shut down", ree);
+    }
+  }
+
+  private SerialLane lane(final String database) {
+    SerialLane lane = this.lanes.get(database);
+    if (lane == null) {
+      SerialLane newLane = new SerialLane(this.executor);
+      lane = this.lanes.putIfAbsent(database, newLane);
+      if (lane == null) {
+        lane = newLane;
+      }
+    }
+    return lane;
+  }
+
+  /**
+   * Wait until all submitted writes are finished.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the TimeUnit of the timeout
+   * @return true if all writes finished in time
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean awaitSent(final long timeout, final TimeUnit unit) throws InterruptedException {
+    if (this.window.tryAcquire(this.maxInFlight, timeout, unit)) {
+      this.window.release(this.maxInFlight);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Stop the sender threads. Later sends are rejected. Call {@link #awaitSent(long, TimeUnit)}
+   * first, ordered writes still waiting in a lane are not written after the shutdown.
+   */
+  public void shutdown() {
+    this.executor.shutdown();
+  }
+
+  public int getMaxInFlight() {
+    return this.maxInFlight;
+  }
+
+  public boolean isOrdered() {
+    return this.ordered;
+  }
+
+  /**
+   * @return the number of writes submitted and not finished
+   */
+  public int getInFlightCount() {
+    return this.maxInFlight - this.window.availablePermits();
+  }
+
+  /**
+   * @return the number of BatchPoints written
+   */
+  public long getSentCount() {
+    return this.sentCount.get();
+  }
+
+  /**
+   * @return the number of BatchPoints that failed to be written
+   */
+  public long getFailedCount() {
+    return this.failedCount.get();
+  }
+
+}
@@ -0,0 +1,51 @@
+package com.koadweb.inflow;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * The library wide scheduler and flush pool shared by BatchProcessors built with
+ * {@link BatchProcessor.Builder#sharedExecutors()}.
+ *
+ * Both are created on first use with daemon threads and are never shut down, a processor only
+ * cancels its own tasks.
+ *
+ */
+final class SharedExecutors {
+
+  static final int FLUSH_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+  private SharedExecutors() {
+  }
+
+  private static final class SchedulerHolder {
+
+    static final ScheduledExecutorService SCHEDULER = createScheduler();
+
+    private static ScheduledExecutorService createScheduler() {
+      ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+              new ThreadFactoryBuilder().setNameFormat("inflow-shared-scheduler-%d").setDaemon(true).build());
+      // cancelled tasks of flushed processors must not pile up in the queue
+      scheduler.setRemoveOnCancelPolicy(true);
+      return scheduler;
+    }
+  }
+
+  private static final class FlushExecutorHolder {
+
+    static final ExecutorService FLUSH_EXECUTOR = Executors.newFixedThreadPool(FLUSH_THREADS,
+            new ThreadFactoryBuilder().setNameFormat("inflow-shared-flush-%d").setDaemon(true).build());
+  }
+
+  static ScheduledExecutorService scheduler() {
+    return SchedulerHolder.SCHEDULER;
+  }
+
+  static ExecutorService flushExecutor() {
+    return FlushExecutorHolder.FLUSH_EXECUTOR;
+  }
+
+}
@@ -0,0 +1,154 @@
+package com.koadweb.inflow;
+
+/**
+ * A snapshot of the write statistics of a DriverHTTP and its batch processor.
+ *
+ */
+public class WriteStats {
+
+  private final long pointCount;
+  private final long unBatchedCount;
+  private final long batchedCount;
+  private final long requestCount;
+  private final long byteCount;
+  private final long queuedCount;
+  private final long queuedBytes;
+  private final long droppedCount;
+  private final long flushCount;
+  private final long flushNanos;
+  private final long maxFlushNanos;
+
+  WriteStats(final long pointCount, final long unBatchedCount, final long batchedCount, final long requestCount,
+          final long byteCount, final BatchProcessor batchProcessor) {
+    this.pointCount = pointCount;
+    this.unBatchedCount = unBatchedCount;
+    this.batchedCount = batchedCount;
+    this.requestCount = requestCount;
+    this.byteCount = byteCount;
+    if (batchProcessor == null) {
+      this.queuedCount = 0;
+      this.queuedBytes = 0;
+      this.droppedCount = 0;
+      this.flushCount = 0;
+      this.flushNanos = 0;
+      this.maxFlushNanos = 0;
+    } else {
+      this.queuedCount = batchProcessor.getQueuedCount();
+      this.queuedBytes = batchProcessor.getQueuedBytes();
+      this.droppedCount = batchProcessor.getDroppedCount();
+      this.flushCount = batchProcessor.getFlushCount();
+      this.flushNanos = batchProcessor.getFlushNanos();
+      this.maxFlushNanos = batchProcessor.getMaxFlushNanos();
+    }
+  }
+
+  /**
+   * @return the number of single Points written, batched or not
+   */
+  public long getPointCount() {
+    return this.pointCount;
+  }
+
+  /**
+   * @return the number of single Points written with a request of their own
+   */
+  public long getUnBatchedCount() {
+    return this.unBatchedCount;
+  }
+
+  /**
+   * @return the number of Points written in BatchPoints
+   */
+  public long getBatchedCount() {
+    return this.batchedCount;
+  }
+
+  /**
+   * @return the number of write requests sent successfully
+   */
+  public long getRequestCount() {
+    return this.requestCount;
+  }
+
+  /**
+   * @return the number of request body bytes sent, after compression
+   */
+  public long getByteCount() {
+    return this.byteCount;
+  }
+
+  /**
+   * @return the number of Points waiting in the batch queue
+   */
+  public long getQueuedCount() {
+    return this.queuedCount;
+  }
+
+  /**
+   * @return the estimated size of the Points waiting in the batch queue
+   */
+  public long getQueuedBytes() {
+    return this.queuedBytes;
+  }
+
+  /**
+   * @return the number of Points the batch processor dropped
+   */
+  public long getDroppedCount() {
+    return this.droppedCount;
+  }
+
+  /**
+   * @return the number of batches the batch processor flushed
+   */
+  public long getFlushCount() {
+    return this.flushCount;
+  }
+
+  /**
+   * @return the average time to take a batch from the queue and write it, in nanoseconds
+   */
+  public long getAverageFlushNanos() {
+    return this.flushCount == 0 ? 0 : this.flushNanos / this.flushCount;
+  }
+
+  /**
+   * @return the longest time to take a batch from the queue and write it, in nanoseconds
+   */
+  public long getMaxFlushNanos() {
+    return this.maxFlushNanos;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("WriteStats [points=");
+    builder.append(this.pointCount);
+    builder.append(", unBatched=");
+    builder.append(this.unBatchedCount);
+    builder.append(", batched=");
+    builder.append(this.batchedCount);
+    builder.append(", requests=");
+    builder.append(this.requestCount);
+    builder.append(", bytes=");
+    builder.append(this.byteCount);
+    builder.append(", queued=");
+    builder.append(this.queuedCount);
+    builder.append(", queuedBytes=");
+    builder.append(this.queuedBytes);
+    builder.append(", dropped=");
+    builder.append(this.droppedCount);
+    builder.append(", flushes=");
+    builder.append(this.flushCount);
+    builder.append(", averageFlushNanos=");
+    builder.append(getAverageFlushNanos());
+    builder.append(", maxFlushNanos=");
+    builder.append(this.maxFlushNanos);
+    builder.append("]");
+    return builder.toString();
+  }
+
+}
@@ -0,0 +1,50 @@
+package org.influxdb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import retrofit.mime.TypedOutput;
+
+/**
+ * A request body that adds the number of bytes written by another body to a counter.
+ */
+public class CountingBody implements TypedOutput {
+
+  private final TypedOutput body;
+  private final AtomicLong bytes;
+
+  /**
+   * @param body the body to write
+   * @param bytes counter of the written bytes
+   */
+  public CountingBody(final TypedOutput body, final AtomicLong bytes) {
+    this.body = body;
+    this.bytes = bytes;
+  }
+
+  @Override
+  public String fileName() {
+    return this.body.fileName();
+  }
+
+  @Override
+  public String mimeType() {
+    return this.body.mimeType();
+  }
+
+  @Override
+  public long length() {
+    return this.body.length();
+  }
+
+  @Override
+  public void writeTo(final OutputStream out) throws IOException {
+    GzipBody.CountingOutputStream counting = new GzipBody.CountingOutputStream(out);
+    try {
+      this.body.writeTo(counting);
+    } finally {
+      this.bytes.addAndGet(counting.count);
+    }
+  }
+
+}
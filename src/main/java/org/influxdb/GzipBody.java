@@ -0,0 +1,116 @@
+package org.influxdb;
+
+import com.google.common.base.Preconditions;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import retrofit.mime.TypedOutput;
+
+/**
+ * A request body that gzip compresses another body while it is written, to be sent with
+ * {@code Content-Encoding: gzip}.
+ *
+ * The number of bytes before and after compression is added to the given counters each time the
+ * body is written.
+ */
+public class GzipBody implements TypedOutput {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final TypedOutput body;
+  private final int level;
+  private final AtomicLong rawBytes;
+  private final AtomicLong compressedBytes;
+
+  /**
+   * @param body the body to compress
+   * @param level the compression level, from 0 to 9 or {@link Deflater#DEFAULT_COMPRESSION}
+   * @param rawBytes counter of the bytes before compression
+   * @param compressedBytes counter of the bytes after compression
+   */
+  public GzipBody(final TypedOutput body, final int level, final AtomicLong rawBytes, final AtomicLong compressedBytes) {
+    Preconditions.checkArgument(level == Deflater.DEFAULT_COMPRESSION || (level >= 0 && level <= 9),
+            "gzip level must be between 0 and 9");
+    this.body = body;
+    this.level = level;
+    this.rawBytes = rawBytes;
+    this.compressedBytes = compressedBytes;
+  }
+
+  /**
+   * Counts the bytes written to a stream.
+   */
+  static class CountingOutputStream extends FilterOutputStream {
+
+    long count;
+
+    CountingOutputStream(final OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      this.out.write(b);
+      this.count++;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+      this.out.write(b, off, len);
+      this.count += len;
+    }
+  }
+
+  /**
+   * A GZIPOutputStream with a compression level.
+   */
+  static class LevelGzipOutputStream extends GZIPOutputStream {
+
+    LevelGzipOutputStream(final OutputStream out, final int level) throws IOException {
+      super(out, BUFFER_SIZE);
+      this.def.setLevel(level);
+    }
+
+    void release() {
+      this.def.end();
+    }
+  }
+
+  @Override
+  public String fileName() {
+    return this.body.fileName();
+  }
+
+  @Override
+  public String mimeType() {
+    return this.body.mimeType();
+  }
+
+  /**
+   * @return -1, the compressed length is not known before the body is written
+   */
+  @Override
+  public long length() {
+    return -1;
+  }
+
+  @Override
+  public void writeTo(final OutputStream out) throws IOException {
+    CountingOutputStream compressed = new CountingOutputStream(out);
+    LevelGzipOutputStream gzip = new LevelGzipOutputStream(compressed, this.level);
+    CountingOutputStream raw = new CountingOutputStream(gzip);
+    try {
+      this.body.writeTo(raw);
+      gzip.finish();
+    } finally {
+      // release the native zlib memory, the request stream is closed by the caller
+      gzip.release();
+    }
+    this.rawBytes.addAndGet(raw.count);
+    this.compressedBytes.addAndGet(compressed.count);
+  }
+
+}
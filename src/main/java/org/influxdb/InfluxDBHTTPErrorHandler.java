@@ -19,7 +19,9 @@ public class InfluxDBHTTPErrorHandler implements ErrorHandler {
     Response r = cause.getResponse();
     if (r != null && r.getStatus() >= 400) {
       try (InputStreamReader reader = new InputStreamReader(r.getBody().in(), Charsets.UTF_8)) {
-        return new RuntimeException(CharStreams.toString(reader));
+        String body = CharStreams.toString(reader);
+        InfluxDBPartialWriteException partialWrite = InfluxDBPartialWriteException.parse(r.getStatus(), body);
+        return partialWrite != null ? partialWrite : new InfluxDBHTTPException(r.getStatus(), body);
       } catch (IOException ioe) {
         logger.error("IOException during stream read: " + ioe.getMessage(), ioe);
       }
@@ -0,0 +1,23 @@
+package org.influxdb;
+
+/**
+ * An error response of the InfluxDB HTTP API, the message is the response body.
+ *
+ */
+public class InfluxDBHTTPException extends RuntimeException {
+
+  private final int status;
+
+  public InfluxDBHTTPException(final int status, final String message) {
+    super(message);
+    this.status = status;
+  }
+
+  /**
+   * @return the HTTP status code of the response
+   */
+  public int getStatus() {
+    return this.status;
+  }
+
+}
@@ -4,10 +4,11 @@ import org.influxdb.dto.QueryResult;
 import retrofit.client.Response;
 import retrofit.http.Body;
 import retrofit.http.GET;
+import retrofit.http.Header;
 import retrofit.http.Headers;
 import retrofit.http.POST;
 import retrofit.http.Query;
-import retrofit.mime.TypedString;
+import retrofit.mime.TypedOutput;
 
 /**
  * This is glue for retrofit, not the driver interface definition. See DriverInterface
@@ -22,6 +23,7 @@ public interface InfluxDBHTTPInterface {
   public static final String PRECISION = "precision";
   public static final String CONSISTENCY = "consistency";
   public static final String EPOCH = "epoch";
+  public static final String CONTENT_ENCODING = "Content-Encoding";
 
   @GET("/ping")
   public Response ping();
@@ -35,11 +37,13 @@ public interface InfluxDBHTTPInterface {
   // one of one, any, all,quorum. Defaults to all.
   // u: optional The username for authentication
   // p: optional The password for authentication
+  // contentEncoding: gzip for compressed bodies, null to send the body as is
   @Headers("Content-Type: text/plain")
   @POST("/write")
   public Response writePoints(@Query(U) String username, @Query(P) String password, @Query(DB) String database,
           @Query(RP) String retentionPolicy, @Query(PRECISION) String precision,
-          @Query(CONSISTENCY) String consistency, @Body TypedString batchPoints);
+          @Query(CONSISTENCY) String consistency, @Header(CONTENT_ENCODING) String contentEncoding,
+          @Body TypedOutput batchPoints);
 
   @GET("/query")
   public QueryResult query(@Query(U) String username, @Query(P) String password, @Query(DB) String db,
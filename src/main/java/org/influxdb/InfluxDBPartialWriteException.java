@@ -0,0 +1,243 @@
+package org.influxdb;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A write request InfluxDB rejected some lines of, with the lines or series it named.
+ *
+ * InfluxDB answers a write with bad lines with a 400 naming the first lines it could not parse
+ * ({@code unable to parse '<line>': <reason>}) or the fields with a type conflict
+ * ({@code partial write: field type conflict: input field "<field>" on measurement
+ * "<measurement>" ...}), and stores the other lines. Points beyond the retention policy are only
+ * counted, the lines are not named.
+ *
+ */
+public class InfluxDBPartialWriteException extends InfluxDBHTTPException {
+
+  private static final Pattern FIELD_TYPE_CONFLICT
+          = Pattern.compile("field type conflict: input field \"(.+?)\" on measurement \"(.+?)\" is type");
+  private static final Pattern DROPPED = Pattern.compile("dropped=(\\d+)");
+  private static final String UNABLE_TO_PARSE = "unable to parse '";
+
+  private final List<String> unparsableLines;
+  private final List<FieldConflict> fieldConflicts;
+  private final boolean beyondRetentionPolicy;
+  private final int dropped;
+
+  InfluxDBPartialWriteException(final int status, final String message, final List<String> unparsableLines,
+          final List<FieldConflict> fieldConflicts, final boolean beyondRetentionPolicy, final int dropped) {
+    super(status, message);
+    this.unparsableLines = unparsableLines;
+    this.fieldConflicts = fieldConflicts;
+    this.beyondRetentionPolicy = beyondRetentionPolicy;
+    this.dropped = dropped;
+  }
+
+  /**
+   * A field of a measurement written with another type than the one stored.
+   */
+  public static class FieldConflict {
+
+    private final String measurement;
+    private final String field;
+
+    public FieldConflict(final String measurement, final String field) {
+      this.measurement = measurement;
+      this.field = field;
+    }
+
+    public String getMeasurement() {
+      return this.measurement;
+    }
+
+    public String getField() {
+      return this.field;
+    }
+
+    /**
+     * @param line a line protocol entry
+     * @return true if the line writes this field of this measurement
+     */
+    public boolean matches(final String line) {
+      int end = unescapedIndexOf(line, 0, ',', ' ');
+      if (end < 0 || !this.measurement.equals(unescape(line, 0, end))) {
+        return false;
+      }
+      int position = unescapedIndexOf(line, end, ' ') + 1;
+      while (position > 0 && position < line.length()) {
+        int equals = unescapedIndexOf(line, position, '=');
+        if (equals < 0) {
+          return false;
+        }
+        if (this.field.equals(unescape(line, position, equals))) {
+          return true;
+        }
+        position = equals + 1;
+        if (position < line.length() && line.charAt(position) == '"') {
+          position = unescapedIndexOf(line, position + 1, '"') + 1;
+          if (position <= 0) {
+            return false;
+          }
+        }
+        int next = unescapedIndexOf(line, position, ',', ' ');
+        if (next < 0 || line.charAt(next) == ' ') {
+          return false;
+        }
+        position = next + 1;
+      }
+      return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+      return "FieldConflict [measurement=" + this.measurement + ", field=" + this.field + "]";
+    }
+  }
+
+  /**
+   * Parse the body of an error response into an InfluxDBPartialWriteException.
+   *
+   * @param status the HTTP status code
+   * @param body the response body
+   * @return the exception, or null if the error is not about some of the written lines
+   */
+  public static InfluxDBPartialWriteException parse(final int status, final String body) {
+    if (status != 400 || body == null) {
+      return null;
+    }
+    String error = errorOf(body);
+
+    ImmutableList.Builder<String> unparsableLines = ImmutableList.builder();
+    for (String part : error.split("\n")) {
+      int start = part.indexOf(UNABLE_TO_PARSE);
+      if (start >= 0) {
+        start += UNABLE_TO_PARSE.length();
+        int end = part.lastIndexOf("': ");
+        unparsableLines.add(end >= start ? part.substring(start, end) : part.substring(start));
+      }
+    }
+    ImmutableList.Builder<FieldConflict> fieldConflicts = ImmutableList.builder();
+    Matcher matcher = FIELD_TYPE_CONFLICT.matcher(error);
+    while (matcher.find()) {
+      fieldConflicts.add(new FieldConflict(matcher.group(2), matcher.group(1)));
+    }
+    boolean beyondRetentionPolicy = error.contains("points beyond retention policy");
+    matcher = DROPPED.matcher(error);
+    int dropped = matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+
+    InfluxDBPartialWriteException exception = new InfluxDBPartialWriteException(status, body, unparsableLines.build(),
+            fieldConflicts.build(), beyondRetentionPolicy, dropped);
+    if (!error.contains("partial write") && exception.unparsableLines.isEmpty() && exception.fieldConflicts.isEmpty()) {
+      return null;
+    }
+    return exception;
+  }
+
+  private static String errorOf(final String body) {
+    if (!body.trim().startsWith("{")) {
+      return body;
+    }
+    try {
+      JsonElement json = new JsonParser().parse(body);
+      if (json.isJsonObject()) {
+        JsonObject object = json.getAsJsonObject();
+        if (object.has("error") && object.get("error").isJsonPrimitive()) {
+          return object.get("error").getAsString();
+        }
+      }
+    } catch (JsonParseException e) {
+      // not JSON after all, use the body as it is
+    }
+    return body;
+  }
+
+  /**
+   * @param line a line protocol entry that was written
+   * @return true if InfluxDB named the line or one of its fields as rejected
+   */
+  public boolean isRejected(final String line) {
+    if (this.unparsableLines.contains(line)) {
+      return true;
+    }
+    for (FieldConflict fieldConflict : this.fieldConflicts) {
+      if (fieldConflict.matches(line)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return true if the rejected lines or series are known
+   */
+  public boolean hasRejectedLines() {
+    return !this.unparsableLines.isEmpty() || !this.fieldConflicts.isEmpty();
+  }
+
+  /**
+   * @return the lines InfluxDB could not parse
+   */
+  public List<String> getUnparsableLines() {
+    return this.unparsableLines;
+  }
+
+  /**
+   * @return the fields written with another type than the one stored
+   */
+  public List<FieldConflict> getFieldConflicts() {
+    return this.fieldConflicts;
+  }
+
+  /**
+   * @return true if points older than the retention policy were dropped
+   */
+  public boolean isBeyondRetentionPolicy() {
+    return this.beyondRetentionPolicy;
+  }
+
+  /**
+   * @return the number of points InfluxDB dropped, or -1 if not reported
+   */
+  public int getDropped() {
+    return this.dropped;
+  }
+
+  private static int unescapedIndexOf(final String line, final int from, final char... chars) {
+    for (int i = from; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '\\') {
+        i++;
+        continue;
+      }
+      for (char match : chars) {
+        if (c == match) {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  private static String unescape(final String line, final int start, final int end) {
+    StringBuilder builder = new StringBuilder(end - start);
+    for (int i = start; i < end; i++) {
+      char c = line.charAt(i);
+      if (c == '\\' && i + 1 < end) {
+        c = line.charAt(++i);
+      }
+      builder.append(c);
+    }
+    return builder.toString();
+  }
+
+}
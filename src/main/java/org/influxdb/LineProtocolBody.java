@@ -0,0 +1,181 @@
+package org.influxdb;
+
+import com.google.common.base.Preconditions;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.TimeUnit;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.LineProtocolEncoder;
+import org.influxdb.dto.Point;
+import org.influxdb.dto.SeriesKeyCache;
+import retrofit.mime.TypedOutput;
+
+/**
+ * A request body that encodes line protocol straight to the request stream.
+ *
+ * Points or records are encoded into a per thread buffer that is written out whenever it holds
+ * {@code chunkSize} bytes, so a write needs memory for one chunk instead of the whole batch. The
+ * length is unknown up front and the body is sent with chunked transfer encoding. The body can be
+ * written any number of times, for example when a request is retried.
+ */
+public abstract class LineProtocolBody implements TypedOutput {
+
+  public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+  private static final ThreadLocal<LineProtocolEncoder> ENCODERS = new ThreadLocal<LineProtocolEncoder>() {
+    @Override
+    protected LineProtocolEncoder initialValue() {
+      return new LineProtocolEncoder(DEFAULT_CHUNK_SIZE + 1024);
+    }
+  };
+
+  protected final int chunkSize;
+  protected final SeriesKeyCache seriesKeyCache;
+  protected final TimeUnit precision;
+
+  LineProtocolBody(final int chunkSize, final SeriesKeyCache seriesKeyCache, final TimeUnit precision) {
+    Preconditions.checkArgument(chunkSize > 0, "chunkSize must be greater than 0");
+    this.chunkSize = chunkSize;
+    this.seriesKeyCache = seriesKeyCache;
+    this.precision = precision;
+  }
+
+  /**
+   * A body of all Points of a BatchPoints, each followed by a newLine, with the timestamps in
+   * the precision of the BatchPoints.
+   *
+   * @param batchPoints the BatchPoints to write
+   * @param chunkSize the number of bytes encoded before they are written to the stream
+   * @param seriesKeyCache the cache of escaped series keys, may be null
+   * @return the body
+   */
+  public static LineProtocolBody of(final BatchPoints batchPoints, final int chunkSize, final SeriesKeyCache seriesKeyCache) {
+    final List<Point> points = batchPoints.getPoints();
+    return new LineProtocolBody(chunkSize, seriesKeyCache, batchPoints.getPrecision()) {
+      @Override
+      int count() {
+        return points.size();
+      }
+
+      @Override
+      void encode(final LineProtocolEncoder encoder, final int index) {
+        encoder.encodeLine(points.get(index));
+      }
+    };
+  }
+
+  /**
+   * A body of line protocol records separated by newLines.
+   *
+   * @param records the records to write
+   * @param chunkSize the number of bytes encoded before they are written to the stream
+   * @return the body
+   */
+  public static LineProtocolBody of(final List<String> records, final int chunkSize) {
+    // records are read by index
+    final List<String> recordList = records instanceof RandomAccess ? records : new ArrayList<>(records);
+    return new LineProtocolBody(chunkSize, null, TimeUnit.NANOSECONDS) {
+      @Override
+      int count() {
+        return recordList.size();
+      }
+
+      @Override
+      void encode(final LineProtocolEncoder encoder, final int index) {
+        if (index > 0) {
+          encoder.encodeRecord("\n");
+        }
+        encoder.encodeRecord(recordList.get(index));
+      }
+    };
+  }
+
+  /**
+   * @return the number of Points or records of this body
+   */
+  abstract int count();
+
+  /**
+   * Encode the Point or record at index, with its separator.
+   */
+  abstract void encode(LineProtocolEncoder encoder, int index);
+
+  /**
+   * Check whether the encoded body is shorter than a number of bytes. Only the Points or records
+   * up to that size are encoded.
+   *
+   * @param bytes the number of bytes to compare with
+   * @return true if the whole body is shorter than bytes
+   */
+  public boolean isShorterThan(final int bytes) {
+    LineProtocolEncoder encoder = acquireEncoder();
+    try {
+      int count = count();
+      for (int i = 0; i < count; i++) {
+        encode(encoder, i);
+        if (encoder.size() >= bytes) {
+          return false;
+        }
+      }
+      return encoder.size() < bytes;
+    } finally {
+      releaseEncoder(encoder);
+    }
+  }
+
+  private LineProtocolEncoder acquireEncoder() {
+    LineProtocolEncoder encoder = ENCODERS.get();
+    encoder.reset();
+    encoder.setSeriesKeyCache(this.seriesKeyCache);
+    encoder.setPrecision(this.precision);
+    return encoder;
+  }
+
+  private static void releaseEncoder(final LineProtocolEncoder encoder) {
+    encoder.reset();
+    encoder.setSeriesKeyCache(null);
+    encoder.setPrecision(TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public String fileName() {
+    return null;
+  }
+
+  @Override
+  public String mimeType() {
+    return "text/plain; charset=utf-8";
+  }
+
+  /**
+   * @return -1, the length is not known before the body is written
+   */
+  @Override
+  public long length() {
+    return -1;
+  }
+
+  @Override
+  public void writeTo(final OutputStream out) throws IOException {
+    LineProtocolEncoder encoder = acquireEncoder();
+    try {
+      int count = count();
+      for (int i = 0; i < count; i++) {
+        encode(encoder, i);
+        if (encoder.size() >= this.chunkSize) {
+          encoder.writeTo(out);
+          encoder.reset();
+        }
+      }
+      if (encoder.size() > 0) {
+        encoder.writeTo(out);
+      }
+    } finally {
+      releaseEncoder(encoder);
+    }
+  }
+
+}
@@ -8,8 +8,10 @@ import com.google.common.collect.Ordering;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.influxdb.InfluxDB.ConsistencyLevel;
 import org.influxdb.InfluxDB.RetentionPolicy;
+import org.influxdb.TimeUtil;
 
 /**
  * {Purpose of This Type}
@@ -26,6 +28,7 @@ public class BatchPoints {
   private Map<String, String> tags;
   private List<Point> points;
   private ConsistencyLevel consistency;
+  private TimeUnit precision = TimeUnit.NANOSECONDS;
 
   BatchPoints() {
     // Only visible in the Builder
@@ -51,6 +54,7 @@ public class BatchPoints {
     private final Map<String, String> tags = Maps.newTreeMap(Ordering.natural());
     private final List<Point> points = Lists.newArrayList();
     private ConsistencyLevel consistency;
+    private TimeUnit precision = TimeUnit.NANOSECONDS;
 
     /**
      * @param database
@@ -115,6 +119,21 @@ public class BatchPoints {
       return this;
     }
 
+    /**
+     * Set the precision the timestamps are written in. If not given it defaults to
+     * {@link TimeUnit#NANOSECONDS}, coarser precisions truncate the timestamps and shorten the
+     * request.
+     *
+     * @param precisionToSet
+     * @return the Builder instance
+     */
+    public Builder precision(final TimeUnit precisionToSet) {
+      Preconditions.checkNotNull(precisionToSet, "Precision must be not null!");
+      TimeUtil.toTimePrecision(precisionToSet);
+      this.precision = precisionToSet;
+      return this;
+    }
+
     /**
      * Create a new BatchPoints instance.
      *
@@ -125,7 +144,7 @@ public class BatchPoints {
       BatchPoints batchPoints = new BatchPoints();
       batchPoints.setDatabase(this.database);
       for (Point point : this.points) {
-        point.getTags().putAll(this.tags);
+        point.addTags(this.tags);
       }
       batchPoints.setPoints(this.points);
       batchPoints.setRetentionPolicy(this.retentionPolicy);
@@ -134,6 +153,7 @@ public class BatchPoints {
         this.consistency = ConsistencyLevel.ONE;
       }
       batchPoints.setConsistency(this.consistency);
+      batchPoints.setPrecision(this.precision);
       return batchPoints;
     }
   }
@@ -187,7 +207,7 @@ public class BatchPoints {
    * @return this Instance to be able to daisy chain calls.
    */
   public BatchPoints point(final Point point) {
-    point.getTags().putAll(this.tags);
+    point.addTags(this.tags);
     this.points.add(point);
     return this;
   }
@@ -220,6 +240,20 @@ public class BatchPoints {
     this.consistency = consistency;
   }
 
+  /**
+   * @return the precision the timestamps are written in
+   */
+  public TimeUnit getPrecision() {
+    return this.precision;
+  }
+
+  /**
+   * @param precision the precision to set
+   */
+  void setPrecision(final TimeUnit precision) {
+    this.precision = precision;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -230,6 +264,8 @@ public class BatchPoints {
     builder.append(this.database);
     builder.append(", retentionPolicy=");
     builder.append(this.retentionPolicy);
+    builder.append(", precision=");
+    builder.append(this.precision);
     builder.append(", tags=");
     builder.append(this.tags);
     builder.append(", points=");
@@ -245,10 +281,6 @@ public class BatchPoints {
    * @return the String with newLines.
    */
   public String lineProtocol() {
-    StringBuilder sb = new StringBuilder();
-    for (Point point : this.points) {
-      sb.append(point.lineProtocol()).append("\n");
-    }
-    return sb.toString();
+    return new LineProtocolEncoder().encode(this).toString();
   }
 }
@@ -0,0 +1,432 @@
+package org.influxdb.dto;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Point that keeps its tags as pre-sorted arrays and its field values in primitive arrays.
+ *
+ * A Point built by {@link Point.Builder} allocates two TreeMaps, their entry nodes and a boxed
+ * value per field. A CompactPoint stores the field names in one array and the values by type in
+ * parallel double[], long[] and boolean[] arrays, without boxing. Consecutive points built with the
+ * same tag keys and field names share those name arrays. A CompactPoint is a Point, so it can be
+ * written with every driver and added to BatchPoints, and its line protocol is identical to the
+ * equivalent Point.
+ *
+ */
+public class CompactPoint extends Point {
+
+  static final byte TYPE_DOUBLE = 0;
+  static final byte TYPE_LONG = 1;
+  static final byte TYPE_BOOLEAN = 2;
+  static final byte TYPE_STRING = 3;
+
+  private static final String[] EMPTY = new String[0];
+
+  private final String measurement;
+  private String[] tagKeys;
+  private String[] tagValues;
+  private final String[] fieldNames;
+  private final byte[] fieldTypes;
+  // indexed like fieldNames, only the arrays for the types present are allocated
+  private final double[] doubleValues;
+  private final long[] longValues;
+  private final boolean[] booleanValues;
+  private final String[] stringValues;
+  private final long time;
+  private final TimeUnit precision;
+  private final boolean useInteger;
+
+  CompactPoint(final Builder builder, final String[] tagKeys, final String[] fieldNames, final byte[] fieldTypes) {
+    this.measurement = builder.measurement;
+    this.tagKeys = tagKeys;
+    this.tagValues = Arrays.copyOf(builder.tagValues, builder.tagCount);
+    this.fieldNames = fieldNames;
+    this.fieldTypes = fieldTypes;
+    this.useInteger = builder.useInteger;
+
+    boolean hasDouble = false;
+    boolean hasLong = false;
+    boolean hasBoolean = false;
+    boolean hasString = false;
+    for (byte type : fieldTypes) {
+      hasDouble |= type == TYPE_DOUBLE;
+      hasLong |= type == TYPE_LONG;
+      hasBoolean |= type == TYPE_BOOLEAN;
+      hasString |= type == TYPE_STRING;
+    }
+    int fieldCount = fieldNames.length;
+    this.doubleValues = hasDouble ? new double[fieldCount] : null;
+    this.longValues = hasLong ? new long[fieldCount] : null;
+    this.booleanValues = hasBoolean ? new boolean[fieldCount] : null;
+    this.stringValues = hasString ? new String[fieldCount] : null;
+    for (int i = 0; i < fieldCount; i++) {
+      long bits = builder.fieldBits[i];
+      switch (fieldTypes[i]) {
+        case TYPE_DOUBLE:
+          this.doubleValues[i] = Double.longBitsToDouble(bits);
+          break;
+        case TYPE_LONG:
+          this.longValues[i] = bits;
+          break;
+        case TYPE_BOOLEAN:
+          this.booleanValues[i] = bits != 0;
+          break;
+        default:
+          this.stringValues[i] = builder.fieldStrings[i];
+      }
+    }
+
+    if (builder.hasTime) {
+      this.time = builder.time;
+      this.precision = builder.precision;
+    } else {
+      this.time = System.currentTimeMillis();
+      this.precision = TimeUnit.MILLISECONDS;
+    }
+  }
+
+  /**
+   * Create a new CompactPoint Builder to create CompactPoints in a fluent manner.
+   *
+   * @param measurement the name of the measurement.
+   * @return the Builder to be able to add further Builder calls.
+   */
+  public static Builder builder(final String measurement) {
+    return new Builder(measurement);
+  }
+
+  /**
+   * Builder for CompactPoints. A Builder can be {@link #reset() reset} and reused for the next
+   * point of the same measurement, which keeps its arrays and shares the tag key and field name
+   * arrays between points with the same layout. Builders are not thread safe.
+   */
+  public static final class Builder {
+
+    private final String measurement;
+
+    private String[] tagKeys = new String[4];
+    private String[] tagValues = new String[4];
+    private int tagCount;
+
+    private String[] fieldNames = new String[4];
+    private byte[] fieldTypes = new byte[4];
+    // doubles as raw long bits, longs, and booleans as 0 or 1
+    private long[] fieldBits = new long[4];
+    private String[] fieldStrings = new String[4];
+    private int fieldCount;
+
+    private long time;
+    private TimeUnit precision = TimeUnit.NANOSECONDS;
+    private boolean hasTime;
+    private boolean useInteger = false;
+
+    // arrays of the last built point, reused while the layout does not change
+    private String[] builtTagKeys = EMPTY;
+    private String[] builtFieldNames = EMPTY;
+    private byte[] builtFieldTypes = new byte[0];
+
+    /**
+     * @param measurement
+     */
+    Builder(final String measurement) {
+      this.measurement = measurement;
+    }
+
+    /**
+     * Use Integer type instead of float cast for long fields
+     *
+     * @param enable the value
+     * @return the Builder instance
+     */
+    public Builder useInteger(final boolean enable) {
+      this.useInteger = enable;
+      return this;
+    }
+
+    /**
+     * Add a tag to this point.
+     *
+     * @param tagName the tag name
+     * @param value the tag value
+     * @return the Builder instance.
+     */
+    public Builder tag(final String tagName, final String value) {
+      Preconditions.checkArgument(tagName != null);
+      Preconditions.checkArgument(value != null);
+      int index = Arrays.binarySearch(this.tagKeys, 0, this.tagCount, tagName);
+      if (index < 0) {
+        index = -index - 1;
+        if (this.tagCount == this.tagKeys.length) {
+          this.tagKeys = Arrays.copyOf(this.tagKeys, this.tagCount << 1);
+          this.tagValues = Arrays.copyOf(this.tagValues, this.tagCount << 1);
+        }
+        System.arraycopy(this.tagKeys, index, this.tagKeys, index + 1, this.tagCount - index);
+        System.arraycopy(this.tagValues, index, this.tagValues, index + 1, this.tagCount - index);
+        this.tagKeys[index] = tagName;
+        this.tagCount++;
+      }
+      this.tagValues[index] = value;
+      return this;
+    }
+
+    /**
+     * Add a Map of tags to add to this point.
+     *
+     * @param tagsToAdd the Map of tags to add
+     * @return the Builder instance.
+     */
+    public Builder tag(final Map<String, String> tagsToAdd) {
+      for (Entry<String, String> tag : tagsToAdd.entrySet()) {
+        tag(tag.getKey(), tag.getValue());
+      }
+      return this;
+    }
+
+    /**
+     * Add a float field to this point.
+     *
+     * @param field the field name
+     * @param value the value of this field
+     * @return the Builder instance.
+     */
+    public Builder field(final String field, final double value) {
+      setField(field, TYPE_DOUBLE, Double.doubleToRawLongBits(value), null);
+      return this;
+    }
+
+    /**
+     * Add a long field to this point, written as integer if {@link #useInteger(boolean)} is
+     * enabled.
+     *
+     * @param field the field name
+     * @param value the value of this field
+     * @return the Builder instance.
+     */
+    public Builder field(final String field, final long value) {
+      setField(field, TYPE_LONG, value, null);
+      return this;
+    }
+
+    /**
+     * Add a boolean field to this point.
+     *
+     * @param field the field name
+     * @param value the value of this field
+     * @return the Builder instance.
+     */
+    public Builder field(final String field, final boolean value) {
+      setField(field, TYPE_BOOLEAN, value ? 1 : 0, null);
+      return this;
+    }
+
+    /**
+     * Add a string field to this point. Null values are ignored.
+     *
+     * @param field the field name
+     * @param value the value of this field
+     * @return the Builder instance.
+     */
+    public Builder field(final String field, final String value) {
+      if (value != null) {
+        setField(field, TYPE_STRING, 0, value);
+      }
+      return this;
+    }
+
+    private void setField(final String field, final byte type, final long bits, final String string) {
+      Preconditions.checkArgument(field != null);
+      int index = Arrays.binarySearch(this.fieldNames, 0, this.fieldCount, field);
+      if (index < 0) {
+        index = -index - 1;
+        if (this.fieldCount == this.fieldNames.length) {
+          int capacity = this.fieldCount << 1;
+          this.fieldNames = Arrays.copyOf(this.fieldNames, capacity);
+          this.fieldTypes = Arrays.copyOf(this.fieldTypes, capacity);
+          this.fieldBits = Arrays.copyOf(this.fieldBits, capacity);
+          this.fieldStrings = Arrays.copyOf(this.fieldStrings, capacity);
+        }
+        int moved = this.fieldCount - index;
+        System.arraycopy(this.fieldNames, index, this.fieldNames, index + 1, moved);
+        System.arraycopy(this.fieldTypes, index, this.fieldTypes, index + 1, moved);
+        System.arraycopy(this.fieldBits, index, this.fieldBits, index + 1, moved);
+        System.arraycopy(this.fieldStrings, index, this.fieldStrings, index + 1, moved);
+        this.fieldNames[index] = field;
+        this.fieldCount++;
+      }
+      this.fieldTypes[index] = type;
+      this.fieldBits[index] = bits;
+      this.fieldStrings[index] = string;
+    }
+
+    /**
+     * Add a time to this point
+     *
+     * @param timeToSet
+     * @param precisionToSet
+     * @return the Builder instance.
+     */
+    public Builder time(final long timeToSet, final TimeUnit precisionToSet) {
+      Preconditions.checkNotNull(precisionToSet, "Precision must be not null!");
+      this.time = timeToSet;
+      this.precision = precisionToSet;
+      this.hasTime = true;
+      return this;
+    }
+
+    /**
+     * Remove all tags, fields and the time, to build the next point of the same measurement.
+     *
+     * @return the Builder instance.
+     */
+    public Builder reset() {
+      Arrays.fill(this.tagValues, 0, this.tagCount, null);
+      Arrays.fill(this.fieldStrings, 0, this.fieldCount, null);
+      this.tagCount = 0;
+      this.fieldCount = 0;
+      this.hasTime = false;
+      this.precision = TimeUnit.NANOSECONDS;
+      return this;
+    }
+
+    /**
+     * Create a new CompactPoint.
+     *
+     * @return the newly created CompactPoint.
+     */
+    public CompactPoint build() {
+      Preconditions
+              .checkArgument(!Strings.isNullOrEmpty(this.measurement), "Point name must not be null or empty.");
+      Preconditions.checkArgument(this.fieldCount > 0, "Point must have at least one field specified.");
+      if (!sameNames(this.builtTagKeys, this.tagKeys, this.tagCount)) {
+        this.builtTagKeys = Arrays.copyOf(this.tagKeys, this.tagCount);
+      }
+      if (!sameNames(this.builtFieldNames, this.fieldNames, this.fieldCount)
+              || !sameTypes(this.builtFieldTypes, this.fieldTypes, this.fieldCount)) {
+        this.builtFieldNames = Arrays.copyOf(this.fieldNames, this.fieldCount);
+        this.builtFieldTypes = Arrays.copyOf(this.fieldTypes, this.fieldCount);
+      }
+      return new CompactPoint(this, this.builtTagKeys, this.builtFieldNames, this.builtFieldTypes);
+    }
+
+    private static boolean sameNames(final String[] built, final String[] current, final int count) {
+      if (built.length != count) {
+        return false;
+      }
+      for (int i = 0; i < count; i++) {
+        if (!built[i].equals(current[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static boolean sameTypes(final byte[] built, final byte[] current, final int count) {
+      for (int i = 0; i < count; i++) {
+        if (built[i] != current[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * @return a sorted copy of the tags
+   */
+  @Override
+  Map<String, String> getTags() {
+    Map<String, String> tags = Maps.newTreeMap(Ordering.natural());
+    for (int i = 0; i < this.tagKeys.length; i++) {
+      tags.put(this.tagKeys[i], this.tagValues[i]);
+    }
+    return tags;
+  }
+
+  @Override
+  void addTags(final Map<String, String> tagsToAdd) {
+    if (tagsToAdd.isEmpty()) {
+      return;
+    }
+    Map<String, String> tags = getTags();
+    tags.putAll(tagsToAdd);
+    this.tagKeys = tags.keySet().toArray(new String[tags.size()]);
+    this.tagValues = tags.values().toArray(new String[tags.size()]);
+  }
+
+  @Override
+  public int estimatedSize() {
+    int size = this.measurement.length() + TIME_SIZE;
+    for (int i = 0; i < this.tagKeys.length; i++) {
+      size += this.tagKeys[i].length() + this.tagValues[i].length() + 2;
+    }
+    for (int i = 0; i < this.fieldNames.length; i++) {
+      size += this.fieldNames[i].length() + 2;
+      size += this.fieldTypes[i] == TYPE_STRING ? this.stringValues[i].length() + 2 : NUMBER_SIZE;
+    }
+    return size;
+  }
+
+  @Override
+  void encode(final LineProtocolEncoder encoder) {
+    encoder.writeSeriesKey(this.measurement, this.tagKeys, this.tagValues);
+    encoder.writeByte(' ');
+    for (int i = 0; i < this.fieldNames.length; i++) {
+      if (i > 0) {
+        encoder.writeByte(',');
+      }
+      encoder.writeKey(this.fieldNames[i]);
+      encoder.writeByte('=');
+      switch (this.fieldTypes[i]) {
+        case TYPE_DOUBLE:
+          encoder.writeDouble(this.doubleValues[i]);
+          break;
+        case TYPE_LONG:
+          encoder.writeLong(this.longValues[i]);
+          if (this.useInteger) {
+            encoder.writeByte('i');
+          } else {
+            encoder.writeByte('.');
+            encoder.writeByte('0');
+          }
+          break;
+        case TYPE_BOOLEAN:
+          encoder.writeBoolean(this.booleanValues[i]);
+          break;
+        default:
+          encoder.writeFieldString(this.stringValues[i]);
+      }
+    }
+    encoder.writeByte(' ');
+    encoder.writeTime(this.time, this.precision);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("CompactPoint [name=");
+    builder.append(this.measurement);
+    builder.append(", time=");
+    builder.append(this.time);
+    builder.append(", tags=");
+    builder.append(getTags());
+    builder.append(", precision=");
+    builder.append(this.precision);
+    builder.append(", fields=");
+    builder.append(Arrays.toString(this.fieldNames));
+    builder.append(", useInteger=");
+    builder.append(this.useInteger);
+    builder.append("]");
+    return builder.toString();
+  }
+
+}
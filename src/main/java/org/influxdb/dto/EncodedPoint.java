@@ -0,0 +1,141 @@
+package org.influxdb.dto;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Point that was already encoded as line protocol, see {@link PointSchema}.
+ *
+ * Tags added by a BatchPoints are merged into the encoded tags, which re-encodes the series key
+ * of the line once.
+ *
+ */
+class EncodedPoint extends Point {
+
+  private byte[] line;
+
+  EncodedPoint(final byte[] line) {
+    this.line = line;
+  }
+
+  @Override
+  Map<String, String> getTags() {
+    return Collections.unmodifiableMap(parseTags());
+  }
+
+  @Override
+  void addTags(final Map<String, String> tagsToAdd) {
+    if (tagsToAdd.isEmpty()) {
+      return;
+    }
+    int measurementEnd = indexOfUnescaped(',', 0, seriesKeyEnd());
+    Map<String, String> tags = parseTags();
+    tags.putAll(tagsToAdd);
+
+    LineProtocolEncoder encoder = new LineProtocolEncoder(this.line.length + 64);
+    encoder.writeBytes(this.line, measurementEnd);
+    for (Entry<String, String> tag : tags.entrySet()) {
+      encoder.writeByte(',');
+      encoder.writeKey(tag.getKey());
+      encoder.writeByte('=');
+      encoder.writeKey(tag.getValue());
+    }
+    encoder.writeBytes(Arrays.copyOfRange(this.line, seriesKeyEnd(), this.line.length));
+    this.line = encoder.toByteArray();
+  }
+
+  /**
+   * @return the tags of the encoded series key, sorted by key
+   */
+  private Map<String, String> parseTags() {
+    Map<String, String> tags = Maps.newTreeMap(Ordering.natural());
+    int end = seriesKeyEnd();
+    int pos = indexOfUnescaped(',', 0, end);
+    while (pos < end) {
+      int equals = indexOfUnescaped('=', pos + 1, end);
+      int next = indexOfUnescaped(',', equals + 1, end);
+      tags.put(unescape(pos + 1, equals), unescape(Math.min(equals + 1, next), next));
+      pos = next;
+    }
+    return tags;
+  }
+
+  private int seriesKeyEnd() {
+    return indexOfUnescaped(' ', 0, this.line.length);
+  }
+
+  /**
+   * @return the index of the first c not escaped with a backslash, or to if there is none
+   */
+  private int indexOfUnescaped(final char c, final int from, final int to) {
+    for (int i = from; i < to; i++) {
+      if (this.line[i] == '\\' && i + 1 < to && isEscaped(this.line[i + 1])) {
+        i++;
+      } else if (this.line[i] == c) {
+        return i;
+      }
+    }
+    return to;
+  }
+
+  private String unescape(final int from, final int to) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(to - from);
+    for (int i = from; i < to; i++) {
+      if (this.line[i] == '\\' && i + 1 < to && isEscaped(this.line[i + 1])) {
+        i++;
+      }
+      bytes.write(this.line[i]);
+    }
+    return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  // the characters escaped in measurements, tag keys and tag values
+  private static boolean isEscaped(final byte b) {
+    return b == ' ' || b == ',' || b == '=';
+  }
+
+  @Override
+  public int estimatedSize() {
+    return this.line.length + 1;
+  }
+
+  @Override
+  void encode(final LineProtocolEncoder encoder) {
+    if (encoder.getPrecision() == TimeUnit.NANOSECONDS) {
+      encoder.writeBytes(this.line);
+      return;
+    }
+    // the line ends with the timestamp in nanoseconds, convert it to the precision of the encoder
+    int space = this.line.length - 1;
+    while (this.line[space] != ' ') {
+      space--;
+    }
+    long time = 0;
+    boolean negative = this.line[space + 1] == '-';
+    for (int i = negative ? space + 2 : space + 1; i < this.line.length; i++) {
+      time = time * 10 + (this.line[i] - '0');
+    }
+    encoder.writeBytes(this.line, space + 1);
+    encoder.writeTime(negative ? -time : time, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("EncodedPoint [line=");
+    builder.append(new String(this.line, StandardCharsets.UTF_8));
+    builder.append("]");
+    return builder.toString();
+  }
+
+}
@@ -0,0 +1,428 @@
+package org.influxdb.dto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Encodes Points and BatchPoints as line protocol directly into a reusable, growable buffer of
+ * UTF-8 bytes.
+ *
+ * The output is identical to {@link Point#lineProtocol()} and {@link BatchPoints#lineProtocol()},
+ * but no intermediate Strings are built. Numbers are written by {@link NumberFormatter}. Once the
+ * buffer has grown to fit the largest batch, an encoder can be {@link #reset() reset} and reused
+ * without further allocation. Instances are not thread safe.
+ *
+ */
+public class LineProtocolEncoder {
+
+  private static final int DEFAULT_CAPACITY = 4096;
+
+  private static final int ESCAPE_NONE = 0;
+  private static final int ESCAPE_KEY = 1;
+  private static final int ESCAPE_FIELD = 2;
+
+  private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+  private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+
+  private byte[] buffer;
+  private int size;
+
+  private SeriesKeyCache seriesKeyCache;
+  private TimeUnit precision = TimeUnit.NANOSECONDS;
+
+  public LineProtocolEncoder() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param initialCapacity the initial size of the byte buffer
+   */
+  public LineProtocolEncoder(final int initialCapacity) {
+    this.buffer = new byte[Math.max(16, initialCapacity)];
+  }
+
+  /**
+   * @param initialCapacity the initial size of the byte buffer
+   * @param seriesKeyCache the cache of escaped series keys to use, may be shared between encoders
+   */
+  public LineProtocolEncoder(final int initialCapacity, final SeriesKeyCache seriesKeyCache) {
+    this(initialCapacity);
+    this.seriesKeyCache = seriesKeyCache;
+  }
+
+  /**
+   * @return the cache of escaped series keys, or null when series keys are escaped for every Point
+   */
+  public SeriesKeyCache getSeriesKeyCache() {
+    return this.seriesKeyCache;
+  }
+
+  /**
+   * @param seriesKeyCache the cache of escaped series keys to use, or null to escape series keys
+   * for every Point
+   */
+  public void setSeriesKeyCache(final SeriesKeyCache seriesKeyCache) {
+    this.seriesKeyCache = seriesKeyCache;
+  }
+
+  /**
+   * @return the precision timestamps are written in
+   */
+  public TimeUnit getPrecision() {
+    return this.precision;
+  }
+
+  /**
+   * The precision to write timestamps in, defaults to nanoseconds. Timestamps are truncated to
+   * it, the write request must be sent with the same precision.
+   *
+   * @param precision the precision
+   */
+  public void setPrecision(final TimeUnit precision) {
+    this.precision = precision;
+  }
+
+  /**
+   * Append the line protocol entry of a single Point, without newLine.
+   *
+   * @param point the Point to encode
+   * @return this encoder to be able to daisy chain calls.
+   */
+  public LineProtocolEncoder encode(final Point point) {
+    point.encode(this);
+    return this;
+  }
+
+  /**
+   * Append the line protocol entry of a single Point followed by a newLine.
+   *
+   * @param point the Point to encode
+   * @return this encoder to be able to daisy chain calls.
+   */
+  public LineProtocolEncoder encodeLine(final Point point) {
+    point.encode(this);
+    writeByte('\n');
+    return this;
+  }
+
+  /**
+   * Append the line protocol of all Points of a BatchPoints, each followed by a newLine.
+   *
+   * @param batchPoints the BatchPoints to encode
+   * @return this encoder to be able to daisy chain calls.
+   */
+  public LineProtocolEncoder encode(final BatchPoints batchPoints) {
+    TimeUnit previous = this.precision;
+    this.precision = batchPoints.getPrecision();
+    try {
+      for (Point point : batchPoints.getPoints()) {
+        encodeLine(point);
+      }
+    } finally {
+      this.precision = previous;
+    }
+    return this;
+  }
+
+  /**
+   * Append an already formatted line protocol record as UTF-8, without escaping.
+   *
+   * @param record the record to append
+   * @return this encoder to be able to daisy chain calls.
+   */
+  public LineProtocolEncoder encodeRecord(final CharSequence record) {
+    writeUtf8(record, ESCAPE_NONE);
+    return this;
+  }
+
+  /**
+   * Discard the encoded content, keeping the allocated buffer for reuse.
+   *
+   * @return this encoder to be able to daisy chain calls.
+   */
+  public LineProtocolEncoder reset() {
+    this.size = 0;
+    return this;
+  }
+
+  /**
+   * @return the number of encoded bytes
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * The backing array of this encoder. Only the first {@link #size()} bytes are valid, and the
+   * array is replaced when the buffer grows.
+   *
+   * @return the backing array
+   */
+  public byte[] array() {
+    return this.buffer;
+  }
+
+  /**
+   * @return a copy of the encoded bytes
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(this.buffer, this.size);
+  }
+
+  /**
+   * Write the encoded bytes to an OutputStream.
+   *
+   * @param out the stream to write to
+   * @throws IOException if the stream fails
+   */
+  public void writeTo(final OutputStream out) throws IOException {
+    out.write(this.buffer, 0, this.size);
+  }
+
+  /**
+   * Copy the encoded bytes into a ByteBuffer, like a reused direct buffer of a channel.
+   *
+   * @param out the buffer to put the bytes into, with at least {@link #size()} bytes remaining
+   */
+  public void writeTo(final ByteBuffer out) {
+    out.put(this.buffer, 0, this.size);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return new String(this.buffer, 0, this.size, StandardCharsets.UTF_8);
+  }
+
+  void writeByte(final int b) {
+    if (this.size == this.buffer.length) {
+      grow(this.size + 1);
+    }
+    this.buffer[this.size++] = (byte) b;
+  }
+
+  void writeBytes(final byte[] bytes) {
+    writeBytes(bytes, bytes.length);
+  }
+
+  void writeBytes(final byte[] bytes, final int length) {
+    ensureCapacity(length);
+    System.arraycopy(bytes, 0, this.buffer, this.size, length);
+    this.size += length;
+  }
+
+  /**
+   * Write the escaped measurement and tags of a Point, through the series key cache if present.
+   */
+  void writeSeriesKey(final String measurement, final Map<String, String> tags) {
+    if (this.seriesKeyCache != null) {
+      this.seriesKeyCache.writeSeriesKey(measurement, tags, this);
+    } else {
+      writeSeriesKeyUncached(measurement, tags);
+    }
+  }
+
+  /**
+   * Write the escaped measurement and the sorted tag keys and values of a CompactPoint, through the
+   * series key cache if present.
+   */
+  void writeSeriesKey(final String measurement, final String[] tagKeys, final String[] tagValues) {
+    if (this.seriesKeyCache != null) {
+      this.seriesKeyCache.writeSeriesKey(measurement, tagKeys, tagValues, this);
+    } else {
+      writeSeriesKeyUncached(measurement, tagKeys, tagValues);
+    }
+  }
+
+  void writeSeriesKeyUncached(final String measurement, final Map<String, String> tags) {
+    writeKey(measurement);
+    for (Entry<String, String> tag : tags.entrySet()) {
+      writeByte(',');
+      writeKey(tag.getKey());
+      writeByte('=');
+      writeKey(tag.getValue());
+    }
+  }
+
+  void writeSeriesKeyUncached(final String measurement, final String[] tagKeys, final String[] tagValues) {
+    writeKey(measurement);
+    for (int i = 0; i < tagKeys.length; i++) {
+      writeByte(',');
+      writeKey(tagKeys[i]);
+      writeByte('=');
+      writeKey(tagValues[i]);
+    }
+  }
+
+  /**
+   * Write a measurement name, tag key, tag value or field key, escaping spaces, commas and equals
+   * signs.
+   */
+  void writeKey(final String key) {
+    writeUtf8(key, ESCAPE_KEY);
+  }
+
+  /**
+   * Write a quoted string field value, escaping double quotes.
+   */
+  void writeFieldString(final String value) {
+    writeByte('"');
+    writeUtf8(value, ESCAPE_FIELD);
+    writeByte('"');
+  }
+
+  /**
+   * Write a field value the same way Point has always formatted it.
+   */
+  void writeFieldValue(final Object value, final boolean useInteger) {
+    if (value instanceof String) {
+      writeFieldString((String) value);
+    } else if (useInteger && (value instanceof Integer || value instanceof Long)) {
+      writeLong(((Number) value).longValue());
+      writeByte('i');
+    } else if (useInteger && value instanceof BigInteger) {
+      writeUtf8(value.toString(), ESCAPE_NONE);
+      writeByte('i');
+    } else if (value instanceof Number) {
+      writeNumber((Number) value);
+    } else if (value instanceof Boolean) {
+      writeBoolean((Boolean) value);
+    } else {
+      writeUtf8(String.valueOf(value), ESCAPE_NONE);
+    }
+  }
+
+  void writeBoolean(final boolean value) {
+    writeBytes(value ? TRUE : FALSE);
+  }
+
+  /**
+   * Write a Number as a float field value, with at least one fraction digit in plain notation.
+   */
+  void writeNumber(final Number value) {
+    if (value instanceof Double) {
+      writeDouble(value.doubleValue());
+    } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte
+            || value instanceof AtomicInteger || value instanceof AtomicLong) {
+      writeLong(value.longValue());
+      writeByte('.');
+      writeByte('0');
+    } else if (value instanceof Float) {
+      writeFloat(value.floatValue());
+    } else if (value instanceof BigDecimal) {
+      BigDecimal decimal = (BigDecimal) value;
+      if (decimal.signum() == 0) {
+        writeDouble(0.0d);
+        return;
+      }
+      String plain = decimal.stripTrailingZeros().toPlainString();
+      writeUtf8(plain, ESCAPE_NONE);
+      if (plain.indexOf('.') < 0) {
+        writeByte('.');
+        writeByte('0');
+      }
+    } else if (value instanceof BigInteger) {
+      writeUtf8(value.toString(), ESCAPE_NONE);
+      writeByte('.');
+      writeByte('0');
+    } else {
+      writeDouble(value.doubleValue());
+    }
+  }
+
+  /**
+   * Write the shortest representation of a double that parses back to the same value.
+   */
+  void writeDouble(final double value) {
+    ensureCapacity(NumberFormatter.MAX_LENGTH);
+    this.size = NumberFormatter.writeDouble(value, this.buffer, this.size);
+  }
+
+  /**
+   * Write the shortest representation of a float that parses back to the same value.
+   */
+  void writeFloat(final float value) {
+    ensureCapacity(NumberFormatter.MAX_LENGTH);
+    this.size = NumberFormatter.writeFloat(value, this.buffer, this.size);
+  }
+
+  /**
+   * Write a timestamp in the precision of this encoder.
+   */
+  void writeTime(final long time, final TimeUnit unit) {
+    writeLong(this.precision.convert(time, unit));
+  }
+
+  /**
+   * Write the decimal digits of a long.
+   */
+  void writeLong(final long value) {
+    ensureCapacity(NumberFormatter.MAX_LENGTH);
+    this.size = NumberFormatter.writeLong(value, this.buffer, this.size);
+  }
+
+  private void writeUtf8(final CharSequence s, final int escape) {
+    final int length = s.length();
+    // escaped ASCII takes 2 bytes, BMP chars at most 3, surrogate pairs 4 for 2 chars
+    ensureCapacity(length * 3);
+    final byte[] buf = this.buffer;
+    int pos = this.size;
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        if ((escape == ESCAPE_KEY && (c == ' ' || c == ',' || c == '='))
+                || (escape == ESCAPE_FIELD && c == '"')) {
+          buf[pos++] = '\\';
+        }
+        buf[pos++] = (byte) c;
+      } else if (c < 0x800) {
+        buf[pos++] = (byte) (0xc0 | (c >> 6));
+        buf[pos++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+          int codePoint = Character.toCodePoint(c, s.charAt(++i));
+          buf[pos++] = (byte) (0xf0 | (codePoint >> 18));
+          buf[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+          buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+          buf[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+        } else {
+          // unpaired surrogate, replaced the same way String.getBytes(UTF_8) does
+          buf[pos++] = '?';
+        }
+      } else {
+        buf[pos++] = (byte) (0xe0 | (c >> 12));
+        buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        buf[pos++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    this.size = pos;
+  }
+
+  private void ensureCapacity(final int additional) {
+    if (this.size + additional > this.buffer.length) {
+      grow(this.size + additional);
+    }
+  }
+
+  private void grow(final int minCapacity) {
+    int newCapacity = Math.max(this.buffer.length << 1, minCapacity);
+    if (newCapacity < 0) {
+      // overflow
+      newCapacity = Integer.MAX_VALUE - 8;
+    }
+    this.buffer = Arrays.copyOf(this.buffer, newCapacity);
+  }
+
+}
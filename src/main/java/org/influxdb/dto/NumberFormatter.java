@@ -0,0 +1,451 @@
+package org.influxdb.dto;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Formats field values as line protocol numbers straight into a byte array.
+ *
+ * Doubles and floats are written with the shortest decimal that rounds back to the same binary
+ * value, using the Schubfach algorithm by Raffaello Giulietti. Values from 1e-6 up to 1e21 are
+ * written in plain notation with at least one fraction digit, others in scientific notation
+ * ({@code 1.5e-7}, {@code 2e21}). Longs are written without boxing or intermediate Strings.
+ *
+ * Callers must make sure that {@link #MAX_LENGTH} bytes are available at the write position.
+ *
+ */
+public enum NumberFormatter {
+  ;
+
+  /**
+   * The maximum number of bytes written by any of the write methods.
+   */
+  public static final int MAX_LENGTH = 32;
+
+  private static final int DOUBLE_P = 53;
+  private static final int DOUBLE_Q_MIN = -1074;
+  private static final long DOUBLE_C_MIN = 1L << (DOUBLE_P - 1);
+  private static final int DOUBLE_C_TINY = 3;
+
+  private static final int FLOAT_P = 24;
+  private static final int FLOAT_Q_MIN = -149;
+  private static final int FLOAT_C_MIN = 1 << (FLOAT_P - 1);
+  private static final int FLOAT_C_TINY = 8;
+
+  // range of decimal exponents k needed by doubles, floats only need a subset
+  private static final int K_MIN = -324;
+  private static final int K_MAX = 292;
+
+  private static final long MASK_63 = 0x7fffffffffffffffL;
+  private static final long MASK_32 = 0xffffffffL;
+
+  // plain notation is used for 1e-6 <= |v| < 1e21
+  private static final int PLAIN_EXP10_MIN = -5;
+  private static final int PLAIN_EXP10_MAX = 21;
+
+  private static final byte[] NAN = "NaN".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] INFINITY = "Infinity".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] LONG_MIN_VALUE = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+  private static final long[] POW10 = new long[19];
+
+  /**
+   * For each k in [K_MIN, K_MAX], the 126 bit approximation g = floor(10^-k 2^-r) + 1 with r
+   * chosen such that 2^125 <= floor(10^-k 2^-r) < 2^126, split as g1 = g >> 63 at index 2i and
+   * g0 = g mod 2^63 at index 2i+1.
+   */
+  private static final long[] G = new long[2 * (K_MAX - K_MIN + 1)];
+
+  static {
+    POW10[0] = 1;
+    for (int i = 1; i < POW10.length; i++) {
+      POW10[i] = POW10[i - 1] * 10;
+    }
+    BigInteger mask63 = BigInteger.valueOf(MASK_63);
+    for (int k = K_MIN; k <= K_MAX; k++) {
+      int e = -k;
+      int shift = 125 - flog2pow10(e);
+      BigInteger beta;
+      if (e >= 0) {
+        BigInteger pow = BigInteger.TEN.pow(e);
+        beta = shift >= 0 ? pow.shiftLeft(shift) : pow.shiftRight(-shift);
+      } else {
+        beta = BigInteger.ONE.shiftLeft(shift).divide(BigInteger.TEN.pow(-e));
+      }
+      BigInteger g = beta.add(BigInteger.ONE);
+      int i = 2 * (k - K_MIN);
+      G[i] = g.shiftRight(63).longValue();
+      G[i + 1] = g.and(mask63).longValue();
+    }
+  }
+
+  /**
+   * Write the shortest decimal representation of a double.
+   *
+   * @param v the value
+   * @param buf the destination
+   * @param pos the position to start writing at
+   * @return the position after the last byte written
+   */
+  public static int writeDouble(final double v, final byte[] buf, final int pos) {
+    long bits = Double.doubleToRawLongBits(v);
+    long t = bits & (DOUBLE_C_MIN - 1);
+    int bq = (int) (bits >>> (DOUBLE_P - 1)) & 0x7ff;
+    if (bq == 0x7ff) {
+      return writeNonFinite(t != 0, bits < 0, buf, pos);
+    }
+    int p = pos;
+    if (bits < 0) {
+      buf[p++] = '-';
+    }
+    if (bq != 0) {
+      int mq = -DOUBLE_Q_MIN + 1 - bq;
+      long c = DOUBLE_C_MIN | t;
+      if (0 < mq && mq < DOUBLE_P) {
+        long f = c >> mq;
+        if (f << mq == c) {
+          // integers below 2^53 are written exactly
+          return writeDecimal(f, 0, buf, p);
+        }
+      }
+      return doubleToDecimal(-mq, c, 0, buf, p);
+    }
+    if (t != 0) {
+      // subnormal
+      return t < DOUBLE_C_TINY
+              ? doubleToDecimal(DOUBLE_Q_MIN, 10 * t, -1, buf, p)
+              : doubleToDecimal(DOUBLE_Q_MIN, t, 0, buf, p);
+    }
+    return writeZero(buf, p);
+  }
+
+  /**
+   * Write the shortest decimal representation of a float.
+   *
+   * @param v the value
+   * @param buf the destination
+   * @param pos the position to start writing at
+   * @return the position after the last byte written
+   */
+  public static int writeFloat(final float v, final byte[] buf, final int pos) {
+    int bits = Float.floatToRawIntBits(v);
+    int t = bits & (FLOAT_C_MIN - 1);
+    int bq = (bits >>> (FLOAT_P - 1)) & 0xff;
+    if (bq == 0xff) {
+      return writeNonFinite(t != 0, bits < 0, buf, pos);
+    }
+    int p = pos;
+    if (bits < 0) {
+      buf[p++] = '-';
+    }
+    if (bq != 0) {
+      int mq = -FLOAT_Q_MIN + 1 - bq;
+      int c = FLOAT_C_MIN | t;
+      if (0 < mq && mq < FLOAT_P) {
+        int f = c >> mq;
+        if (f << mq == c) {
+          return writeDecimal(f, 0, buf, p);
+        }
+      }
+      return floatToDecimal(-mq, c, 0, buf, p);
+    }
+    if (t != 0) {
+      return t < FLOAT_C_TINY
+              ? floatToDecimal(FLOAT_Q_MIN, 10 * t, -1, buf, p)
+              : floatToDecimal(FLOAT_Q_MIN, t, 0, buf, p);
+    }
+    return writeZero(buf, p);
+  }
+
+  /**
+   * Write the decimal digits of a long.
+   *
+   * @param v the value
+   * @param buf the destination
+   * @param pos the position to start writing at
+   * @return the position after the last byte written
+   */
+  public static int writeLong(final long v, final byte[] buf, final int pos) {
+    if (v == Long.MIN_VALUE) {
+      System.arraycopy(LONG_MIN_VALUE, 0, buf, pos, LONG_MIN_VALUE.length);
+      return pos + LONG_MIN_VALUE.length;
+    }
+    int p = pos;
+    long u = v;
+    if (u < 0) {
+      buf[p++] = '-';
+      u = -u;
+    }
+    int len = decimalLength(u);
+    writeDigits(u, buf, p, len);
+    return p + len;
+  }
+
+  /**
+   * @param v the value
+   * @return the shortest decimal representation of a double as written by writeDouble.
+   */
+  public static String toString(final double v) {
+    byte[] buf = new byte[MAX_LENGTH];
+    return new String(buf, 0, writeDouble(v, buf, 0), StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * @param v the value
+   * @return the shortest decimal representation of a float as written by writeFloat.
+   */
+  public static String toString(final float v) {
+    byte[] buf = new byte[MAX_LENGTH];
+    return new String(buf, 0, writeFloat(v, buf, 0), StandardCharsets.US_ASCII);
+  }
+
+  private static int doubleToDecimal(final int q, final long c, final int dk, final byte[] buf, final int pos) {
+    int out = (int) c & 0x1;
+    long cb = c << 2;
+    long cbr = cb + 2;
+    long cbl;
+    int k;
+    if (c != DOUBLE_C_MIN || q == DOUBLE_Q_MIN) {
+      cbl = cb - 2;
+      k = flog10pow2(q);
+    } else {
+      // the rounding interval is asymmetric at powers of two
+      cbl = cb - 1;
+      k = flog10threeQuartersPow2(q);
+    }
+    int h = q + flog2pow10(-k) + 2;
+    int i = 2 * (k - K_MIN);
+    long g1 = G[i];
+    long g0 = G[i + 1];
+    long vb = rop(g1, g0, cb << h);
+    long vbl = rop(g1, g0, cbl << h);
+    long vbr = rop(g1, g0, cbr << h);
+
+    long s = vb >> 2;
+    if (s >= 100) {
+      // try one digit less first: sp10 = 10 floor(s / 10)
+      long sp10 = 10 * multiplyHigh(s, 115_292_150_460_684_698L << 4);
+      long tp10 = sp10 + 10;
+      boolean upin = vbl + out <= sp10 << 2;
+      boolean wpin = (tp10 << 2) + out <= vbr;
+      if (upin != wpin) {
+        return writeDecimal(upin ? sp10 : tp10, k, buf, pos);
+      }
+    }
+    long t = s + 1;
+    boolean uin = vbl + out <= s << 2;
+    boolean win = (t << 2) + out <= vbr;
+    if (uin != win) {
+      return writeDecimal(uin ? s : t, k + dk, buf, pos);
+    }
+    // both candidates round trip, pick the closest one and the even one on ties
+    long cmp = vb - ((s + t) << 1);
+    return writeDecimal(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk, buf, pos);
+  }
+
+  private static int floatToDecimal(final int q, final int c, final int dk, final byte[] buf, final int pos) {
+    int out = c & 0x1;
+    long cb = c << 2;
+    long cbr = cb + 2;
+    long cbl;
+    int k;
+    if (c != FLOAT_C_MIN || q == FLOAT_Q_MIN) {
+      cbl = cb - 2;
+      k = flog10pow2(q);
+    } else {
+      cbl = cb - 1;
+      k = flog10threeQuartersPow2(q);
+    }
+    int h = q + flog2pow10(-k) + 33;
+    long g = G[2 * (k - K_MIN)] + 1;
+    int vb = rop(g, cb << h);
+    int vbl = rop(g, cbl << h);
+    int vbr = rop(g, cbr << h);
+
+    int s = vb >> 2;
+    if (s >= 100) {
+      int sp10 = 10 * (int) (s * 1_717_986_919L >>> 34);
+      int tp10 = sp10 + 10;
+      boolean upin = vbl + out <= sp10 << 2;
+      boolean wpin = (tp10 << 2) + out <= vbr;
+      if (upin != wpin) {
+        return writeDecimal(upin ? sp10 : tp10, k, buf, pos);
+      }
+    }
+    int t = s + 1;
+    boolean uin = vbl + out <= s << 2;
+    boolean win = (t << 2) + out <= vbr;
+    if (uin != win) {
+      return writeDecimal(uin ? s : t, k + dk, buf, pos);
+    }
+    int cmp = vb - ((s + t) << 1);
+    return writeDecimal(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk, buf, pos);
+  }
+
+  /**
+   * Round to odd of g cp 2^-127, where g = g1 2^63 + g0.
+   */
+  private static long rop(final long g1, final long g0, final long cp) {
+    long x1 = multiplyHigh(g0, cp);
+    long y0 = g1 * cp;
+    long y1 = multiplyHigh(g1, cp);
+    long z = (y0 >>> 1) + x1;
+    long vbp = y1 + (z >>> 63);
+    return vbp | ((z & MASK_63) + MASK_63) >>> 63;
+  }
+
+  /**
+   * Round to odd of g cp 2^-95.
+   */
+  private static int rop(final long g, final long cp) {
+    long x1 = multiplyHigh(g, cp);
+    long vbp = x1 >>> 31;
+    return (int) (vbp | ((x1 & MASK_32) + MASK_32) >>> 32);
+  }
+
+  /**
+   * Write f 10^e, f > 0, in plain or scientific notation.
+   */
+  private static int writeDecimal(final long significand, final int exponent, final byte[] buf, final int pos) {
+    long f = significand;
+    int e = exponent;
+    while (f % 10 == 0) {
+      f /= 10;
+      e++;
+    }
+    int len = decimalLength(f);
+    // f 10^e = 0.d1d2...dlen 10^exp10
+    int exp10 = e + len;
+    int p = pos;
+    if (exp10 > 0 && exp10 <= PLAIN_EXP10_MAX) {
+      writeDigits(f, buf, p, len);
+      if (len <= exp10) {
+        p += len;
+        for (int i = len; i < exp10; i++) {
+          buf[p++] = '0';
+        }
+        buf[p++] = '.';
+        buf[p++] = '0';
+        return p;
+      }
+      System.arraycopy(buf, p + exp10, buf, p + exp10 + 1, len - exp10);
+      buf[p + exp10] = '.';
+      return p + len + 1;
+    }
+    if (exp10 <= 0 && exp10 >= PLAIN_EXP10_MIN) {
+      buf[p++] = '0';
+      buf[p++] = '.';
+      for (int i = exp10; i < 0; i++) {
+        buf[p++] = '0';
+      }
+      writeDigits(f, buf, p, len);
+      return p + len;
+    }
+    writeDigits(f, buf, p + 1, len);
+    buf[p] = buf[p + 1];
+    if (len > 1) {
+      buf[p + 1] = '.';
+      p += len + 1;
+    } else {
+      p++;
+    }
+    buf[p++] = 'e';
+    int sciExp = exp10 - 1;
+    if (sciExp < 0) {
+      buf[p++] = '-';
+      sciExp = -sciExp;
+    }
+    int expLen = decimalLength(sciExp);
+    writeDigits(sciExp, buf, p, expLen);
+    return p + expLen;
+  }
+
+  private static int writeZero(final byte[] buf, final int pos) {
+    buf[pos] = '0';
+    buf[pos + 1] = '.';
+    buf[pos + 2] = '0';
+    return pos + 3;
+  }
+
+  private static int writeNonFinite(final boolean nan, final boolean negative, final byte[] buf, final int pos) {
+    int p = pos;
+    if (nan) {
+      System.arraycopy(NAN, 0, buf, p, NAN.length);
+      return p + NAN.length;
+    }
+    if (negative) {
+      buf[p++] = '-';
+    }
+    System.arraycopy(INFINITY, 0, buf, p, INFINITY.length);
+    return p + INFINITY.length;
+  }
+
+  /**
+   * Write the len decimal digits of v >= 0 starting at pos.
+   */
+  private static void writeDigits(final long v, final byte[] buf, final int pos, final int len) {
+    long u = v;
+    int p = pos + len;
+    while (u >= 100) {
+      long q = u / 100;
+      int r = (int) (u - q * 100);
+      buf[--p] = (byte) ('0' + r % 10);
+      buf[--p] = (byte) ('0' + r / 10);
+      u = q;
+    }
+    if (u >= 10) {
+      buf[--p] = (byte) ('0' + (int) (u % 10));
+      u /= 10;
+    }
+    buf[--p] = (byte) ('0' + (int) u);
+  }
+
+  /**
+   * @return the number of decimal digits of v >= 0
+   */
+  static int decimalLength(final long v) {
+    int len = 1;
+    while (len < POW10.length && v >= POW10[len]) {
+      len++;
+    }
+    return len;
+  }
+
+  /**
+   * @return floor(log10(2^e))
+   */
+  private static int flog10pow2(final int e) {
+    return (int) (e * 661_971_961_083L >> 41);
+  }
+
+  /**
+   * @return floor(log10(3/4 2^e))
+   */
+  private static int flog10threeQuartersPow2(final int e) {
+    return (int) ((e * 661_971_961_083L + -274_743_187_321L) >> 41);
+  }
+
+  /**
+   * @return floor(log2(10^e))
+   */
+  private static int flog2pow10(final int e) {
+    return (int) (e * 913_124_641_741L >> 38);
+  }
+
+  /**
+   * @return the high 64 bits of the signed 128 bit product of x and y
+   */
+  private static long multiplyHigh(final long x, final long y) {
+    long x1 = x >> 32;
+    long x2 = x & MASK_32;
+    long y1 = y >> 32;
+    long y2 = y & MASK_32;
+    long z2 = x2 * y2;
+    long t = x1 * y2 + (z2 >>> 32);
+    long z1 = t & MASK_32;
+    long z0 = t >> 32;
+    z1 += x2 * y1;
+    return x1 * y1 + z0 + (z1 >> 32);
+  }
+
+}
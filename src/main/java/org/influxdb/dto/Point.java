@@ -4,11 +4,6 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
-import com.google.common.escape.Escaper;
-import com.google.common.escape.Escapers;
-import java.math.BigInteger;
-import java.text.NumberFormat;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.TimeUnit;
@@ -21,6 +16,10 @@ import java.util.concurrent.TimeUnit;
  */
 public class Point {
 
+  // estimated sizes of a formatted number and of the time with its separators
+  static final int NUMBER_SIZE = 24;
+  static final int TIME_SIZE = 21;
+
   private String measurement;
   private Map<String, String> tags;
   private Long time;
@@ -29,9 +28,6 @@ public class Point {
 
   private boolean useInteger = false;
 
-  private static final Escaper FIELD_ESCAPER = Escapers.builder().addEscape('"', "\\\"").build();
-  private static final Escaper KEY_ESCAPER = Escapers.builder().addEscape(' ', "\\ ").addEscape(',', "\\,").addEscape('=', "\\=").build();
-
   Point() {
   }
 
@@ -195,6 +191,13 @@ public class Point {
     return this.tags;
   }
 
+  /**
+   * @param tagsToAdd the tags to add to the tags of this Point
+   */
+  void addTags(final Map<String, String> tagsToAdd) {
+    this.tags.putAll(tagsToAdd);
+  }
+
   /**
    * @param precision the precision to set
    */
@@ -248,34 +251,39 @@ public class Point {
    * @return the String without newLine.
    */
   public String lineProtocol() {
-    final StringBuilder sb = new StringBuilder();
-    sb.append(KEY_ESCAPER.escape(this.measurement));
-    sb.append(concatenatedTags());
-    sb.append(concatenateFields());
-    sb.append(formatedTime());
-    return sb.toString();
+    return new LineProtocolEncoder(64).encode(this).toString();
   }
 
-  private StringBuilder concatenatedTags() {
-    final StringBuilder sb = new StringBuilder();
+  /**
+   * Estimate the size of the lineprotocol entry of this Point without encoding it, for memory
+   * accounting. Names and strings are counted in chars, numbers with {@link #NUMBER_SIZE} bytes.
+   *
+   * @return the estimated size in bytes, including the newLine.
+   */
+  public int estimatedSize() {
+    int size = this.measurement.length() + TIME_SIZE;
     for (Entry<String, String> tag : this.tags.entrySet()) {
-      sb.append(",");
-      sb.append(KEY_ESCAPER.escape(tag.getKey())).append("=").append(KEY_ESCAPER.escape(tag.getValue()));
+      size += tag.getKey().length() + tag.getValue().length() + 2;
+    }
+    for (Entry<String, Object> field : this.fields.entrySet()) {
+      Object value = field.getValue();
+      size += field.getKey().length() + 2;
+      size += value instanceof String ? ((String) value).length() + 2 : NUMBER_SIZE;
     }
-    sb.append(" ");
-    return sb;
+    return size;
   }
 
-  private StringBuilder concatenateFields() {
-    final StringBuilder sb = new StringBuilder();
+  /**
+   * Write the lineprotocol entry of this Point, without newLine, to the encoder.
+   *
+   * @param encoder the encoder to write to.
+   */
+  void encode(final LineProtocolEncoder encoder) {
+    encoder.writeSeriesKey(this.measurement, this.tags);
+    encoder.writeByte(' ');
+
     final int fieldCount = this.fields.size();
     int loops = 0;
-
-    NumberFormat numberFormat = NumberFormat.getInstance(Locale.ENGLISH);
-    numberFormat.setMaximumFractionDigits(340);
-    numberFormat.setGroupingUsed(false);
-    numberFormat.setMinimumFractionDigits(1);
-
     for (Entry<String, Object> field : this.fields.entrySet()) {
       loops++;
       Object value = field.getValue();
@@ -283,33 +291,20 @@ public class Point {
         continue;
       }
 
-      sb.append(KEY_ESCAPER.escape(field.getKey())).append("=");
-      if (value instanceof String) {
-        String stringValue = (String) value;
-        sb.append("\"").append(FIELD_ESCAPER.escape(stringValue)).append("\"");
-      } else if (useInteger && (value instanceof Integer || value instanceof BigInteger || value instanceof Long)) {
-        sb.append(value).append("i");
-      } else if (value instanceof Number) {
-        sb.append(numberFormat.format(value));
-      } else {
-        sb.append(value);
-      }
+      encoder.writeKey(field.getKey());
+      encoder.writeByte('=');
+      encoder.writeFieldValue(value, this.useInteger);
 
       if (loops < fieldCount) {
-        sb.append(",");
+        encoder.writeByte(',');
       }
     }
 
-    return sb;
-  }
-
-  private StringBuilder formatedTime() {
-    final StringBuilder sb = new StringBuilder();
     if (null == this.time) {
       this.time = System.nanoTime();
     }
-    sb.append(" ").append(TimeUnit.NANOSECONDS.convert(this.time, this.precision));
-    return sb;
+    encoder.writeByte(' ');
+    encoder.writeTime(this.time, this.precision);
   }
 
 }
@@ -0,0 +1,302 @@
+package org.influxdb.dto;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed measurement, tag and field layout compiled once into escaped name fragments.
+ *
+ * Points of a schema are encoded by copying the precomputed {@code measurement}, {@code ,tagk=}
+ * and {@code fieldk=} fragments and escaping only the tag values and formatting the numbers, into
+ * an encoded Point that can be written with any driver. Tag values and field values are given in
+ * the order the names were declared, the output is sorted like a Point built with the same tags
+ * and fields. Schemas are immutable and thread safe.
+ *
+ * <pre>
+ * PointSchema schema = PointSchema.measurement("cpu")
+ *         .tags("host", "region")
+ *         .fields("user", "system", "idle")
+ *         .build();
+ *
+ * Point point = schema.point(new String[]{"server01", "us-west"}, new double[]{0.5, 0.2, 0.3}, time);
+ * </pre>
+ *
+ */
+public class PointSchema {
+
+  private static final ThreadLocal<LineProtocolEncoder> ENCODERS = new ThreadLocal<LineProtocolEncoder>() {
+    @Override
+    protected LineProtocolEncoder initialValue() {
+      return new LineProtocolEncoder(256);
+    }
+  };
+
+  private final byte[] measurement;
+  // ",tagk=" fragments and the index of the tag value given by callers, in tag key order
+  private final byte[][] tagPrefixes;
+  private final int[] tagIndexes;
+  // "fieldk=" fragments, the first one prefixed with a space and the others with a comma
+  private final byte[][] fieldPrefixes;
+  private final boolean[] fieldIsInteger;
+  private final int[] fieldIndexes;
+  private final int floatFieldCount;
+  private final int integerFieldCount;
+  private final TimeUnit precision;
+
+  PointSchema(final Builder builder) {
+    LineProtocolEncoder encoder = new LineProtocolEncoder(64);
+    encoder.writeKey(builder.measurement);
+    this.measurement = encoder.toByteArray();
+
+    String[] tagNames = builder.tags.toArray(new String[builder.tags.size()]);
+    Integer[] tagOrder = sortedOrder(tagNames);
+    this.tagPrefixes = new byte[tagNames.length][];
+    this.tagIndexes = new int[tagNames.length];
+    for (int i = 0; i < tagOrder.length; i++) {
+      int index = tagOrder[i];
+      encoder.reset().writeByte(',');
+      encoder.writeKey(tagNames[index]);
+      encoder.writeByte('=');
+      this.tagPrefixes[i] = encoder.toByteArray();
+      this.tagIndexes[i] = index;
+    }
+
+    this.floatFieldCount = builder.fields.size();
+    this.integerFieldCount = builder.integerFields.size();
+    String[] fieldNames = new String[this.floatFieldCount + this.integerFieldCount];
+    for (int i = 0; i < fieldNames.length; i++) {
+      fieldNames[i] = i < this.floatFieldCount ? builder.fields.get(i) : builder.integerFields.get(i - this.floatFieldCount);
+    }
+    Integer[] fieldOrder = sortedOrder(fieldNames);
+    this.fieldPrefixes = new byte[fieldNames.length][];
+    this.fieldIsInteger = new boolean[fieldNames.length];
+    this.fieldIndexes = new int[fieldNames.length];
+    for (int i = 0; i < fieldOrder.length; i++) {
+      int index = fieldOrder[i];
+      encoder.reset().writeByte(i == 0 ? ' ' : ',');
+      encoder.writeKey(fieldNames[index]);
+      encoder.writeByte('=');
+      this.fieldPrefixes[i] = encoder.toByteArray();
+      this.fieldIsInteger[i] = index >= this.floatFieldCount;
+      this.fieldIndexes[i] = this.fieldIsInteger[i] ? index - this.floatFieldCount : index;
+    }
+
+    this.precision = builder.precision;
+  }
+
+  private static Integer[] sortedOrder(final String[] names) {
+    Integer[] order = new Integer[names.length];
+    for (int i = 0; i < names.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(final Integer a, final Integer b) {
+        return names[a].compareTo(names[b]);
+      }
+    });
+    for (int i = 1; i < order.length; i++) {
+      Preconditions.checkArgument(!names[order[i - 1]].equals(names[order[i]]), "Duplicate name " + names[order[i]]);
+    }
+    return order;
+  }
+
+  /**
+   * Start the definition of a new PointSchema.
+   *
+   * @param measurement the name of the measurement.
+   * @return the Builder to be able to add further Builder calls.
+   */
+  public static Builder measurement(final String measurement) {
+    return new Builder(measurement);
+  }
+
+  /**
+   * Builder for a PointSchema.
+   */
+  public static final class Builder {
+
+    private final String measurement;
+    private final List<String> tags = Lists.newArrayList();
+    private final List<String> fields = Lists.newArrayList();
+    private final List<String> integerFields = Lists.newArrayList();
+    private TimeUnit precision = TimeUnit.NANOSECONDS;
+
+    /**
+     * @param measurement
+     */
+    Builder(final String measurement) {
+      this.measurement = measurement;
+    }
+
+    /**
+     * Add tag names, their values are given in this order.
+     *
+     * @param tagNames the tag names
+     * @return the Builder instance.
+     */
+    public Builder tags(final String... tagNames) {
+      for (String tagName : tagNames) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(tagName), "Tag name must not be null or empty.");
+        this.tags.add(tagName);
+      }
+      return this;
+    }
+
+    /**
+     * Add float field names, their values are given as doubles in this order.
+     *
+     * @param fieldNames the field names
+     * @return the Builder instance.
+     */
+    public Builder fields(final String... fieldNames) {
+      for (String fieldName : fieldNames) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(fieldName), "Field name must not be null or empty.");
+        this.fields.add(fieldName);
+      }
+      return this;
+    }
+
+    /**
+     * Add integer field names, their values are given as longs in this order.
+     *
+     * @param fieldNames the field names
+     * @return the Builder instance.
+     */
+    public Builder integerFields(final String... fieldNames) {
+      for (String fieldName : fieldNames) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(fieldName), "Field name must not be null or empty.");
+        this.integerFields.add(fieldName);
+      }
+      return this;
+    }
+
+    /**
+     * The precision of the times given for points of this schema, defaults to nanoseconds.
+     *
+     * @param precisionToSet
+     * @return the Builder instance.
+     */
+    public Builder precision(final TimeUnit precisionToSet) {
+      Preconditions.checkNotNull(precisionToSet, "Precision must be not null!");
+      this.precision = precisionToSet;
+      return this;
+    }
+
+    /**
+     * Compile the PointSchema.
+     *
+     * @return the newly created PointSchema.
+     */
+    public PointSchema build() {
+      Preconditions
+              .checkArgument(!Strings.isNullOrEmpty(this.measurement), "Point name must not be null or empty.");
+      Preconditions.checkArgument(this.fields.size() + this.integerFields.size() > 0,
+              "Point must have at least one field specified.");
+      return new PointSchema(this);
+    }
+  }
+
+  /**
+   * Encode a point of this schema with float fields only.
+   *
+   * @param tagValues the tag values in declaration order
+   * @param fieldValues the float field values in declaration order
+   * @param time the time in the precision of this schema
+   * @return the encoded Point
+   */
+  public Point point(final String[] tagValues, final double[] fieldValues, final long time) {
+    return point(tagValues, fieldValues, null, time);
+  }
+
+  /**
+   * Encode a point of this schema.
+   *
+   * @param tagValues the tag values in declaration order
+   * @param fieldValues the float field values in declaration order
+   * @param integerFieldValues the integer field values in declaration order
+   * @param time the time in the precision of this schema
+   * @return the encoded Point
+   */
+  public Point point(final String[] tagValues, final double[] fieldValues, final long[] integerFieldValues, final long time) {
+    LineProtocolEncoder encoder = ENCODERS.get().reset();
+    encode(encoder, tagValues, fieldValues, integerFieldValues, time);
+    return new EncodedPoint(encoder.toByteArray());
+  }
+
+  /**
+   * Write the line protocol entry of a point of this schema, without newLine, to the encoder.
+   *
+   * @param encoder the encoder to write to
+   * @param tagValues the tag values in declaration order
+   * @param fieldValues the float field values in declaration order
+   * @param integerFieldValues the integer field values in declaration order, may be null if the
+   * schema has no integer fields
+   * @param time the time in the precision of this schema
+   */
+  public void encode(final LineProtocolEncoder encoder, final String[] tagValues, final double[] fieldValues,
+          final long[] integerFieldValues, final long time) {
+    if (tagValues.length != this.tagIndexes.length) {
+      throw new IllegalArgumentException("Expected " + this.tagIndexes.length + " tag values");
+    }
+    if (fieldValues.length != this.floatFieldCount) {
+      throw new IllegalArgumentException("Expected " + this.floatFieldCount + " field values");
+    }
+    if (this.integerFieldCount > 0 && (integerFieldValues == null || integerFieldValues.length != this.integerFieldCount)) {
+      throw new IllegalArgumentException("Expected " + this.integerFieldCount + " integer field values");
+    }
+
+    encoder.writeBytes(this.measurement);
+    for (int i = 0; i < this.tagPrefixes.length; i++) {
+      String value = tagValues[this.tagIndexes[i]];
+      Preconditions.checkArgument(value != null);
+      encoder.writeBytes(this.tagPrefixes[i]);
+      encoder.writeKey(value);
+    }
+    for (int i = 0; i < this.fieldPrefixes.length; i++) {
+      encoder.writeBytes(this.fieldPrefixes[i]);
+      if (this.fieldIsInteger[i]) {
+        encoder.writeLong(integerFieldValues[this.fieldIndexes[i]]);
+        encoder.writeByte('i');
+      } else {
+        encoder.writeDouble(fieldValues[this.fieldIndexes[i]]);
+      }
+    }
+    encoder.writeByte(' ');
+    encoder.writeTime(time, this.precision);
+  }
+
+  /**
+   * @return the precision of the times given for points of this schema
+   */
+  public TimeUnit getPrecision() {
+    return this.precision;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("PointSchema [measurement=");
+    builder.append(new String(this.measurement, StandardCharsets.UTF_8));
+    builder.append(", tags=");
+    builder.append(this.tagIndexes.length);
+    builder.append(", fields=");
+    builder.append(this.floatFieldCount);
+    builder.append(", integerFields=");
+    builder.append(this.integerFieldCount);
+    builder.append(", precision=");
+    builder.append(this.precision);
+    builder.append("]");
+    return builder.toString();
+  }
+
+}
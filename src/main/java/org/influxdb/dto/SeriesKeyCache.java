@@ -0,0 +1,244 @@
+package org.influxdb.dto;
+
+import com.google.common.base.Preconditions;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded cache of escaped series keys, the {@code measurement,tagk=tagv,...} prefix of a line
+ * protocol entry, keyed by the measurement and its sorted tags.
+ *
+ * Hot series are written with a single copy of the cached bytes instead of escaping the
+ * measurement and every tag again. The cache is a fixed size table, a series whose slot is taken
+ * replaces the previous entry, so high cardinality workloads only cost misses and never memory.
+ * Lookups are lock free and the cache can be shared between threads and encoders.
+ *
+ */
+public class SeriesKeyCache {
+
+  public static final int DEFAULT_MAX_ENTRIES = 1 << 16;
+
+  private final AtomicReferenceArray<SeriesKey> table;
+  private final int mask;
+
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public SeriesKeyCache() {
+    this(DEFAULT_MAX_ENTRIES);
+  }
+
+  /**
+   * @param maxEntries the maximum number of cached series keys, rounded up to a power of two
+   */
+  public SeriesKeyCache(final int maxEntries) {
+    Preconditions.checkArgument(maxEntries > 0 && maxEntries <= 1 << 30, "maxEntries must be between 1 and 2^30");
+    int capacity = Integer.highestOneBit(maxEntries);
+    if (capacity < maxEntries) {
+      capacity <<= 1;
+    }
+    this.table = new AtomicReferenceArray<>(capacity);
+    this.mask = capacity - 1;
+  }
+
+  static final class SeriesKey {
+
+    private final int hash;
+    private final String measurement;
+    // tag keys and values, alternating, in tag key order
+    private final String[] tags;
+    private final byte[] escaped;
+
+    SeriesKey(final int hash, final String measurement, final String[] tags, final byte[] escaped) {
+      this.hash = hash;
+      this.measurement = measurement;
+      this.tags = tags;
+      this.escaped = escaped;
+    }
+
+    boolean matches(final int otherHash, final String otherMeasurement, final Map<String, String> otherTags) {
+      if (this.hash != otherHash || this.tags.length != otherTags.size() << 1
+              || !this.measurement.equals(otherMeasurement)) {
+        return false;
+      }
+      int i = 0;
+      for (Entry<String, String> tag : otherTags.entrySet()) {
+        if (!this.tags[i].equals(tag.getKey()) || !this.tags[i + 1].equals(tag.getValue())) {
+          return false;
+        }
+        i += 2;
+      }
+      return true;
+    }
+
+    boolean matches(final int otherHash, final String otherMeasurement, final String[] otherKeys, final String[] otherValues) {
+      if (this.hash != otherHash || this.tags.length != otherKeys.length << 1
+              || !this.measurement.equals(otherMeasurement)) {
+        return false;
+      }
+      for (int i = 0; i < otherKeys.length; i++) {
+        if (!this.tags[i << 1].equals(otherKeys[i]) || !this.tags[(i << 1) + 1].equals(otherValues[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Write the escaped series key of a measurement and its sorted tags to the encoder, from the
+   * cache if present.
+   */
+  void writeSeriesKey(final String measurement, final Map<String, String> tags, final LineProtocolEncoder encoder) {
+    int hash = hash(measurement, tags);
+    int index = hash & this.mask;
+    SeriesKey cached = this.table.get(index);
+    if (cached != null && cached.matches(hash, measurement, tags)) {
+      this.hits.incrementAndGet();
+      encoder.writeBytes(cached.escaped);
+      return;
+    }
+
+    this.misses.incrementAndGet();
+    int start = encoder.size();
+    encoder.writeSeriesKeyUncached(measurement, tags);
+    byte[] escaped = Arrays.copyOfRange(encoder.array(), start, encoder.size());
+
+    String[] tagArray = new String[tags.size() << 1];
+    int i = 0;
+    for (Entry<String, String> tag : tags.entrySet()) {
+      tagArray[i++] = tag.getKey();
+      tagArray[i++] = tag.getValue();
+    }
+    put(index, new SeriesKey(hash, measurement, tagArray, escaped));
+  }
+
+  /**
+   * Write the escaped series key of a measurement and its sorted tag keys and values to the
+   * encoder, from the cache if present.
+   */
+  void writeSeriesKey(final String measurement, final String[] tagKeys, final String[] tagValues,
+          final LineProtocolEncoder encoder) {
+    int hash = hash(measurement, tagKeys, tagValues);
+    int index = hash & this.mask;
+    SeriesKey cached = this.table.get(index);
+    if (cached != null && cached.matches(hash, measurement, tagKeys, tagValues)) {
+      this.hits.incrementAndGet();
+      encoder.writeBytes(cached.escaped);
+      return;
+    }
+
+    this.misses.incrementAndGet();
+    int start = encoder.size();
+    encoder.writeSeriesKeyUncached(measurement, tagKeys, tagValues);
+    byte[] escaped = Arrays.copyOfRange(encoder.array(), start, encoder.size());
+
+    String[] tagArray = new String[tagKeys.length << 1];
+    for (int i = 0; i < tagKeys.length; i++) {
+      tagArray[i << 1] = tagKeys[i];
+      tagArray[(i << 1) + 1] = tagValues[i];
+    }
+    put(index, new SeriesKey(hash, measurement, tagArray, escaped));
+  }
+
+  private void put(final int index, final SeriesKey seriesKey) {
+    SeriesKey previous = this.table.getAndSet(index, seriesKey);
+    if (previous == null) {
+      this.size.incrementAndGet();
+    } else {
+      this.evictions.incrementAndGet();
+    }
+  }
+
+  private static int hash(final String measurement, final Map<String, String> tags) {
+    int h = measurement.hashCode();
+    for (Entry<String, String> tag : tags.entrySet()) {
+      h = 31 * h + tag.getKey().hashCode();
+      h = 31 * h + tag.getValue().hashCode();
+    }
+    // spread the high bits to the ones used for the table index
+    return h ^ (h >>> 16);
+  }
+
+  private static int hash(final String measurement, final String[] tagKeys, final String[] tagValues) {
+    int h = measurement.hashCode();
+    for (int i = 0; i < tagKeys.length; i++) {
+      h = 31 * h + tagKeys[i].hashCode();
+      h = 31 * h + tagValues[i].hashCode();
+    }
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Remove all cached series keys. The statistics are kept.
+   */
+  public void clear() {
+    for (int i = 0; i < this.table.length(); i++) {
+      if (this.table.getAndSet(i, null) != null) {
+        this.size.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * @return the maximum number of cached series keys
+   */
+  public int getMaxEntries() {
+    return this.table.length();
+  }
+
+  /**
+   * @return the number of cached series keys
+   */
+  public int size() {
+    return this.size.get();
+  }
+
+  /**
+   * @return the number of series keys written from the cache
+   */
+  public long getHitCount() {
+    return this.hits.get();
+  }
+
+  /**
+   * @return the number of series keys that had to be escaped
+   */
+  public long getMissCount() {
+    return this.misses.get();
+  }
+
+  /**
+   * @return the number of cached series keys replaced by another series
+   */
+  public long getEvictionCount() {
+    return this.evictions.get();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("SeriesKeyCache [maxEntries=");
+    builder.append(getMaxEntries());
+    builder.append(", size=");
+    builder.append(size());
+    builder.append(", hits=");
+    builder.append(getHitCount());
+    builder.append(", misses=");
+    builder.append(getMissCount());
+    builder.append(", evictions=");
+    builder.append(getEvictionCount());
+    builder.append("]");
+    return builder.toString();
+  }
+
+}
@@ -0,0 +1,132 @@
+package com.koadweb.inflow;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.influxdb.InfluxDB;
+import org.influxdb.InfluxDBHTTPException;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Point;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import retrofit.RetrofitError;
+
+/**
+ * Test for the async writes and queries of AsyncDriverHTTP.
+ *
+ */
+public class AsyncDriverHTTPTest {
+
+  private FakeInfluxServer server;
+
+  @BeforeMethod
+  public void startServer() throws IOException {
+    this.server = new FakeInfluxServer();
+  }
+
+  @AfterMethod
+  public void stopServer() {
+    this.server.stop();
+  }
+
+  private AsyncDriverHTTP driver() {
+    return new AsyncDriverHTTP(this.server.getUrl(), "user", "password");
+  }
+
+  @Test
+  public void testWriteAsync() throws Exception {
+    AsyncDriverHTTP driver = driver();
+    BatchPoints batchPoints = BatchPoints.database("db").precision(TimeUnit.SECONDS)
+            .point(Point.measurement("cpu").field("value", 1).time(1, TimeUnit.SECONDS).build()).build();
+    driver.writeAsync(batchPoints).get(10, TimeUnit.SECONDS);
+    driver.writeAsync("db", new InfluxDB.RetentionPolicy("default"), InfluxDB.ConsistencyLevel.ONE,
+            Arrays.asList("cpu value=2 2", "cpu value=3 3")).get(10, TimeUnit.SECONDS);
+
+    assertThat(this.server.getWriteRequests()).hasSize(2);
+    assertThat(this.server.getWriteRequests().get(0)).contains("db=db").contains("precision=s").endsWith(" cpu value=1.0 1\n");
+    assertThat(this.server.getWriteRequests().get(1)).contains("rp=default").endsWith(" cpu value=2 2\ncpu value=3 3");
+    assertThat(driver.getStats().getRequestCount()).isEqualTo(2);
+    assertThat(driver.getInFlightCount()).isEqualTo(0);
+    driver.close(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testQueryAsync() throws Exception {
+    AsyncDriverHTTP driver = driver();
+    QueryResult result = driver.queryAsync(new Query("SHOW DATABASES", null)).get(10, TimeUnit.SECONDS);
+    assertThat(result.getResults().get(0).getSeries().get(0).getName()).isEqualTo("databases");
+    assertThat(this.server.getQueries().get(0)).contains("q=SHOW DATABASES").doesNotContain("db=");
+
+    driver.queryAsync(new Query("SELECT * FROM cpu", "db"), TimeUnit.MILLISECONDS).get(10, TimeUnit.SECONDS);
+    assertThat(this.server.getQueries().get(1)).contains("db=db").contains("epoch=ms");
+
+    this.server.answerQuery(400, "{\"error\":\"error parsing query\"}");
+    try {
+      driver.queryAsync(new Query("SHOW BROKEN", null)).get(10, TimeUnit.SECONDS);
+      fail("a 400 must fail the future");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isInstanceOf(InfluxDBHTTPException.class);
+      assertThat(((InfluxDBHTTPException) e.getCause()).getStatus()).isEqualTo(400);
+    }
+    driver.close(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testManyConcurrentQueriesOnFewThreads() throws Exception {
+    AsyncDriverHTTP driver = driver();
+    driver.setMaxRequests(4);
+    driver.setMaxRequestsPerHost(4);
+    List<ListenableFuture<QueryResult>> futures = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      futures.add(driver.queryAsync(new Query("SHOW DATABASES", null)));
+    }
+    for (ListenableFuture<QueryResult> future : futures) {
+      assertThat(future.get(30, TimeUnit.SECONDS).getResults()).hasSize(1);
+    }
+    assertThat(this.server.getQueries()).hasSize(200);
+    driver.close(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testFailedWritesAreNotCounted() throws Exception {
+    AsyncDriverHTTP driver = driver();
+    this.server.answerWrite(400, "{\"error\":\"field type conflict\"}");
+    try {
+      driver.writeAsync("db", new InfluxDB.RetentionPolicy("default"), InfluxDB.ConsistencyLevel.ONE, "cpu value=1 1")
+              .get(10, TimeUnit.SECONDS);
+      fail("a 400 must fail the future");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isInstanceOf(InfluxDBHTTPException.class);
+    }
+    assertThat(driver.getStats().getRequestCount()).isEqualTo(0);
+    driver.close(10, TimeUnit.SECONDS);
+
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    driver = new AsyncDriverHTTP("http://127.0.0.1:" + port, "user", "password");
+    try {
+      driver.writeAsync("db", new InfluxDB.RetentionPolicy("default"), InfluxDB.ConsistencyLevel.ONE, "cpu value=1 1")
+              .get(10, TimeUnit.SECONDS);
+      fail("a refused connection must fail the future");
+    } catch (ExecutionException e) {
+      // like the blocking write
+      assertThat(e.getCause()).isInstanceOf(RetrofitError.class);
+      assertThat(((RetrofitError) e.getCause()).getKind()).isEqualTo(RetrofitError.Kind.NETWORK);
+    }
+    assertThat(driver.getStats().getRequestCount()).isEqualTo(0);
+    driver.close(10, TimeUnit.SECONDS);
+  }
+
+}
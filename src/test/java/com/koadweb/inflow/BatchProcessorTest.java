@@ -0,0 +1,481 @@
+package com.koadweb.inflow;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Point;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.testng.annotations.Test;
+
+/**
+ * Test for the BatchProcessor.
+ *
+ */
+public class BatchProcessorTest {
+
+  /**
+   * Records the BatchPoints written by a BatchProcessor.
+   */
+  static class RecordingDriver implements DriverInterface {
+
+    final List<BatchPoints> written = Lists.newCopyOnWriteArrayList();
+
+    @Override
+    public void write(final String database, final InfluxDB.RetentionPolicy retentionPolicy, final InfluxDB.ConsistencyLevel consistency, final String records) {
+    }
+
+    @Override
+    public void write(final String database, final InfluxDB.RetentionPolicy retentionPolicy, final InfluxDB.ConsistencyLevel consistency, final List<String> records) {
+    }
+
+    @Override
+    public void write(final String database, final InfluxDB.RetentionPolicy retentionPolicy, final Point point) {
+    }
+
+    @Override
+    public void write(final BatchPoints batchPoints) {
+      this.written.add(batchPoints);
+    }
+
+    int pointCount() {
+      int count = 0;
+      for (BatchPoints batchPoints : this.written) {
+        count += batchPoints.getPoints().size();
+      }
+      return count;
+    }
+  }
+
+  static BatchProcessor.BatchEntry entry(final int value) {
+    Point point = Point.measurement("cpu").field("value", value).time(value, TimeUnit.SECONDS).build();
+    return new BatchProcessor.BatchEntry(point, "db", new InfluxDB.RetentionPolicy("default"));
+  }
+
+  static BatchProcessor.Builder builder(final DriverInterface driver) {
+    return BatchProcessor.builder(driver).actions(1000).interval(1, TimeUnit.HOURS);
+  }
+
+  @Test
+  public void testBatchPerRetentionPolicyConsistencyAndPrecision() throws InflowException {
+    RecordingDriver driver = new RecordingDriver();
+    BatchProcessor processor = builder(driver).build();
+    Point point = Point.measurement("cpu").field("value", 1).time(1500, TimeUnit.MILLISECONDS).build();
+    processor.put(new BatchProcessor.BatchEntry(point, "db", new InfluxDB.RetentionPolicy("raw")));
+    processor.put(new BatchProcessor.BatchEntry(point, "db", new InfluxDB.RetentionPolicy("downsampled")));
+    processor.put(new BatchProcessor.BatchEntry(point, "db", new InfluxDB.RetentionPolicy("raw"),
+            InfluxDB.ConsistencyLevel.ALL, TimeUnit.NANOSECONDS));
+    processor.put(new BatchProcessor.BatchEntry(point, "db", new InfluxDB.RetentionPolicy("raw"),
+            InfluxDB.ConsistencyLevel.ONE, TimeUnit.SECONDS));
+    processor.put(new BatchProcessor.BatchEntry(point, "db", new InfluxDB.RetentionPolicy("raw")));
+    processor.flush();
+
+    assertThat(driver.written).hasSize(4);
+    assertThat(driver.written.get(0).getRetentionPolicy().toString()).isEqualTo("raw");
+    assertThat(driver.written.get(0).getPoints()).hasSize(2);
+    assertThat(driver.written.get(1).getRetentionPolicy().toString()).isEqualTo("downsampled");
+    assertThat(driver.written.get(2).getConsistency()).isEqualTo(InfluxDB.ConsistencyLevel.ALL);
+    assertThat(driver.written.get(3).getPrecision()).isEqualTo(TimeUnit.SECONDS);
+    assertThat(driver.written.get(3).lineProtocol()).isEqualTo("cpu value=1.0 1\n");
+  }
+
+  @Test
+  public void testDropNewest() throws InflowException {
+    RecordingDriver driver = new RecordingDriver();
+    BatchProcessor processor = builder(driver).capacity(3).overflowPolicy(BatchProcessor.OverflowPolicy.DROP_NEWEST).build();
+    for (int i = 0; i < 5; i++) {
+      processor.put(entry(i));
+    }
+
+    assertThat(processor.getQueuedCount()).isEqualTo(3);
+    assertThat(processor.getDroppedCount()).isEqualTo(2);
+    processor.flush();
+    assertThat(driver.written.get(0).lineProtocol()).startsWith("cpu value=0.0 ");
+    assertThat(processor.getQueuedBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void testRingBufferQueue() throws Exception {
+    RecordingDriver driver = new RecordingDriver();
+    BatchProcessor processor = builder(driver).queueType(BatchProcessor.QueueType.RING_BUFFER).capacity(3)
+            .overflowPolicy(BatchProcessor.OverflowPolicy.DROP_NEWEST).build();
+    assertThat(processor.getCapacity()).isEqualTo(4);
+    for (int i = 0; i < 6; i++) {
+      processor.put(entry(i));
+    }
+
+    assertThat(processor.getQueuedCount()).isEqualTo(4);
+    assertThat(processor.getDroppedCount()).isEqualTo(2);
+    processor.flush();
+    assertThat(driver.pointCount()).isEqualTo(4);
+    assertThat(processor.getQueuedBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void testDropOldest() throws InflowException {
+    RecordingDriver driver = new RecordingDriver();
+    BatchProcessor processor = builder(driver).capacity(3).overflowPolicy(BatchProcessor.OverflowPolicy.DROP_OLDEST).build();
+    for (int i = 0; i < 5; i++) {
+      processor.put(entry(i));
+    }
+
+    assertThat(processor.getDroppedCount()).isEqualTo(2);
+    processor.flush();
+    assertThat(driver.pointCount()).isEqualTo(3);
+    assertThat(driver.written.get(0).lineProtocol()).startsWith("cpu value=2.0 ");
+  }
+
+  @Test
+  public void testCapacityBytes() throws InflowException {
+    RecordingDriver driver = new RecordingDriver();
+    int size = entry(0).getSize();
+    BatchProcessor processor = builder(driver).capacityBytes(2 * size).overflowPolicy(BatchProcessor.OverflowPolicy.DROP_NEWEST).build();
+    for (int i = 0; i < 5; i++) {
+      processor.put(entry(i));
+    }
+
+    assertThat(processor.getQueuedCount()).isEqualTo(2);
+    assertThat(processor.getQueuedBytes()).isEqualTo(2 * size);
+    assertThat(processor.getDroppedCount()).isEqualTo(3);
+    processor.flush();
+  }
+
+  @Test
+  public void testFail() throws InflowException {
+    BatchProcessor processor = builder(new RecordingDriver()).capacity(1).overflowPolicy(BatchProcessor.OverflowPolicy.FAIL).build();
+    processor.put(entry(0));
+    try {
+      processor.put(entry(1));
+      throw new AssertionError("put should fail when the queue is full");
+    } catch (InflowException ie) {
+      assertThat(processor.getDroppedCount()).isEqualTo(1);
+    }
+    processor.flush();
+  }
+
+  @Test
+  public void testBlockTimesOut() throws InflowException {
+    BatchProcessor processor = builder(new RecordingDriver()).capacity(1).blockTimeout(50, TimeUnit.MILLISECONDS).build();
+    processor.put(entry(0));
+    long start = System.nanoTime();
+    try {
+      processor.put(entry(1));
+      throw new AssertionError("put should fail after the block timeout");
+    } catch (InflowException ie) {
+      assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+      assertThat(processor.getDroppedCount()).isEqualTo(1);
+    }
+    processor.flush();
+  }
+
+  @Test
+  public void testBlockWaitsForSpace() throws Exception {
+    RecordingDriver driver = new RecordingDriver();
+    final BatchProcessor processor = builder(driver).capacity(1).blockTimeout(10, TimeUnit.SECONDS).build();
+    processor.put(entry(0));
+    Thread flusher = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(50);
+          processor.write();
+        } catch (InterruptedException | InflowException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    flusher.start();
+    processor.put(entry(1));
+    flusher.join();
+
+    assertThat(processor.getDroppedCount()).isEqualTo(0);
+    processor.flush();
+    assertThat(driver.pointCount()).isEqualTo(2);
+  }
+
+  static void awaitPointCount(final RecordingDriver driver, final int count) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (driver.pointCount() < count && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+    assertThat(driver.pointCount()).isEqualTo(count);
+  }
+
+  @Test
+  public void testWriteWhenActionsReached() throws Exception {
+    RecordingDriver driver = new RecordingDriver();
+    BatchProcessor processor = BatchProcessor.builder(driver).actions(2).interval(1, TimeUnit.HOURS).build();
+    processor.put(entry(0));
+    processor.put(entry(1));
+
+    awaitPointCount(driver, 2);
+    processor.flush();
+  }
+
+  @Test
+  public void testPutDoesNotWaitForWrites() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    RecordingDriver driver = new RecordingDriver() {
+      @Override
+      public void write(final BatchPoints batchPoints) {
+        try {
+          release.await();
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+        }
+        super.write(batchPoints);
+      }
+    };
+    BatchProcessor processor = BatchProcessor.builder(driver).actions(1).interval(1, TimeUnit.HOURS).build();
+    for (int i = 0; i < 10; i++) {
+      processor.put(entry(i));
+    }
+    assertThat(driver.pointCount()).isEqualTo(0);
+
+    release.countDown();
+    awaitPointCount(driver, 10);
+    processor.flush();
+  }
+
+  @Test
+  public void testFlushThreadsWriteConcurrently() throws Exception {
+    final CountDownLatch writing = new CountDownLatch(3);
+    RecordingDriver driver = new RecordingDriver() {
+      @Override
+      public void write(final BatchPoints batchPoints) {
+        writing.countDown();
+        try {
+          // returns once 3 writes are in flight at the same time
+          writing.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+        }
+        super.write(batchPoints);
+      }
+    };
+    BatchProcessor processor = BatchProcessor.builder(driver).actions(1).flushThreads(3).interval(1, TimeUnit.HOURS).build();
+    for (int i = 0; i < 3; i++) {
+      processor.put(entry(i));
+    }
+
+    assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+    awaitPointCount(driver, 3);
+    processor.flush();
+  }
+
+  @Test
+  public void testFlushBytesTriggersAndSplits() throws Exception {
+    RecordingDriver driver = new RecordingDriver();
+    int size = entry(0).getSize();
+    BatchProcessor processor = builder(driver).flushBytes(3 * size).build();
+    processor.put(entry(0));
+    processor.put(entry(1));
+    assertThat(driver.pointCount()).isEqualTo(0);
+    processor.put(entry(2));
+
+    awaitPointCount(driver, 3);
+    for (int i = 3; i < 10; i++) {
+      processor.put(entry(i));
+    }
+    processor.flush();
+    assertThat(driver.pointCount()).isEqualTo(10);
+    for (BatchPoints batchPoints : driver.written) {
+      assertThat(batchPoints.getPoints().size()).isLessThanOrEqualTo(3);
+    }
+  }
+
+  @Test
+  public void testMaxAgeTriggersFlush() throws Exception {
+    RecordingDriver driver = new RecordingDriver();
+    BatchProcessor processor = builder(driver).maxAge(20, TimeUnit.MILLISECONDS).build();
+    long start = System.nanoTime();
+    processor.put(entry(0));
+
+    awaitPointCount(driver, 1);
+    assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+    processor.flush();
+  }
+
+  @Test
+  public void testMaxInFlightSendsOnSenderPool() throws Exception {
+    RecordingDriver driver = new RecordingDriver();
+    BatchProcessor processor = BatchProcessor.builder(driver).actions(2).interval(1, TimeUnit.HOURS)
+            .maxInFlight(4).orderedPerDatabase(true).build();
+    for (int i = 0; i < 10; i++) {
+      processor.put(entry(i));
+    }
+    processor.flush();
+
+    assertThat(driver.pointCount()).isEqualTo(10);
+    assertThat(processor.getSenderPool().getSentCount()).isEqualTo(driver.written.size());
+  }
+
+  @Test
+  public void testSharedExecutors() throws Exception {
+    RecordingDriver driver = new RecordingDriver();
+    List<BatchProcessor> processors = Lists.newArrayList();
+    for (int i = 0; i < 200; i++) {
+      BatchProcessor processor = BatchProcessor.builder(driver).actions(1000).interval(50, TimeUnit.MILLISECONDS)
+              .sharedExecutors().jitter(1).build();
+      processor.put(entry(i));
+      processors.add(processor);
+    }
+    awaitPointCount(driver, 200);
+
+    for (BatchProcessor processor : processors) {
+      processor.flush();
+    }
+    assertThat(SharedExecutors.scheduler().isShutdown()).isFalse();
+    assertThat(SharedExecutors.flushExecutor().isShutdown()).isFalse();
+  }
+
+  @Test
+  public void testIntervalFlushWritesOnFlushThreads() throws Exception {
+    final List<String> threads = Lists.newCopyOnWriteArrayList();
+    RecordingDriver driver = new RecordingDriver() {
+      @Override
+      public void write(final BatchPoints batchPoints) {
+        threads.add(Thread.currentThread().getName());
+        if (threads.size() == 1) {
+          throw new RuntimeException("unavailable");
+        }
+        super.write(batchPoints);
+      }
+    };
+    ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+    ExecutorService flushExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("test-flush-%d").build());
+    BatchProcessor processor = BatchProcessor.builder(driver).actions(1000).interval(10, TimeUnit.MILLISECONDS)
+            .scheduler(scheduler).flushExecutor(flushExecutor).build();
+
+    processor.put(entry(0));
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (threads.isEmpty() && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+    // a failed write does not stop the interval flushes
+    processor.put(entry(1));
+    awaitPointCount(driver, 1);
+    processor.flush();
+
+    assertThat(threads).hasSize(2);
+    for (String thread : threads) {
+      assertThat(thread).startsWith("test-flush-");
+    }
+    scheduler.shutdown();
+    flushExecutor.shutdown();
+  }
+
+  @Test
+  public void testSharedSchedulerTasksAreCancelledOnFlush() throws Exception {
+    ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+    scheduler.setRemoveOnCancelPolicy(true);
+    ExecutorService flushExecutor = Executors.newSingleThreadExecutor();
+    RecordingDriver driver = new RecordingDriver();
+    BatchProcessor processor = BatchProcessor.builder(driver).actions(2).interval(1, TimeUnit.HOURS)
+            .maxAge(1, TimeUnit.HOURS).scheduler(scheduler).flushExecutor(flushExecutor).build();
+    assertThat(scheduler.getQueue()).hasSize(2);
+
+    for (int i = 0; i < 5; i++) {
+      processor.put(entry(i));
+    }
+    awaitPointCount(driver, 4);
+    processor.flush();
+
+    assertThat(driver.pointCount()).isEqualTo(5);
+    assertThat(scheduler.getQueue()).isEmpty();
+    assertThat(scheduler.isShutdown()).isFalse();
+    assertThat(flushExecutor.isShutdown()).isFalse();
+    scheduler.shutdown();
+    flushExecutor.shutdown();
+  }
+
+  @Test
+  public void testCloseWritesQueuedPoints() throws InflowException {
+    RecordingDriver driver = new RecordingDriver();
+    BatchProcessor processor = builder(driver).build();
+    for (int i = 0; i < 5; i++) {
+      processor.put(entry(i));
+    }
+
+    CloseResult result = processor.close(10, TimeUnit.SECONDS);
+    assertThat(result.getFlushedCount()).isEqualTo(5);
+    assertThat(result.getDroppedCount()).isEqualTo(0);
+    assertThat(driver.pointCount()).isEqualTo(5);
+
+    // written by the putting thread once closed
+    processor.put(entry(5));
+    assertThat(driver.pointCount()).isEqualTo(6);
+  }
+
+  @Test
+  public void testCloseWaitsForRunningFlushes() throws Exception {
+    final CountDownLatch writing = new CountDownLatch(1);
+    RecordingDriver driver = new RecordingDriver() {
+      @Override
+      public void write(final BatchPoints batchPoints) {
+        writing.countDown();
+        try {
+          Thread.sleep(200);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+        }
+        super.write(batchPoints);
+      }
+    };
+    BatchProcessor processor = builder(driver).actions(3).build();
+    for (int i = 0; i < 3; i++) {
+      processor.put(entry(i));
+    }
+    assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+
+    CloseResult result = processor.close(10, TimeUnit.SECONDS);
+    assertThat(driver.pointCount()).isEqualTo(3);
+    assertThat(result.getFlushedCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void testCloseDropsAfterDeadline() throws InflowException {
+    RecordingDriver driver = new RecordingDriver();
+    BatchProcessor processor = builder(driver).build();
+    for (int i = 0; i < 5; i++) {
+      processor.put(entry(i));
+    }
+
+    CloseResult result = processor.close(0, TimeUnit.SECONDS);
+    assertThat(result.getFlushedCount()).isEqualTo(0);
+    assertThat(result.getDroppedCount()).isEqualTo(5);
+    assertThat(driver.pointCount()).isEqualTo(0);
+    assertThat(processor.getDroppedCount()).isEqualTo(5);
+  }
+
+  @Test
+  public void testCloseCountsFailedWrites() throws InflowException {
+    RecordingDriver driver = new RecordingDriver() {
+      @Override
+      public void write(final BatchPoints batchPoints) {
+        if ("failing".equals(batchPoints.getRetentionPolicy().toString())) {
+          throw new IllegalStateException("write failed");
+        }
+        super.write(batchPoints);
+      }
+    };
+    BatchProcessor processor = builder(driver).build();
+    for (int i = 0; i < 5; i++) {
+      processor.put(entry(i));
+    }
+    processor.put(new BatchProcessor.BatchEntry(entry(5).getPoint(), "db", new InfluxDB.RetentionPolicy("failing")));
+
+    CloseResult result = processor.close(10, TimeUnit.SECONDS);
+    assertThat(result.getFlushedCount()).isEqualTo(5);
+    assertThat(result.getDroppedCount()).isEqualTo(1);
+    assertThat(processor.getFailedCount()).isEqualTo(1);
+  }
+
+}
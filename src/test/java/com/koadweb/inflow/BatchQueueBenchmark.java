@@ -0,0 +1,106 @@
+package com.koadweb.inflow;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Point;
+
+/**
+ * Compares BatchProcessor put throughput with the linked and the ring buffer queue, for 1, 4, 16
+ * and 64 concurrent producers.
+ *
+ * Not part of the test suite, run it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.koadweb.inflow.BatchQueueBenchmark}
+ *
+ */
+public class BatchQueueBenchmark {
+
+  private static final int POINTS = 4 * 1000 * 1000;
+  private static final int ROUNDS = 5;
+  private static final int[] PRODUCERS = {1, 4, 16, 64};
+
+  /**
+   * Counts the written points and discards them.
+   */
+  static class CountingDriver implements DriverInterface {
+
+    final AtomicLong points = new AtomicLong();
+
+    @Override
+    public void write(final String database, final InfluxDB.RetentionPolicy retentionPolicy, final InfluxDB.ConsistencyLevel consistency, final String records) {
+    }
+
+    @Override
+    public void write(final String database, final InfluxDB.RetentionPolicy retentionPolicy, final InfluxDB.ConsistencyLevel consistency, final List<String> records) {
+    }
+
+    @Override
+    public void write(final String database, final InfluxDB.RetentionPolicy retentionPolicy, final Point point) {
+    }
+
+    @Override
+    public void write(final BatchPoints batchPoints) {
+      this.points.addAndGet(batchPoints.getPoints().size());
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    for (int round = 0; round < ROUNDS; round++) {
+      for (int producers : PRODUCERS) {
+        long linkedNanos = run(BatchProcessor.QueueType.LINKED, producers);
+        long ringNanos = run(BatchProcessor.QueueType.RING_BUFFER, producers);
+        System.out.println(String.format("round %d, %2d producers: LINKED %5.1f Mpoints/s, RING_BUFFER %5.1f Mpoints/s",
+                round, producers, POINTS * 1000.0 / linkedNanos, POINTS * 1000.0 / ringNanos));
+      }
+    }
+  }
+
+  private static long run(final BatchProcessor.QueueType queueType, final int producers) throws Exception {
+    final CountingDriver driver = new CountingDriver();
+    final BatchProcessor processor = BatchProcessor.builder(driver)
+            .actions(5000)
+            .interval(1, TimeUnit.HOURS)
+            .queueType(queueType)
+            .capacity(1 << 16)
+            .blockTimeout(1, TimeUnit.MINUTES)
+            .build();
+    final Point point = Point.measurement("cpu").tag("host", "server01").field("value", 0.64).time(1, TimeUnit.SECONDS).build();
+    final InfluxDB.RetentionPolicy rp = new InfluxDB.RetentionPolicy("default");
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(producers);
+    final int perProducer = POINTS / producers;
+
+    for (int p = 0; p < producers; p++) {
+      new Thread() {
+        @Override
+        public void run() {
+          try {
+            BatchProcessor.BatchEntry entry = new BatchProcessor.BatchEntry(point, "db", rp);
+            start.await();
+            for (int i = 0; i < perProducer; i++) {
+              processor.put(entry);
+            }
+          } catch (InterruptedException | InflowException e) {
+            throw new RuntimeException(e);
+          } finally {
+            done.countDown();
+          }
+        }
+      }.start();
+    }
+
+    long begin = System.nanoTime();
+    start.countDown();
+    done.await();
+    processor.flush();
+    long total = (long) perProducer * producers;
+    while (driver.points.get() < total) {
+      Thread.sleep(1);
+    }
+    return System.nanoTime() - begin;
+  }
+
+}
@@ -0,0 +1,268 @@
+package com.koadweb.inflow;
+
+import com.google.common.collect.Lists;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Point;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test for the DiskSpool.
+ *
+ */
+public class DiskSpoolTest {
+
+  private File directory;
+
+  /**
+   * Records the replayed records, or fails while unavailable.
+   */
+  static class ReplayDriver extends BatchProcessorTest.RecordingDriver {
+
+    final List<String> records = Lists.newCopyOnWriteArrayList();
+    volatile boolean available = true;
+    volatile int failAfter = Integer.MAX_VALUE;
+
+    @Override
+    public void write(final String database, final InfluxDB.RetentionPolicy retentionPolicy, final InfluxDB.ConsistencyLevel consistency, final String records) {
+      if (!this.available || this.records.size() >= this.failAfter) {
+        throw new RuntimeException("unavailable");
+      }
+      this.records.add(database + "/" + retentionPolicy + "/" + consistency + ":" + records);
+    }
+  }
+
+  @BeforeMethod
+  public void createDirectory() throws IOException {
+    this.directory = Files.createTempDirectory("inflow-spool").toFile();
+  }
+
+  @AfterMethod
+  public void deleteDirectory() throws IOException {
+    FileUtils.deleteDirectory(this.directory);
+  }
+
+  static BatchPoints batch(final int value) {
+    BatchPoints batchPoints = BatchPoints.database("db").retentionPolicy(new InfluxDB.RetentionPolicy("autogen"))
+            .consistency(InfluxDB.ConsistencyLevel.ALL).build();
+    batchPoints.point(Point.measurement("cpu").field("value", value).time(value, TimeUnit.NANOSECONDS).build());
+    return batchPoints;
+  }
+
+  private DiskSpool.Builder builder(final DriverInterface driver) {
+    return DiskSpool.builder(this.directory, driver).replayInterval(1, TimeUnit.HOURS).replayBytesPerSecond(1e9);
+  }
+
+  @Test
+  public void testReplayInOrder() throws InflowException {
+    ReplayDriver driver = new ReplayDriver();
+    DiskSpool spool = builder(driver).maxSegmentBytes(100).build();
+    for (int i = 0; i < 5; i++) {
+      assertThat(spool.append(batch(i))).isTrue();
+    }
+    assertThat(spool.getSegmentCount()).isGreaterThan(1);
+
+    assertThat(spool.replay()).isEqualTo(5);
+    assertThat(driver.records).containsExactly(
+            "db/autogen/all:cpu value=0.0 0\n",
+            "db/autogen/all:cpu value=1.0 1\n",
+            "db/autogen/all:cpu value=2.0 2\n",
+            "db/autogen/all:cpu value=3.0 3\n",
+            "db/autogen/all:cpu value=4.0 4\n");
+    assertThat(spool.getSegmentCount()).isEqualTo(0);
+    assertThat(spool.getTotalBytes()).isEqualTo(0);
+    assertThat(this.directory.list()).isEmpty();
+    spool.close();
+  }
+
+  @Test
+  public void testFailedReplayResumesWithoutDuplicates() throws InflowException {
+    ReplayDriver driver = new ReplayDriver();
+    DiskSpool spool = builder(driver).build();
+    for (int i = 0; i < 4; i++) {
+      spool.append(batch(i));
+    }
+
+    driver.failAfter = 2;
+    assertThat(spool.replay()).isEqualTo(2);
+    driver.failAfter = Integer.MAX_VALUE;
+    assertThat(spool.replay()).isEqualTo(2);
+
+    assertThat(driver.records).hasSize(4);
+    assertThat(driver.records.get(2)).isEqualTo("db/autogen/all:cpu value=2.0 2\n");
+    assertThat(spool.getReplayedCount()).isEqualTo(4);
+    spool.close();
+  }
+
+  @Test
+  public void testMaxTotalBytes() throws InflowException {
+    DiskSpool spool = builder(new ReplayDriver()).maxSegmentBytes(100).maxTotalBytes(100).build();
+    int appended = 0;
+    for (int i = 0; i < 10; i++) {
+      if (spool.append(batch(i))) {
+        appended++;
+      }
+    }
+
+    assertThat(spool.getTotalBytes()).isLessThanOrEqualTo(100);
+    assertThat(spool.getSpooledCount()).isEqualTo(appended);
+    assertThat(spool.getDroppedCount()).isEqualTo(10 - appended);
+    spool.close();
+  }
+
+  @Test
+  public void testBatchLargerThanSegmentIsSplit() throws InflowException {
+    ReplayDriver driver = new ReplayDriver();
+    DiskSpool spool = builder(driver).maxSegmentBytes(200).build();
+    BatchPoints batchPoints = batch(0);
+    for (int i = 1; i < 20; i++) {
+      batchPoints.point(Point.measurement("cpu").field("value", i).time(i, TimeUnit.NANOSECONDS).build());
+    }
+    assertThat(spool.append(batchPoints)).isTrue();
+    assertThat(spool.getSegmentCount()).isGreaterThan(1);
+
+    int records = spool.replay();
+    assertThat(records).isGreaterThan(1);
+    assertThat(spool.getCorruptCount()).isEqualTo(0);
+    StringBuilder lines = new StringBuilder();
+    for (String record : driver.records) {
+      assertThat(record).startsWith("db/autogen/all:");
+      lines.append(record.substring("db/autogen/all:".length()));
+    }
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      expected.append("cpu value=").append(i).append(".0 ").append(i).append('\n');
+    }
+    assertThat(lines.toString()).isEqualTo(expected.toString());
+    assertThat(spool.getSegmentCount()).isEqualTo(0);
+    spool.close();
+  }
+
+  @Test
+  public void testPointLargerThanSegmentIsDropped() throws InflowException {
+    DiskSpool spool = builder(new ReplayDriver()).maxSegmentBytes(40).build();
+    assertThat(spool.append(batch(1))).isFalse();
+    assertThat(spool.getDroppedCount()).isEqualTo(1);
+    assertThat(spool.getSpooledCount()).isEqualTo(0);
+    assertThat(spool.getTotalBytes()).isEqualTo(0);
+    spool.close();
+  }
+
+  @Test
+  public void testRecordOfLargerSegmentIsReplayed() throws InflowException {
+    DiskSpool previous = builder(new ReplayDriver()).build();
+    previous.append(batch(1));
+    previous.close();
+
+    ReplayDriver driver = new ReplayDriver();
+    DiskSpool spool = builder(driver).maxSegmentBytes(30).build();
+    assertThat(spool.replay()).isEqualTo(1);
+    assertThat(driver.records).containsExactly("db/autogen/all:cpu value=1.0 1\n");
+    assertThat(spool.getCorruptCount()).isEqualTo(0);
+    spool.close();
+  }
+
+  @Test
+  public void testRecoverSegmentsOfPreviousSpool() throws InflowException {
+    DiskSpool previous = builder(new ReplayDriver()).build();
+    previous.append(batch(1));
+    previous.append(batch(2));
+    previous.close();
+
+    ReplayDriver driver = new ReplayDriver();
+    DiskSpool spool = builder(driver).build();
+    assertThat(spool.getSegmentCount()).isEqualTo(1);
+    spool.append(batch(3));
+
+    assertThat(spool.replay()).isEqualTo(3);
+    assertThat(driver.records.get(0)).isEqualTo("db/autogen/all:cpu value=1.0 1\n");
+    assertThat(driver.records.get(2)).isEqualTo("db/autogen/all:cpu value=3.0 3\n");
+    spool.close();
+  }
+
+  @Test
+  public void testTornRecordEndsSegment() throws Exception {
+    DiskSpool previous = builder(new ReplayDriver()).build();
+    previous.append(batch(1));
+    previous.append(batch(2));
+    previous.close();
+    File segment = this.directory.listFiles()[0];
+    try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+      file.setLength(file.length() - 3);
+    }
+
+    ReplayDriver driver = new ReplayDriver();
+    DiskSpool spool = builder(driver).build();
+    assertThat(spool.replay()).isEqualTo(1);
+    assertThat(spool.getCorruptCount()).isEqualTo(1);
+    assertThat(spool.getSegmentCount()).isEqualTo(0);
+    spool.close();
+  }
+
+  @Test
+  public void testCorruptRecordKeepsSegment() throws Exception {
+    DiskSpool previous = builder(new ReplayDriver()).build();
+    previous.append(batch(1));
+    previous.append(batch(2));
+    previous.append(batch(3));
+    previous.close();
+    File segment = this.directory.listFiles()[0];
+    long length = segment.length();
+    try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+      // a byte of the line protocol of the second record
+      long offset = length / 3 + length / 3 - 4;
+      file.seek(offset);
+      byte value = file.readByte();
+      file.seek(offset);
+      file.writeByte(value ^ 1);
+    }
+
+    ReplayDriver driver = new ReplayDriver();
+    DiskSpool spool = builder(driver).build();
+    assertThat(spool.replay()).isEqualTo(1);
+    assertThat(driver.records).containsExactly("db/autogen/all:cpu value=1.0 1\n");
+    assertThat(spool.getCorruptCount()).isEqualTo(1);
+    assertThat(spool.getSegmentCount()).isEqualTo(0);
+    assertThat(spool.getTotalBytes()).isEqualTo(0);
+    File corrupt = new File(segment.getPath() + DiskSpool.CORRUPT_SUFFIX);
+    assertThat(this.directory.listFiles()).containsExactly(corrupt);
+    assertThat(corrupt.length()).isEqualTo(length);
+    spool.close();
+
+    // the kept segment is not replayed again
+    DiskSpool next = builder(driver).build();
+    assertThat(next.getSegmentCount()).isEqualTo(0);
+    next.close();
+  }
+
+  @Test
+  public void testBatchProcessorSpoolsFailedWrites() throws Exception {
+    ReplayDriver driver = new ReplayDriver() {
+      @Override
+      public void write(final BatchPoints batchPoints) {
+        throw new RuntimeException("unavailable");
+      }
+    };
+    DiskSpool spool = builder(driver).build();
+    BatchProcessor processor = BatchProcessor.builder(driver).actions(100).interval(1, TimeUnit.HOURS).spool(spool).build();
+    processor.put(BatchProcessorTest.entry(1));
+    processor.put(BatchProcessorTest.entry(2));
+    processor.flush();
+
+    assertThat(spool.getSpooledCount()).isEqualTo(1);
+    assertThat(spool.replay()).isEqualTo(1);
+    assertThat(driver.records).containsExactly("db/default/one:cpu value=1.0 1000000000\ncpu value=2.0 2000000000\n");
+    spool.close();
+  }
+
+}
@@ -0,0 +1,124 @@
+package com.koadweb.inflow;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.Point;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test for the batching and statistics of DriverHTTP.
+ *
+ */
+public class DriverHTTPTest {
+
+  private FakeInfluxServer server;
+
+  @BeforeMethod
+  public void startServer() throws IOException {
+    this.server = new FakeInfluxServer();
+  }
+
+  @AfterMethod
+  public void stopServer() {
+    this.server.stop();
+  }
+
+  private DriverHTTP driver() {
+    return new DriverHTTP(this.server.getUrl(), "user", "password");
+  }
+
+  private static Point point(final int value) {
+    return Point.measurement("cpu").field("value", value).time(value, TimeUnit.SECONDS).build();
+  }
+
+  @Test
+  public void testEnableAndDisableBatch() throws InflowException {
+    DriverHTTP driver = driver();
+    assertThat(driver.isBatchEnabled()).isFalse();
+    driver.enableBatch(BatchProcessor.builder(driver).actions(3).interval(1, TimeUnit.HOURS));
+    assertThat(driver.isBatchEnabled()).isTrue();
+
+    for (int i = 0; i < 7; i++) {
+      driver.write("db", new InfluxDB.RetentionPolicy("default"), point(i));
+    }
+    driver.disableBatch();
+    assertThat(driver.isBatchEnabled()).isFalse();
+    assertThat(this.server.getWriteRequests()).hasSize(3);
+    assertThat(this.server.getWriteRequests().get(2)).endsWith(" cpu value=6.0 6000000000\n");
+
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), point(7));
+    assertThat(this.server.getWriteRequests()).hasSize(4);
+
+    WriteStats stats = driver.getStats();
+    assertThat(stats.getPointCount()).isEqualTo(8);
+    assertThat(stats.getBatchedCount()).isEqualTo(7);
+    assertThat(stats.getUnBatchedCount()).isEqualTo(1);
+    assertThat(stats.getRequestCount()).isEqualTo(4);
+    assertThat(stats.getByteCount()).isGreaterThan(8 * "cpu value=0.0 0".length());
+    assertThat(stats.getQueuedCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testBatchStats() throws InflowException {
+    DriverHTTP driver = driver();
+    driver.enableBatch(100, 1, TimeUnit.HOURS);
+    for (int i = 0; i < 5; i++) {
+      driver.write("db", new InfluxDB.RetentionPolicy("default"), InfluxDB.ConsistencyLevel.ALL, TimeUnit.SECONDS, point(i));
+    }
+
+    WriteStats stats = driver.getStats();
+    assertThat(stats.getQueuedCount()).isEqualTo(5);
+    assertThat(stats.getQueuedBytes()).isGreaterThan(0);
+    assertThat(stats.getRequestCount()).isEqualTo(0);
+
+    driver.getBatchProcessor().write();
+    stats = driver.getStats();
+    assertThat(stats.getQueuedCount()).isEqualTo(0);
+    assertThat(stats.getFlushCount()).isEqualTo(1);
+    assertThat(stats.getMaxFlushNanos()).isGreaterThan(0);
+    assertThat(stats.getAverageFlushNanos()).isEqualTo(stats.getMaxFlushNanos());
+    assertThat(this.server.getWriteRequests()).hasSize(1);
+    assertThat(this.server.getWriteRequests().get(0)).contains("precision=s").contains("consistency=all").endsWith("\ncpu value=4.0 4\n");
+    driver.disableBatch();
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testBuilderOfOtherDriver() throws InflowException {
+    driver().enableBatch(BatchProcessor.builder(driver()).actions(10).interval(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testClose() throws InflowException {
+    DriverHTTP driver = driver();
+    driver.enableBatch(100, 1, TimeUnit.HOURS);
+    for (int i = 0; i < 5; i++) {
+      driver.write("db", new InfluxDB.RetentionPolicy("default"), point(i));
+    }
+
+    CloseResult result = driver.close(10, TimeUnit.SECONDS);
+    assertThat(result.getFlushedCount()).isEqualTo(5);
+    assertThat(result.getDroppedCount()).isEqualTo(0);
+    assertThat(driver.isClosed()).isTrue();
+    assertThat(driver.isBatchEnabled()).isFalse();
+    assertThat(this.server.getWriteRequests()).hasSize(1);
+  }
+
+  @Test
+  public void testCloseGivesUpPendingRetries() throws InflowException {
+    this.server.answerAllWrites(503, "{\"error\":\"unavailable\"}");
+    DriverHTTP driver = driver();
+    driver.setRetryPolicy(RetryPolicy.builder().baseDelay(1, TimeUnit.HOURS).maxDelay(1, TimeUnit.HOURS).build());
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), point(0));
+    assertThat(driver.getPendingRetryCount()).isEqualTo(1);
+
+    driver.close(0, TimeUnit.SECONDS);
+    assertThat(driver.getPendingRetryCount()).isEqualTo(0);
+    assertThat(driver.getGiveUpCount()).isEqualTo(1);
+    assertThat(this.server.getWriteRequests()).hasSize(1);
+  }
+
+}
@@ -0,0 +1,114 @@
+package com.koadweb.inflow;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Point;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test for DriverTCP against a local ServerSocketChannel.
+ *
+ */
+public class DriverTCPTest {
+
+  private ServerSocketChannel server;
+
+  @BeforeMethod
+  public void startServer() throws IOException {
+    this.server = ServerSocketChannel.open();
+    this.server.bind(new InetSocketAddress("127.0.0.1", 0));
+  }
+
+  @AfterMethod
+  public void stopServer() throws IOException {
+    this.server.close();
+  }
+
+  private DriverTCP driver() {
+    return new DriverTCP("127.0.0.1", ((InetSocketAddress) this.server.socket().getLocalSocketAddress()).getPort());
+  }
+
+  private BufferedReader accept() throws IOException {
+    SocketChannel accepted = this.server.accept();
+    accepted.socket().setSoTimeout(10000);
+    return new BufferedReader(new InputStreamReader(accepted.socket().getInputStream(), StandardCharsets.UTF_8));
+  }
+
+  private static Point point(final int value) {
+    return Point.measurement("cpu").field("value", value).time(value, TimeUnit.SECONDS).build();
+  }
+
+  @Test
+  public void testWrite() throws Exception {
+    DriverTCP driver = driver();
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), point(1));
+    BufferedReader reader = accept();
+    BatchPoints batchPoints = BatchPoints.database("db").precision(TimeUnit.SECONDS).point(point(2)).point(point(3)).build();
+    driver.write(batchPoints);
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), InfluxDB.ConsistencyLevel.ONE,
+            Arrays.asList("cpu value=4 4", "cpu value=5 5\n"));
+
+    assertThat(reader.readLine()).isEqualTo("cpu value=1.0 1000000000");
+    assertThat(reader.readLine()).isEqualTo("cpu value=2.0 2");
+    assertThat(reader.readLine()).isEqualTo("cpu value=3.0 3");
+    assertThat(reader.readLine()).isEqualTo("cpu value=4 4");
+    assertThat(reader.readLine()).isEqualTo("cpu value=5 5");
+    assertThat(driver.getConnectCount()).isEqualTo(1);
+    assertThat(driver.getLineCount()).isEqualTo(5);
+    driver.close();
+    assertThat(reader.readLine()).isNull();
+  }
+
+  @Test
+  public void testReconnectWhenClosedByListener() throws Exception {
+    DriverTCP driver = driver();
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), point(1));
+    BufferedReader reader = accept();
+    assertThat(reader.readLine()).isEqualTo("cpu value=1.0 1000000000");
+    reader.close();
+    // let the FIN arrive
+    Thread.sleep(100);
+
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), point(2));
+    reader = accept();
+    assertThat(reader.readLine()).isEqualTo("cpu value=2.0 2000000000");
+    assertThat(driver.getConnectCount()).isEqualTo(2);
+    driver.close();
+  }
+
+  @Test
+  public void testBackoffAfterFailedConnect() throws Exception {
+    DriverTCP driver = driver();
+    driver.setReconnectPolicy(RetryPolicy.builder().baseDelay(1, TimeUnit.HOURS).maxDelay(1, TimeUnit.HOURS).jitter(0).build());
+    this.server.close();
+
+    try {
+      driver.write("db", new InfluxDB.RetentionPolicy("default"), point(1));
+      fail("connect must fail without a listener");
+    } catch (InflowException e) {
+      assertThat(e.getCause()).isInstanceOf(IOException.class);
+    }
+    try {
+      driver.write("db", new InfluxDB.RetentionPolicy("default"), point(2));
+      fail("writes must fail during the backoff");
+    } catch (InflowException e) {
+      assertThat(e.getMessage()).contains("reconnecting in");
+    }
+    assertThat(driver.isConnected()).isFalse();
+    assertThat(driver.getConnectCount()).isEqualTo(0);
+  }
+
+}
@@ -0,0 +1,227 @@
+package com.koadweb.inflow;
+
+import com.google.common.collect.Lists;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Point;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test for DriverUDP against a local DatagramChannel.
+ *
+ */
+public class DriverUDPTest {
+
+  private DatagramChannel server;
+  private final ByteBuffer received = ByteBuffer.allocate(DriverUDP.MAX_DATAGRAM_SIZE);
+
+  @BeforeMethod
+  public void startServer() throws IOException {
+    this.server = DatagramChannel.open();
+    this.server.bind(new InetSocketAddress("127.0.0.1", 0));
+  }
+
+  @AfterMethod
+  public void stopServer() throws IOException {
+    this.server.close();
+  }
+
+  private DriverUDP driver() {
+    return new DriverUDP("127.0.0.1", ((InetSocketAddress) this.server.socket().getLocalSocketAddress()).getPort());
+  }
+
+  private String receive() throws IOException {
+    this.received.clear();
+    this.server.receive(this.received);
+    this.received.flip();
+    return StandardCharsets.UTF_8.decode(this.received).toString();
+  }
+
+  private static Point point(final int value) {
+    return Point.measurement("cpu").tag("host", "server01").field("value", value).time(value, TimeUnit.SECONDS).build();
+  }
+
+  @Test
+  public void testWritePoints() throws Exception {
+    DriverUDP driver = driver();
+    for (int i = 0; i < 3; i++) {
+      driver.write("db", new InfluxDB.RetentionPolicy("default"), point(i));
+    }
+    assertThat(receive()).isEqualTo("cpu,host=server01 value=0.0 0");
+    assertThat(receive()).isEqualTo("cpu,host=server01 value=1.0 1000000000");
+    assertThat(receive()).isEqualTo("cpu,host=server01 value=2.0 2000000000");
+    driver.close();
+  }
+
+  @Test
+  public void testLargePointGrowsBuffer() throws Exception {
+    DriverUDP driver = driver();
+    driver.setPayloadSize(8192);
+    StringBuilder value = new StringBuilder();
+    for (int i = 0; i < 4000; i++) {
+      value.append('x');
+    }
+    Point point = Point.measurement("log").field("message", value.toString()).time(1, TimeUnit.NANOSECONDS).build();
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), point);
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), point(1));
+
+    assertThat(receive()).startsWith("log message=\"xxx").endsWith("\" 1").hasSize("log message=\"\" 1".length() + 4000);
+    assertThat(receive()).isEqualTo("cpu,host=server01 value=1.0 1000000000");
+    driver.close();
+  }
+
+  @Test
+  public void testPointLongerThanPayloadIsRejected() throws Exception {
+    DriverUDP driver = driver();
+    driver.setPayloadSize(20);
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), point(1));
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), Point.measurement("cpu").field("value", 2).time(2, TimeUnit.NANOSECONDS).build());
+
+    assertThat(driver.getRejectedCount()).isEqualTo(1);
+    assertThat(driver.getDatagramCount()).isEqualTo(1);
+    assertThat(receive()).isEqualTo("cpu value=2.0 2");
+    driver.close();
+  }
+
+  @Test
+  public void testResolveAgainAndReopen() throws Exception {
+    DriverUDP driver = driver();
+    driver.setResolveInterval(0, TimeUnit.SECONDS);
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), point(0));
+    InetSocketAddress first = driver.getAddress();
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), point(1));
+    assertThat(driver.getAddress()).isNotSameAs(first).isEqualTo(first);
+
+    driver.close();
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), point(2));
+    assertThat(receive()).endsWith("value=0.0 0");
+    assertThat(receive()).endsWith("value=1.0 1000000000");
+    assertThat(receive()).endsWith("value=2.0 2000000000");
+    driver.close();
+  }
+
+  @Test
+  public void testBatchIsPackedIntoDatagrams() throws Exception {
+    DriverUDP driver = driver();
+    driver.setPayloadSize(200);
+    BatchPoints batchPoints = BatchPoints.database("db").precision(TimeUnit.SECONDS).build();
+    for (int i = 0; i < 100; i++) {
+      batchPoints.point(point(i));
+    }
+    driver.write(batchPoints);
+
+    long datagrams = driver.getDatagramCount();
+    assertThat(datagrams).isGreaterThan(1).isLessThan(100);
+    List<String> lines = Lists.newArrayList();
+    for (long i = 0; i < datagrams; i++) {
+      String datagram = receive();
+      assertThat(datagram.length()).isLessThanOrEqualTo(200);
+      assertThat(datagram).doesNotEndWith("\n");
+      lines.addAll(Arrays.asList(datagram.split("\n")));
+    }
+    assertThat(lines).hasSize(100);
+    assertThat(lines.get(0)).isEqualTo("cpu,host=server01 value=0.0 0");
+    assertThat(lines.get(99)).isEqualTo("cpu,host=server01 value=99.0 99");
+    driver.close();
+  }
+
+  @Test
+  public void testRecordsAreSplitIntoLinesAndLongLinesRejected() throws Exception {
+    DriverUDP driver = driver();
+    driver.setPayloadSize(40);
+    StringBuilder tooLong = new StringBuilder("cpu value=");
+    for (int i = 0; i < 40; i++) {
+      tooLong.append('1');
+    }
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), InfluxDB.ConsistencyLevel.ONE,
+            Arrays.asList("cpu value=1 1\ncpu value=2 2", tooLong.toString(), "cpu value=3 3\n"));
+
+    assertThat(driver.getRejectedCount()).isEqualTo(1);
+    assertThat(driver.getDatagramCount()).isEqualTo(2);
+    assertThat(receive()).isEqualTo("cpu value=1 1\ncpu value=2 2");
+    assertThat(receive()).isEqualTo("cpu value=3 3");
+    driver.close();
+  }
+
+  @Test
+  public void testAsyncWrites() throws Exception {
+    DriverUDP driver = driver();
+    driver.setSendBufferSize(256 * 1024);
+    driver.enableAsync(1024);
+    assertThat(driver.isAsyncEnabled()).isTrue();
+    for (int i = 0; i < 3; i++) {
+      driver.write("db", new InfluxDB.RetentionPolicy("default"), point(i));
+    }
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), InfluxDB.ConsistencyLevel.ONE, "cpu value=3 3");
+
+    CloseResult result = driver.close(10, TimeUnit.SECONDS);
+    assertThat(driver.isAsyncEnabled()).isFalse();
+    assertThat(result.getDroppedCount()).isEqualTo(0);
+    assertThat(driver.getAsyncSentCount()).isEqualTo(4);
+    List<String> lines = Lists.newArrayList();
+    while (lines.size() < 4) {
+      lines.addAll(Arrays.asList(receive().split("\n")));
+    }
+    assertThat(lines).containsExactly("cpu,host=server01 value=0.0 0", "cpu,host=server01 value=1.0 1000000000",
+            "cpu,host=server01 value=2.0 2000000000", "cpu value=3 3");
+  }
+
+  @Test
+  public void testIdleAsyncSenderParks() throws Exception {
+    DriverUDP driver = driver();
+    driver.enableAsync(1024);
+    Thread sender = null;
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().startsWith("inflow-udp-sender-") && thread.isAlive()) {
+        sender = thread;
+      }
+    }
+    assertThat(sender).isNotNull();
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    Thread.sleep(100);
+
+    long cpuTime = threads.getThreadCpuTime(sender.getId());
+    Thread.sleep(500);
+    // a sender waking every 50 microseconds takes tens of milliseconds
+    assertThat(threads.getThreadCpuTime(sender.getId()) - cpuTime).isLessThan(TimeUnit.MILLISECONDS.toNanos(10));
+
+    // a write wakes the sender before the poll interval ends
+    long start = System.nanoTime();
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), point(1));
+    assertThat(receive()).isEqualTo("cpu,host=server01 value=1.0 1000000000");
+    assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(90));
+    driver.close();
+  }
+
+  @Test
+  public void testAsyncOverflowIsCounted() throws Exception {
+    DriverUDP driver = driver();
+    driver.enableAsync(4);
+    for (int i = 0; i < 1000; i++) {
+      driver.write("db", new InfluxDB.RetentionPolicy("default"), point(i));
+    }
+    driver.close(10, TimeUnit.SECONDS);
+
+    assertThat(driver.getAsyncSentCount() + driver.getQueueDroppedCount() + driver.getSendDroppedCount()).isEqualTo(1000);
+    assertThat(driver.getQueuedCount()).isEqualTo(0);
+
+    // sent by the caller once closed
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), point(1000));
+    assertThat(driver.getAsyncSentCount() + driver.getQueueDroppedCount() + driver.getSendDroppedCount()).isEqualTo(1000);
+    driver.close();
+  }
+
+}
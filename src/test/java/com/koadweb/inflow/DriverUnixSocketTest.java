@@ -0,0 +1,93 @@
+package com.koadweb.inflow;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Point;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test for DriverUnixSocket against a local Unix domain ServerSocketChannel.
+ *
+ */
+public class DriverUnixSocketTest {
+
+  private File socket;
+  private ServerSocketChannel server;
+
+  @BeforeMethod
+  public void startServer() throws Exception {
+    if (!DriverUnixSocket.isSupported()) {
+      throw new SkipException("Unix domain sockets need Java 16 or later");
+    }
+    File directory = File.createTempFile("inflow", "");
+    directory.delete();
+    directory.mkdir();
+    this.socket = new File(directory, "telegraf.sock");
+    // the test sources are Java 7 as well
+    SocketAddress address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+            .getMethod("of", String.class).invoke(null, this.socket.getPath());
+    this.server = (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class)
+            .invoke(null, StandardProtocolFamily.valueOf("UNIX"));
+    this.server.bind(address);
+  }
+
+  @AfterMethod
+  public void stopServer() throws IOException {
+    if (this.server != null) {
+      this.server.close();
+      this.socket.delete();
+      this.socket.getParentFile().delete();
+    }
+  }
+
+  private BufferedReader accept() throws IOException {
+    SocketChannel accepted = this.server.accept();
+    return new BufferedReader(new InputStreamReader(Channels.newInputStream(accepted), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testWrite() throws Exception {
+    DriverUnixSocket driver = new DriverUnixSocket(this.socket.getPath());
+    driver.write("db", new InfluxDB.RetentionPolicy("default"),
+            Point.measurement("cpu").field("value", 1).time(1, TimeUnit.SECONDS).build());
+    BufferedReader reader = accept();
+    driver.write(BatchPoints.database("db").precision(TimeUnit.SECONDS)
+            .point(Point.measurement("cpu").field("value", 2).time(2, TimeUnit.SECONDS).build()).build());
+
+    assertThat(reader.readLine()).isEqualTo("cpu value=1.0 1000000000");
+    assertThat(reader.readLine()).isEqualTo("cpu value=2.0 2");
+    assertThat(driver.getConnectCount()).isEqualTo(1);
+    driver.close();
+    assertThat(reader.readLine()).isNull();
+  }
+
+  @Test
+  public void testMissingSocketFails() throws Exception {
+    DriverUnixSocket driver = new DriverUnixSocket(this.socket.getPath() + ".missing");
+    try {
+      driver.write("db", new InfluxDB.RetentionPolicy("default"), InfluxDB.ConsistencyLevel.ONE, "cpu value=1 1");
+      fail("connect must fail without a socket");
+    } catch (InflowException e) {
+      assertThat(e.getMessage()).startsWith("SocketChannel IOException");
+    }
+    assertThat(driver.isConnected()).isFalse();
+  }
+
+}
@@ -0,0 +1,145 @@
+package com.koadweb.inflow;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A local stub of the InfluxDB HTTP API for the driver tests.
+ *
+ * Write requests are recorded and answered with a 204, unless an answer was queued for them.
+ * Queries are recorded and answered with {@link #QUERY_RESULT}, unless an answer was queued.
+ * Requests are handled concurrently.
+ *
+ */
+class FakeInfluxServer {
+
+  static final String QUERY_RESULT = "{\"results\":[{\"series\":[{\"name\":\"databases\",\"columns\":[\"name\"],"
+          + "\"values\":[[\"db\"]]}]}]}";
+
+  /**
+   * A status and body to answer a request with.
+   */
+  private static final class Answer {
+
+    private final int status;
+    private final String body;
+
+    Answer(final int status, final String body) {
+      this.status = status;
+      this.body = body;
+    }
+
+    void send(final HttpExchange exchange) throws IOException {
+      if (this.body == null) {
+        exchange.sendResponseHeaders(this.status, -1);
+      } else {
+        byte[] bytes = this.body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(this.status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+          out.write(bytes);
+        }
+      }
+      exchange.close();
+    }
+  }
+
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  // "query body" of the write requests
+  private final List<String> writeRequests = new CopyOnWriteArrayList<>();
+  private final List<String> writeBodies = new CopyOnWriteArrayList<>();
+  private final List<String> queries = new CopyOnWriteArrayList<>();
+  private final ConcurrentLinkedQueue<Answer> writeAnswers = new ConcurrentLinkedQueue<>();
+  private final ConcurrentLinkedQueue<Answer> queryAnswers = new ConcurrentLinkedQueue<>();
+  private volatile Answer defaultWriteAnswer = new Answer(204, null);
+
+  FakeInfluxServer() throws IOException {
+    this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    this.server.createContext("/write", new HttpHandler() {
+      @Override
+      public void handle(final HttpExchange exchange) throws IOException {
+        String body = new String(ByteStreams.toByteArray(exchange.getRequestBody()), StandardCharsets.UTF_8);
+        writeBodies.add(body);
+        writeRequests.add(exchange.getRequestURI().getQuery() + " " + body);
+        Answer answer = writeAnswers.poll();
+        (answer == null ? defaultWriteAnswer : answer).send(exchange);
+      }
+    });
+    this.server.createContext("/query", new HttpHandler() {
+      @Override
+      public void handle(final HttpExchange exchange) throws IOException {
+        queries.add(exchange.getRequestURI().getQuery());
+        Answer answer = queryAnswers.poll();
+        (answer == null ? new Answer(200, QUERY_RESULT) : answer).send(exchange);
+      }
+    });
+    this.server.setExecutor(this.executor);
+    this.server.start();
+  }
+
+  /**
+   * @return the URL of the server, for a driver
+   */
+  String getUrl() {
+    return "http://127.0.0.1:" + this.server.getAddress().getPort();
+  }
+
+  /**
+   * Answer the next write request not answered yet, with a JSON error body unless the status is 204.
+   */
+  void answerWrite(final int status, final String error) {
+    this.writeAnswers.add(new Answer(status, error));
+  }
+
+  /**
+   * Answer all write requests without a queued answer.
+   */
+  void answerAllWrites(final int status, final String error) {
+    this.defaultWriteAnswer = new Answer(status, error);
+  }
+
+  /**
+   * Answer the next query not answered yet.
+   */
+  void answerQuery(final int status, final String body) {
+    this.queryAnswers.add(new Answer(status, body));
+  }
+
+  /**
+   * @return the query string and the body of the write requests, separated by a space
+   */
+  List<String> getWriteRequests() {
+    return this.writeRequests;
+  }
+
+  /**
+   * @return the bodies of the write requests
+   */
+  List<String> getWriteBodies() {
+    return this.writeBodies;
+  }
+
+  /**
+   * @return the query strings of the queries
+   */
+  List<String> getQueries() {
+    return this.queries;
+  }
+
+  void stop() {
+    this.server.stop(0);
+    this.executor.shutdownNow();
+  }
+
+}
@@ -0,0 +1,109 @@
+package com.koadweb.inflow;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.influxdb.InfluxDB;
+import org.influxdb.InfluxDBPartialWriteException;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Point;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test for the quarantine of lines DriverHTTP writes are partially rejected for.
+ *
+ */
+public class PartialWriteTest {
+
+  private FakeInfluxServer server;
+  private final List<String> quarantined = new CopyOnWriteArrayList<>();
+
+  @BeforeMethod
+  public void startServer() throws IOException {
+    this.quarantined.clear();
+    this.server = new FakeInfluxServer();
+  }
+
+  @AfterMethod
+  public void stopServer() {
+    this.server.stop();
+  }
+
+  private DriverHTTP driver() {
+    DriverHTTP driver = new DriverHTTP(this.server.getUrl(), "user", "password");
+    driver.setQuarantineHandler(new DriverHTTP.QuarantineHandler() {
+      @Override
+      public void quarantined(final String database, final InfluxDB.RetentionPolicy retentionPolicy, final List<String> lines,
+              final InfluxDBPartialWriteException cause) {
+        quarantined.addAll(lines);
+      }
+    });
+    return driver;
+  }
+
+  @Test
+  public void testFieldTypeConflictIsQuarantined() {
+    DriverHTTP driver = driver();
+    this.server.answerWrite(400, "{\"error\":\"partial write: field type conflict: input field \\\"value\\\" on measurement \\\"cpu\\\" is type string, already exists as type float dropped=1\"}");
+
+    BatchPoints batchPoints = BatchPoints.database("db").retentionPolicy(new InfluxDB.RetentionPolicy("default")).build();
+    batchPoints.point(Point.measurement("cpu").field("value", 1).time(1, TimeUnit.NANOSECONDS).build());
+    batchPoints.point(Point.measurement("cpu").field("value", "high").time(2, TimeUnit.NANOSECONDS).build());
+    batchPoints.point(Point.measurement("mem").field("value", "high").time(3, TimeUnit.NANOSECONDS).build());
+    driver.write(batchPoints);
+
+    // the conflict names the field, so every line writing it is quarantined
+    assertThat(this.quarantined).containsExactly("cpu value=1.0 1", "cpu value=\"high\" 2");
+    assertThat(this.server.getWriteBodies()).hasSize(2);
+    assertThat(this.server.getWriteBodies().get(1)).isEqualTo("mem value=\"high\" 3");
+    assertThat(driver.getQuarantinedCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testUnparsableLineIsQuarantined() {
+    DriverHTTP driver = driver();
+    this.server.answerWrite(400, "{\"error\":\"unable to parse 'cpu value=': missing field value\"}");
+
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), InfluxDB.ConsistencyLevel.ONE, "cpu value=1 1\ncpu value=\nmem value=2 2");
+
+    assertThat(this.quarantined).containsExactly("cpu value=");
+    assertThat(this.server.getWriteBodies()).hasSize(2);
+    assertThat(this.server.getWriteBodies().get(1)).isEqualTo("cpu value=1 1\nmem value=2 2");
+  }
+
+  @Test
+  public void testResendOnlyOnce() {
+    DriverHTTP driver = driver();
+    this.server.answerWrite(400, "{\"error\":\"unable to parse 'bad': missing fields\"}");
+    this.server.answerWrite(400, "{\"error\":\"unable to parse 'cpu value=1 1': invalid\"}");
+
+    try {
+      driver.write("db", new InfluxDB.RetentionPolicy("default"), InfluxDB.ConsistencyLevel.ONE, "cpu value=1 1\nbad");
+      fail("the error of the resend must be thrown");
+    } catch (InfluxDBPartialWriteException e) {
+      assertThat(e.getUnparsableLines()).containsExactly("cpu value=1 1");
+    }
+    assertThat(this.server.getWriteBodies()).hasSize(2);
+  }
+
+  @Test
+  public void testUnnamedLinesAreThrown() {
+    DriverHTTP driver = driver();
+    this.server.answerWrite(400, "{\"error\":\"partial write: points beyond retention policy dropped=1\"}");
+
+    try {
+      driver.write("db", new InfluxDB.RetentionPolicy("default"), InfluxDB.ConsistencyLevel.ONE, "cpu value=1 1");
+      fail("a partial write without named lines must be thrown");
+    } catch (InfluxDBPartialWriteException e) {
+      assertThat(e.isBeyondRetentionPolicy()).isTrue();
+    }
+    assertThat(this.server.getWriteBodies()).hasSize(1);
+    assertThat(this.quarantined).isEmpty();
+  }
+
+}
@@ -0,0 +1,229 @@
+package com.koadweb.inflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.influxdb.InfluxDB;
+import org.influxdb.InfluxDBHTTPException;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Point;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test for the RetryPolicy and the retries of DriverHTTP.
+ *
+ */
+public class RetryPolicyTest {
+
+  private FakeInfluxServer server;
+
+  @BeforeMethod
+  public void startServer() throws IOException {
+    this.server = new FakeInfluxServer();
+  }
+
+  @AfterMethod
+  public void stopServer() {
+    this.server.stop();
+  }
+
+  private DriverHTTP driver(final int maxAttempts) {
+    DriverHTTP driver = new DriverHTTP(this.server.getUrl(), "user", "password");
+    driver.setRetryPolicy(RetryPolicy.builder().maxAttempts(maxAttempts)
+            .baseDelay(1, TimeUnit.MILLISECONDS).maxDelay(4, TimeUnit.MILLISECONDS).build());
+    return driver;
+  }
+
+  private void answerWrites(final int... statuses) {
+    for (int status : statuses) {
+      this.server.answerWrite(status, "{\"error\":\"status " + status + "\"}");
+    }
+  }
+
+  private static void write(final DriverHTTP driver) throws InflowException {
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), Point.measurement("cpu").field("value", 1).time(1, TimeUnit.NANOSECONDS).build());
+  }
+
+  private static void writeRecords(final DriverHTTP driver) {
+    driver.write("db", new InfluxDB.RetentionPolicy("default"), InfluxDB.ConsistencyLevel.ONE, "cpu value=1 1");
+  }
+
+  private static void awaitNoPendingRetries(final DriverHTTP driver) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (driver.getPendingRetryCount() > 0 && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+    assertThat(driver.getPendingRetryCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testRetryableErrors() {
+    RetryPolicy policy = RetryPolicy.builder().build();
+
+    assertThat(policy.isRetryable(new InfluxDBHTTPException(503, "unavailable"))).isTrue();
+    assertThat(policy.isRetryable(new InfluxDBHTTPException(429, "too many requests"))).isTrue();
+    assertThat(policy.isRetryable(new InfluxDBHTTPException(400, "field type conflict"))).isFalse();
+    assertThat(policy.isRetryable(new InfluxDBHTTPException(404, "database not found"))).isFalse();
+    assertThat(policy.isRetryable(new IllegalStateException())).isFalse();
+
+    policy = RetryPolicy.builder().retryableStatuses(500).build();
+    assertThat(policy.isRetryable(new InfluxDBHTTPException(500, "error"))).isTrue();
+    assertThat(policy.isRetryable(new InfluxDBHTTPException(503, "unavailable"))).isFalse();
+  }
+
+  @Test
+  public void testBackoff() {
+    RetryPolicy policy = RetryPolicy.builder().baseDelay(100, TimeUnit.MILLISECONDS)
+            .maxDelay(1, TimeUnit.SECONDS).jitter(0).build();
+    assertThat(policy.delayNanos(1)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+    assertThat(policy.delayNanos(2)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(200));
+    assertThat(policy.delayNanos(4)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(800));
+    assertThat(policy.delayNanos(5)).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+    assertThat(policy.delayNanos(100)).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+
+    policy = RetryPolicy.builder().baseDelay(100, TimeUnit.MILLISECONDS)
+            .maxDelay(1, TimeUnit.SECONDS).jitter(0.5).build();
+    for (int i = 0; i < 100; i++) {
+      assertThat(policy.delayNanos(2)).isBetween(TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(200));
+    }
+    assertThat(policy.canRetry(4)).isTrue();
+    assertThat(policy.canRetry(5)).isFalse();
+  }
+
+  @Test
+  public void testRetryUntilWritten() throws Exception {
+    DriverHTTP driver = driver(5);
+    answerWrites(503, 500);
+
+    write(driver);
+    awaitNoPendingRetries(driver);
+
+    assertThat(this.server.getWriteBodies()).containsExactly("cpu value=1.0 1\n", "cpu value=1.0 1\n", "cpu value=1.0 1\n");
+    assertThat(driver.getRetryCount()).isEqualTo(2);
+    assertThat(driver.getGiveUpCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testGiveUpAfterMaxAttempts() throws Exception {
+    DriverHTTP driver = driver(3);
+    answerWrites(503, 503, 503, 503);
+
+    write(driver);
+    awaitNoPendingRetries(driver);
+
+    assertThat(this.server.getWriteBodies()).hasSize(3);
+    assertThat(driver.getRetryCount()).isEqualTo(2);
+    assertThat(driver.getGiveUpCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testClientErrorIsNotRetried() throws Exception {
+    DriverHTTP driver = driver(5);
+    answerWrites(400);
+
+    try {
+      write(driver);
+      fail("400 must be thrown to the caller");
+    } catch (InfluxDBHTTPException e) {
+      assertThat(e.getStatus()).isEqualTo(400);
+    }
+    assertThat(this.server.getWriteBodies()).hasSize(1);
+    assertThat(driver.getRetryCount()).isEqualTo(0);
+    assertThat(driver.getPendingRetryCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testGiveUpIsSpooledByTheBatchProcessor() throws Exception {
+    File directory = Files.createTempDirectory("inflow-spool").toFile();
+    try {
+      DriverHTTP driver = driver(2);
+      DiskSpool spool = DiskSpool.builder(directory, driver).replayInterval(1, TimeUnit.HOURS).build();
+      driver.enableBatch(BatchProcessor.builder(driver).actions(10).interval(1, TimeUnit.HOURS).spool(spool));
+      answerWrites(503, 503);
+
+      driver.write("db", new InfluxDB.RetentionPolicy("default"), Point.measurement("cpu").field("value", 1).build());
+      driver.getBatchProcessor().write();
+      awaitNoPendingRetries(driver);
+
+      assertThat(driver.getGiveUpCount()).isEqualTo(1);
+      assertThat(spool.getSpooledCount()).isEqualTo(1);
+      assertThat(driver.getBatchProcessor().getWrittenCount()).isEqualTo(1);
+      assertThat(driver.getBatchProcessor().getFailedCount()).isEqualTo(0);
+      driver.close();
+      spool.close();
+    } finally {
+      FileUtils.deleteDirectory(directory);
+    }
+  }
+
+  @Test
+  public void testGiveUpHandler() throws Exception {
+    DriverHTTP driver = driver(2);
+    final List<BatchPoints> givenUp = new CopyOnWriteArrayList<>();
+    driver.setGiveUpHandler(new DriverHTTP.GiveUpHandler() {
+      @Override
+      public void gaveUp(final BatchPoints batchPoints, final Exception cause) {
+        givenUp.add(batchPoints);
+      }
+    });
+    answerWrites(503, 503, 503, 503);
+
+    BatchPoints batchPoints = BatchPoints.database("db").retentionPolicy(new InfluxDB.RetentionPolicy("default")).build();
+    batchPoints.point(Point.measurement("cpu").field("value", 1).build());
+    driver.write(batchPoints);
+    awaitNoPendingRetries(driver);
+
+    assertThat(givenUp).containsExactly(batchPoints);
+    assertThat(driver.getGiveUpCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testRecordsAreNotRetried() {
+    DriverHTTP driver = driver(5);
+    answerWrites(503);
+
+    try {
+      writeRecords(driver);
+      fail("503 must be thrown to the caller");
+    } catch (InfluxDBHTTPException e) {
+      assertThat(e.getStatus()).isEqualTo(503);
+    }
+    assertThat(this.server.getWriteBodies()).hasSize(1);
+    assertThat(driver.getPendingRetryCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testSpoolReplayKeepsRecordsOfFailedWrites() throws Exception {
+    File directory = Files.createTempDirectory("inflow-spool").toFile();
+    try {
+      DriverHTTP driver = driver(5);
+      DiskSpool spool = DiskSpool.builder(directory, driver).replayInterval(1, TimeUnit.HOURS).build();
+      BatchPoints batchPoints = BatchPoints.database("db").retentionPolicy(new InfluxDB.RetentionPolicy("default")).build();
+      batchPoints.point(Point.measurement("cpu").field("value", 1).time(1, TimeUnit.NANOSECONDS).build());
+      spool.append(batchPoints);
+      this.server.answerAllWrites(503, "{\"error\":\"unavailable\"}");
+
+      assertThat(spool.replay()).isEqualTo(0);
+      assertThat(driver.getPendingRetryCount()).isEqualTo(0);
+      assertThat(spool.getSegmentCount()).isEqualTo(1);
+
+      this.server.answerAllWrites(204, null);
+      assertThat(spool.replay()).isEqualTo(1);
+      assertThat(spool.getSegmentCount()).isEqualTo(0);
+      assertThat(this.server.getWriteBodies()).containsExactly("cpu value=1.0 1\n", "cpu value=1.0 1\n");
+      driver.close();
+      spool.close();
+    } finally {
+      FileUtils.deleteDirectory(directory);
+    }
+  }
+
+}
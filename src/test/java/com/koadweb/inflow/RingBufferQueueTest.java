@@ -0,0 +1,120 @@
+package com.koadweb.inflow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.testng.annotations.Test;
+
+/**
+ * Test for the RingBufferQueue.
+ *
+ */
+public class RingBufferQueueTest {
+
+  @Test
+  public void testFifoAndCapacity() {
+    RingBufferQueue<Integer> queue = new RingBufferQueue<>(3);
+    assertThat(queue.capacity()).isEqualTo(4);
+    assertThat(queue.poll()).isNull();
+
+    for (int i = 0; i < 4; i++) {
+      assertThat(queue.offer(i)).isTrue();
+    }
+    assertThat(queue.offer(4)).isFalse();
+    assertThat(queue.size()).isEqualTo(4);
+    assertThat(queue.remainingCapacity()).isEqualTo(0);
+    assertThat(queue.peek()).isEqualTo(0);
+    assertThat(queue).containsExactly(0, 1, 2, 3);
+
+    // wrap around the ring a few times
+    for (int i = 4; i < 20; i++) {
+      assertThat(queue.poll()).isEqualTo(i - 4);
+      assertThat(queue.offer(i)).isTrue();
+    }
+    assertThat(queue).containsExactly(16, 17, 18, 19);
+  }
+
+  @Test
+  public void testDrainTo() {
+    RingBufferQueue<Integer> queue = new RingBufferQueue<>(8);
+    for (int i = 0; i < 6; i++) {
+      queue.offer(i);
+    }
+    List<Integer> drained = new ArrayList<>();
+    assertThat(queue.drainTo(drained, 4)).isEqualTo(4);
+    assertThat(drained).containsExactly(0, 1, 2, 3);
+    assertThat(queue.drainTo(drained)).isEqualTo(2);
+    assertThat(drained).containsExactly(0, 1, 2, 3, 4, 5);
+    assertThat(queue.isEmpty()).isTrue();
+    assertThat(queue.drainTo(drained)).isEqualTo(0);
+  }
+
+  @Test
+  public void testTimedOfferAndPoll() throws InterruptedException {
+    RingBufferQueue<Integer> queue = new RingBufferQueue<>(1);
+    assertThat(queue.capacity()).isEqualTo(2);
+    assertThat(queue.poll(10, TimeUnit.MILLISECONDS)).isNull();
+    assertThat(queue.offer(1, 10, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(queue.offer(2, 10, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(queue.offer(3, 10, TimeUnit.MILLISECONDS)).isFalse();
+    assertThat(queue.take()).isEqualTo(1);
+  }
+
+  @Test
+  public void testConcurrentProducersAndConsumers() throws InterruptedException {
+    final RingBufferQueue<Long> queue = new RingBufferQueue<>(64);
+    final int producers = 4;
+    final int perProducer = 50000;
+    final AtomicLong sum = new AtomicLong();
+    final AtomicLong count = new AtomicLong();
+
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      final long base = (long) p * perProducer;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (long i = 1; i <= perProducer; i++) {
+              queue.put(base + i);
+            }
+          } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+    }
+    for (int c = 0; c < 2; c++) {
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          List<Long> drained = new ArrayList<>();
+          while (count.get() < (long) producers * perProducer) {
+            drained.clear();
+            if (queue.drainTo(drained, 16) == 0) {
+              Thread.yield();
+            }
+            for (Long value : drained) {
+              sum.addAndGet(value);
+            }
+            count.addAndGet(drained.size());
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    long n = (long) producers * perProducer;
+    assertThat(count.get()).isEqualTo(n);
+    assertThat(sum.get()).isEqualTo(n * (n + 1) / 2);
+    assertThat(queue.isEmpty()).isTrue();
+  }
+
+}
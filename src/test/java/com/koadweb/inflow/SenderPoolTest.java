@@ -0,0 +1,131 @@
+package com.koadweb.inflow;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Point;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.testng.annotations.Test;
+
+/**
+ * Test for the SenderPool.
+ *
+ */
+public class SenderPoolTest {
+
+  static BatchPoints batch(final String database, final int value) {
+    BatchPoints batchPoints = BatchPoints.database(database).retentionPolicy(new InfluxDB.RetentionPolicy("default")).build();
+    batchPoints.point(Point.measurement("cpu").field("value", value).time(value, TimeUnit.SECONDS).build());
+    return batchPoints;
+  }
+
+  /**
+   * Blocks every write until released and tracks the concurrent writes.
+   */
+  static class GatedDriver extends BatchProcessorTest.RecordingDriver {
+
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger concurrent = new AtomicInteger();
+    final AtomicInteger maxConcurrent = new AtomicInteger();
+
+    @Override
+    public void write(final BatchPoints batchPoints) {
+      int now = this.concurrent.incrementAndGet();
+      int max;
+      while (now > (max = this.maxConcurrent.get()) && !this.maxConcurrent.compareAndSet(max, now)) {
+      }
+      try {
+        this.release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+      this.concurrent.decrementAndGet();
+      super.write(batchPoints);
+    }
+  }
+
+  @Test
+  public void testWindowLimitsWritesInFlight() throws Exception {
+    final GatedDriver driver = new GatedDriver();
+    final SenderPool pool = new SenderPool(driver, 3, false);
+    for (int i = 0; i < 3; i++) {
+      pool.send(batch("db", i));
+    }
+    assertThat(pool.getInFlightCount()).isEqualTo(3);
+
+    // a fourth send waits for a free slot
+    final CountDownLatch sent = new CountDownLatch(1);
+    Thread producer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          pool.send(batch("db", 3));
+          sent.countDown();
+        } catch (InflowException ie) {
+          throw new RuntimeException(ie);
+        }
+      }
+    };
+    producer.start();
+    assertThat(sent.await(100, TimeUnit.MILLISECONDS)).isFalse();
+
+    driver.release.countDown();
+    assertThat(sent.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(pool.awaitSent(5, TimeUnit.SECONDS)).isTrue();
+    pool.shutdown();
+
+    assertThat(driver.pointCount()).isEqualTo(4);
+    assertThat(driver.maxConcurrent.get()).isEqualTo(3);
+    assertThat(pool.getSentCount()).isEqualTo(4);
+  }
+
+  @Test
+  public void testOrderedPerDatabase() throws Exception {
+    final BatchProcessorTest.RecordingDriver driver = new BatchProcessorTest.RecordingDriver() {
+      @Override
+      public void write(final BatchPoints batchPoints) {
+        try {
+          Thread.sleep((long) (Math.random() * 3));
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+        }
+        super.write(batchPoints);
+      }
+    };
+    SenderPool pool = new SenderPool(driver, 4, true);
+    for (int i = 0; i < 50; i++) {
+      pool.send(batch("db" + (i % 2), i));
+    }
+    assertThat(pool.awaitSent(5, TimeUnit.SECONDS)).isTrue();
+    pool.shutdown();
+
+    int[] last = {-1, -1};
+    for (BatchPoints batchPoints : driver.written) {
+      int database = batchPoints.getDatabase().equals("db0") ? 0 : 1;
+      String line = batchPoints.lineProtocol();
+      int value = Integer.parseInt(line.substring("cpu value=".length(), line.indexOf('.')));
+      assertThat(value).isGreaterThan(last[database]);
+      last[database] = value;
+    }
+    assertThat(driver.pointCount()).isEqualTo(50);
+  }
+
+  @Test
+  public void testFailedWritesAreCounted() throws Exception {
+    SenderPool pool = new SenderPool(new BatchProcessorTest.RecordingDriver() {
+      @Override
+      public void write(final BatchPoints batchPoints) {
+        throw new RuntimeException("unavailable");
+      }
+    }, 2, false);
+    pool.send(batch("db", 1));
+    assertThat(pool.awaitSent(5, TimeUnit.SECONDS)).isTrue();
+    pool.shutdown();
+
+    assertThat(pool.getFailedCount()).isEqualTo(1);
+    assertThat(pool.getInFlightCount()).isEqualTo(0);
+  }
+
+}
@@ -0,0 +1,59 @@
+package org.influxdb;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Point;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.testng.annotations.Test;
+
+/**
+ * Test for the GzipBody.
+ *
+ */
+public class GzipBodyTest {
+
+  @Test
+  public void testCompressedBodyRoundTrip() throws IOException {
+    BatchPoints batchPoints = BatchPoints.database("db").build();
+    for (int i = 0; i < 1000; i++) {
+      batchPoints.point(Point.measurement("cpu").tag("host", "server" + (i % 10)).field("value", i)
+              .time(i, TimeUnit.SECONDS).build());
+    }
+    AtomicLong rawBytes = new AtomicLong();
+    AtomicLong compressedBytes = new AtomicLong();
+    GzipBody body = new GzipBody(LineProtocolBody.of(batchPoints, 1024, null), 6, rawBytes, compressedBytes);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    body.writeTo(out);
+    byte[] decompressed = ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())));
+    byte[] expected = batchPoints.lineProtocol().getBytes("UTF-8");
+
+    assertThat(decompressed).isEqualTo(expected);
+    assertThat(rawBytes.get()).isEqualTo(expected.length);
+    assertThat(compressedBytes.get()).isEqualTo(out.size());
+    assertThat(compressedBytes.get()).isLessThan(rawBytes.get() / 5);
+  }
+
+  @Test
+  public void testShorterThan() {
+    BatchPoints batchPoints = BatchPoints.database("db").build();
+    batchPoints.point(Point.measurement("cpu").field("value", 1.0).time(1, TimeUnit.NANOSECONDS).build());
+    LineProtocolBody body = LineProtocolBody.of(batchPoints, 1024, null);
+
+    // "cpu value=1.0 1\n"
+    assertThat(body.isShorterThan(17)).isTrue();
+    assertThat(body.isShorterThan(16)).isFalse();
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testInvalidLevel() {
+    new GzipBody(null, 10, new AtomicLong(), new AtomicLong());
+  }
+
+}
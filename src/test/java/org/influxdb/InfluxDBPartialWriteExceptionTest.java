@@ -0,0 +1,59 @@
+package org.influxdb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.testng.annotations.Test;
+
+/**
+ * Test for the parsing of partial write errors.
+ *
+ */
+public class InfluxDBPartialWriteExceptionTest {
+
+  @Test
+  public void testFieldTypeConflict() {
+    InfluxDBPartialWriteException e = InfluxDBPartialWriteException.parse(400,
+            "{\"error\":\"partial write: field type conflict: input field \\\"value\\\" on measurement \\\"cpu load\\\" is type float, already exists as type integer dropped=2\"}");
+
+    assertThat(e.getStatus()).isEqualTo(400);
+    assertThat(e.getFieldConflicts()).hasSize(1);
+    assertThat(e.getFieldConflicts().get(0).getMeasurement()).isEqualTo("cpu load");
+    assertThat(e.getFieldConflicts().get(0).getField()).isEqualTo("value");
+    assertThat(e.getDropped()).isEqualTo(2);
+
+    assertThat(e.isRejected("cpu\\ load,host=a value=1.0 1")).isTrue();
+    assertThat(e.isRejected("cpu\\ load,host=a\\ b idle=1.0,value=2.0 1")).isTrue();
+    assertThat(e.isRejected("cpu\\ load,host=a comment=\"value=1\",idle=1.0 1")).isFalse();
+    assertThat(e.isRejected("cpu\\ load,value=a idle=1.0 1")).isFalse();
+    assertThat(e.isRejected("cpu value=1.0 1")).isFalse();
+    assertThat(e.isRejected("mem value=1.0 1")).isFalse();
+  }
+
+  @Test
+  public void testUnableToParse() {
+    InfluxDBPartialWriteException e = InfluxDBPartialWriteException.parse(400,
+            "{\"error\":\"unable to parse 'cpu value=': missing field value\\nunable to parse 'mem': missing fields\"}");
+
+    assertThat(e.getUnparsableLines()).containsExactly("cpu value=", "mem");
+    assertThat(e.getDropped()).isEqualTo(-1);
+    assertThat(e.isRejected("mem")).isTrue();
+    assertThat(e.isRejected("cpu value=1.0 1")).isFalse();
+  }
+
+  @Test
+  public void testBeyondRetentionPolicy() {
+    InfluxDBPartialWriteException e = InfluxDBPartialWriteException.parse(400,
+            "{\"error\":\"partial write: points beyond retention policy dropped=3\"}");
+
+    assertThat(e.isBeyondRetentionPolicy()).isTrue();
+    assertThat(e.hasRejectedLines()).isFalse();
+    assertThat(e.getDropped()).isEqualTo(3);
+  }
+
+  @Test
+  public void testOtherErrors() {
+    assertThat(InfluxDBPartialWriteException.parse(400, "{\"error\":\"database not found\"}")).isNull();
+    assertThat(InfluxDBPartialWriteException.parse(500, "{\"error\":\"partial write\"}")).isNull();
+    assertThat(InfluxDBPartialWriteException.parse(400, "not json")).isNull();
+  }
+
+}
@@ -0,0 +1,99 @@
+package org.influxdb;
+
+import com.google.common.collect.Lists;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Point;
+import org.influxdb.dto.SeriesKeyCache;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.testng.annotations.Test;
+
+/**
+ * Test for the streaming LineProtocolBody.
+ *
+ */
+public class LineProtocolBodyTest {
+
+  /**
+   * Records the size of every write to check that the body is streamed in chunks.
+   */
+  static class ChunkRecordingStream extends ByteArrayOutputStream {
+
+    final List<Integer> writes = Lists.newArrayList();
+
+    @Override
+    public synchronized void write(final byte[] b, final int off, final int len) {
+      this.writes.add(len);
+      super.write(b, off, len);
+    }
+
+    String content() {
+      return new String(toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private BatchPoints batchPoints(final int count) {
+    BatchPoints batchPoints = BatchPoints.database("db").tag("region", "eu").build();
+    for (int i = 0; i < count; i++) {
+      batchPoints.point(Point.measurement("cpu").tag("host", "server " + (i % 10)).field("value", i)
+              .time(i, TimeUnit.SECONDS).build());
+    }
+    return batchPoints;
+  }
+
+  @Test
+  public void testBatchPointsMatchLineProtocol() throws IOException {
+    BatchPoints batchPoints = batchPoints(1000);
+    LineProtocolBody body = LineProtocolBody.of(batchPoints, 1024, new SeriesKeyCache(16));
+
+    ChunkRecordingStream out = new ChunkRecordingStream();
+    body.writeTo(out);
+
+    assertThat(body.length()).isEqualTo(-1);
+    assertThat(out.content()).isEqualTo(batchPoints.lineProtocol());
+    assertThat(out.writes.size()).isGreaterThan(1);
+    for (int size : out.writes) {
+      // a chunk is flushed by the Point that reaches the chunk size
+      assertThat(size).isLessThan(1024 + 100);
+    }
+  }
+
+  @Test
+  public void testBodyCanBeWrittenAgain() throws IOException {
+    BatchPoints batchPoints = batchPoints(100);
+    LineProtocolBody body = LineProtocolBody.of(batchPoints, 256, null);
+
+    ChunkRecordingStream first = new ChunkRecordingStream();
+    body.writeTo(first);
+    ChunkRecordingStream second = new ChunkRecordingStream();
+    body.writeTo(second);
+
+    assertThat(second.content()).isEqualTo(first.content());
+  }
+
+  @Test
+  public void testRecordsAreJoinedByNewLines() throws IOException {
+    List<String> records = Lists.newArrayList("cpu value=1.0 1", "cpu,host=é value=2.0 2", "cpu value=3.0 3");
+    LineProtocolBody body = LineProtocolBody.of(records, 15);
+
+    ChunkRecordingStream out = new ChunkRecordingStream();
+    body.writeTo(out);
+
+    assertThat(out.content()).isEqualTo("cpu value=1.0 1\ncpu,host=é value=2.0 2\ncpu value=3.0 3");
+    assertThat(out.writes).hasSize(3);
+  }
+
+  @Test
+  public void testEmptyBody() throws IOException {
+    ChunkRecordingStream out = new ChunkRecordingStream();
+    LineProtocolBody.of(BatchPoints.database("db").build(), 16, null).writeTo(out);
+
+    assertThat(out.size()).isEqualTo(0);
+    assertThat(out.writes).isEmpty();
+  }
+
+}
@@ -47,6 +47,7 @@ public class TestInfluxDBHTTPErrorHandler {
     Throwable throwable = new InfluxDBHTTPErrorHandler().handleError(error);
 
     Assert.assertEquals(throwable.getMessage(), influxDbInternalError, "Wrong error message");
+    Assert.assertEquals(((InfluxDBHTTPException) throwable).getStatus(), 500, "Wrong status");
     Assert.assertTrue(closed.get(), "Stream is not closed");
   }
 }
@@ -0,0 +1,99 @@
+package org.influxdb.dto;
+
+import java.util.concurrent.TimeUnit;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.testng.annotations.Test;
+
+/**
+ * Test for the CompactPoint DTO.
+ *
+ */
+public class CompactPointTest {
+
+  @Test
+  public void testLineProtocolMatchesPoint() {
+    CompactPoint compact = CompactPoint.builder("cpu load")
+            .tag("region", "us-west")
+            .tag("host", "server 01")
+            .field("value", 0.64)
+            .field("count", 10L)
+            .field("ok", true)
+            .field("comment", "a \"b\"")
+            .time(1452129125, TimeUnit.SECONDS)
+            .build();
+    Point point = Point.measurement("cpu load")
+            .tag("region", "us-west")
+            .tag("host", "server 01")
+            .field("value", 0.64)
+            .field("count", 10L)
+            .field("ok", true)
+            .field("comment", "a \"b\"")
+            .time(1452129125, TimeUnit.SECONDS)
+            .build();
+
+    assertThat(compact.lineProtocol()).isEqualTo(point.lineProtocol());
+    assertThat(compact.lineProtocol())
+            .isEqualTo("cpu\\ load,host=server\\ 01,region=us-west comment=\"a \\\"b\\\"\",count=10.0,ok=true,value=0.64 1452129125000000000");
+  }
+
+  @Test
+  public void testUseIntegerAndFieldReplacement() {
+    CompactPoint compact = CompactPoint.builder("inttest")
+            .useInteger(true)
+            .field("a", 1L)
+            .field("b", 2.5)
+            .field("a", 42L)
+            .field("s", (String) null)
+            .time(1, TimeUnit.NANOSECONDS)
+            .build();
+
+    assertThat(compact.lineProtocol()).isEqualTo("inttest a=42i,b=2.5 1");
+  }
+
+  @Test
+  public void testBuilderReuseSharesLayout() {
+    CompactPoint.Builder builder = CompactPoint.builder("cpu");
+    CompactPoint first = builder.tag("host", "a").field("user", 1.0).field("idle", 2.0).time(1, TimeUnit.SECONDS).build();
+    CompactPoint second = builder.reset().tag("host", "b").field("user", 3.0).field("idle", 4.0).time(2, TimeUnit.SECONDS).build();
+
+    assertThat(first.lineProtocol()).isEqualTo("cpu,host=a idle=2.0,user=1.0 1000000000");
+    assertThat(second.lineProtocol()).isEqualTo("cpu,host=b idle=4.0,user=3.0 2000000000");
+
+    CompactPoint third = builder.reset().tag("host", "c").field("user", 5L).time(3, TimeUnit.SECONDS).build();
+    assertThat(third.lineProtocol()).isEqualTo("cpu,host=c user=5.0 3000000000");
+    assertThat(second.lineProtocol()).isEqualTo("cpu,host=b idle=4.0,user=3.0 2000000000");
+  }
+
+  @Test
+  public void testBatchPointsTags() {
+    CompactPoint compact = CompactPoint.builder("cpu").tag("host", "a").field("value", 1.0).time(1, TimeUnit.NANOSECONDS).build();
+    BatchPoints batchPoints = BatchPoints.database("db").tag("region", "eu").tag("az", "1").build();
+    batchPoints.point(compact);
+
+    assertThat(batchPoints.lineProtocol()).isEqualTo("cpu,az=1,host=a,region=eu value=1.0 1\n");
+  }
+
+  @Test
+  public void testSeriesKeyCache() {
+    SeriesKeyCache cache = new SeriesKeyCache(16);
+    LineProtocolEncoder encoder = new LineProtocolEncoder(64, cache);
+    CompactPoint.Builder builder = CompactPoint.builder("cpu");
+    for (int i = 0; i < 3; i++) {
+      CompactPoint compact = builder.reset().tag("host", "a").field("value", i).time(i, TimeUnit.NANOSECONDS).build();
+      encoder.reset().encode(compact);
+      assertThat(encoder.toString()).isEqualTo("cpu,host=a value=" + i + ".0 " + i);
+    }
+    // a Point of the same series uses the same cache entry
+    encoder.reset().encode(Point.measurement("cpu").tag("host", "a").field("value", 3).time(3, TimeUnit.NANOSECONDS).build());
+    assertThat(encoder.toString()).isEqualTo("cpu,host=a value=3.0 3");
+
+    assertThat(cache.getMissCount()).isEqualTo(1);
+    assertThat(cache.getHitCount()).isEqualTo(3);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testBuildWithoutFieldsThrowsAnError() {
+    CompactPoint.builder("nofields").tag("host", "a").build();
+  }
+
+}
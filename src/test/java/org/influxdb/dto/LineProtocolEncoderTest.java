@@ -0,0 +1,90 @@
+package org.influxdb.dto;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.testng.annotations.Test;
+
+/**
+ * Test for the LineProtocolEncoder.
+ *
+ */
+public class LineProtocolEncoderTest {
+
+  @Test
+  public void testEncodeMatchesLineProtocol() {
+    Point[] points = new Point[]{
+      Point.measurement("test").time(1, TimeUnit.NANOSECONDS).field("a", 1).build(),
+      Point.measurement("test,1 2=3").time(1, TimeUnit.MICROSECONDS).field("a", 1.5d).build(),
+      Point.measurement("test").time(1, TimeUnit.MILLISECONDS).tag("foo", "bar baz,qux=quux").field("a", "A\"B").build(),
+      Point.measurement("inttest").useInteger(true).time(1, TimeUnit.SECONDS).field("a", 42L).field("b", -7).build(),
+      Point.measurement("inttest").useInteger(true).time(1, TimeUnit.SECONDS).field("a", BigInteger.TEN.pow(30)).build(),
+      Point.measurement("numbers").time(1, TimeUnit.NANOSECONDS)
+      .field("byte", (byte) -100)
+      .field("short", (short) 12345)
+      .field("long", Long.MIN_VALUE)
+      .field("float", 0.1f)
+      .field("double", 1e-20)
+      .field("bigDecimal", new BigDecimal("1.50"))
+      .field("bool", true)
+      .build(),
+      Point.measurement("utf8 é€😀").time(1, TimeUnit.NANOSECONDS)
+      .tag("tég", "välüe")
+      .field("f", "中文 \"x\"")
+      .build()
+    };
+
+    String[] expected = new String[]{
+      "test a=1.0 1",
+      "test\\,1\\ 2\\=3 a=1.5 1000",
+      "test,foo=bar\\ baz\\,qux\\=quux a=\"A\\\"B\" 1000000",
+      "inttest a=42i,b=-7i 1000000000",
+      "inttest a=1000000000000000000000000000000i 1000000000",
+      "numbers bigDecimal=1.5,bool=true,byte=-100.0,double=1e-20,float=0.1,"
+      + "long=-9223372036854775808.0,short=12345.0 1",
+      "utf8\\ é€😀,tég=välüe f=\"中文 \\\"x\\\"\" 1"
+    };
+
+    LineProtocolEncoder encoder = new LineProtocolEncoder(16);
+    for (int i = 0; i < points.length; i++) {
+      encoder.reset().encode(points[i]);
+      assertThat(encoder.toByteArray()).isEqualTo(expected[i].getBytes(StandardCharsets.UTF_8));
+      assertThat(points[i].lineProtocol()).isEqualTo(expected[i]);
+    }
+  }
+
+  @Test
+  public void testEncodeBatchPoints() {
+    BatchPoints batchPoints = BatchPoints.database("db").tag("region", "us-west").build();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      Point point = Point.measurement("cpu").tag("host", "server" + i).field("value", i * 0.5).time(i, TimeUnit.SECONDS).build();
+      batchPoints.point(point);
+      expected.append(point.lineProtocol()).append("\n");
+    }
+
+    LineProtocolEncoder encoder = new LineProtocolEncoder(16).encode(batchPoints);
+    assertThat(encoder.toString()).isEqualTo(expected.toString());
+    assertThat(encoder.size()).isEqualTo(expected.toString().getBytes(StandardCharsets.UTF_8).length);
+    assertThat(batchPoints.lineProtocol()).isEqualTo(expected.toString());
+  }
+
+  @Test
+  public void testResetReusesBuffer() {
+    Point point = Point.measurement("cpu").tag("host", "server01").field("value", 0.64).time(1, TimeUnit.SECONDS).build();
+    LineProtocolEncoder encoder = new LineProtocolEncoder(16);
+    encoder.encodeLine(point);
+    byte[] grown = encoder.array();
+    int size = encoder.size();
+
+    for (int i = 0; i < 10; i++) {
+      encoder.reset().encodeLine(point);
+      assertThat(encoder.array()).isSameAs(grown);
+      assertThat(encoder.size()).isEqualTo(size);
+    }
+    assertThat(encoder.toString()).isEqualTo("cpu,host=server01 value=0.64 1000000000\n");
+  }
+
+}
@@ -0,0 +1,77 @@
+package org.influxdb.dto;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the NumberFormat based field formatting Point used to do with NumberFormatter.
+ *
+ * Not part of the test suite, run it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.influxdb.dto.NumberFormatterBenchmark}
+ *
+ */
+public class NumberFormatterBenchmark {
+
+  private static final int VALUES = 1 << 16;
+  private static final int ROUNDS = 20;
+
+  public static void main(String[] args) {
+    Random random = new Random(42);
+    double[] values = new double[VALUES];
+    for (int i = 0; i < VALUES; i++) {
+      // a mix of typical metric values and arbitrary doubles
+      switch (i % 3) {
+        case 0:
+          values[i] = random.nextInt(10000) / 100.0;
+          break;
+        case 1:
+          values[i] = random.nextDouble() * 100;
+          break;
+        default:
+          values[i] = Double.longBitsToDouble(random.nextLong() & 0x7fefffffffffffffL);
+      }
+    }
+
+    for (int round = 0; round < ROUNDS; round++) {
+      long numberFormatNanos = numberFormat(values);
+      long numberFormatterNanos = numberFormatter(values);
+      System.out.println(String.format("round %2d: NumberFormat %6d ns/value, NumberFormatter %4d ns/value",
+              round, numberFormatNanos / VALUES, numberFormatterNanos / VALUES));
+    }
+  }
+
+  private static long numberFormat(final double[] values) {
+    long start = System.nanoTime();
+    long bytes = 0;
+    for (double value : values) {
+      // as Point.concatenateFields() did for every Point
+      NumberFormat numberFormat = NumberFormat.getInstance(Locale.ENGLISH);
+      numberFormat.setMaximumFractionDigits(340);
+      numberFormat.setGroupingUsed(false);
+      numberFormat.setMinimumFractionDigits(1);
+      bytes += numberFormat.format(value).length();
+    }
+    consume(bytes);
+    return System.nanoTime() - start;
+  }
+
+  private static long numberFormatter(final double[] values) {
+    long start = System.nanoTime();
+    long bytes = 0;
+    byte[] buf = new byte[NumberFormatter.MAX_LENGTH];
+    for (double value : values) {
+      bytes += NumberFormatter.writeDouble(value, buf, 0);
+    }
+    consume(bytes);
+    return System.nanoTime() - start;
+  }
+
+  private static void consume(final long bytes) {
+    if (bytes == 42) {
+      System.out.println(TimeUnit.NANOSECONDS);
+    }
+  }
+
+}
@@ -0,0 +1,164 @@
+package org.influxdb.dto;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.testng.annotations.Test;
+
+/**
+ * Test for the NumberFormatter.
+ *
+ */
+public class NumberFormatterTest {
+
+  private static final int RANDOM_SAMPLES = 100000;
+
+  @Test
+  public void testDoubleNotation() {
+    assertThat(NumberFormatter.toString(0.0d)).isEqualTo("0.0");
+    assertThat(NumberFormatter.toString(-0.0d)).isEqualTo("-0.0");
+    assertThat(NumberFormatter.toString(1.0d)).isEqualTo("1.0");
+    assertThat(NumberFormatter.toString(-42.0d)).isEqualTo("-42.0");
+    assertThat(NumberFormatter.toString(0.1d)).isEqualTo("0.1");
+    assertThat(NumberFormatter.toString(0.64d)).isEqualTo("0.64");
+    assertThat(NumberFormatter.toString(100000000.0001d)).isEqualTo("100000000.0001");
+    assertThat(NumberFormatter.toString(1e-6d)).isEqualTo("0.000001");
+    assertThat(NumberFormatter.toString(1e-7d)).isEqualTo("1e-7");
+    assertThat(NumberFormatter.toString(1.5e-7d)).isEqualTo("1.5e-7");
+    assertThat(NumberFormatter.toString(1e20d)).isEqualTo("100000000000000000000.0");
+    assertThat(NumberFormatter.toString(1e21d)).isEqualTo("1e21");
+    assertThat(NumberFormatter.toString(1e23d)).isEqualTo("1e23");
+    assertThat(NumberFormatter.toString(Double.MAX_VALUE)).isEqualTo("1.7976931348623157e308");
+    assertThat(NumberFormatter.toString(Double.MIN_NORMAL)).isEqualTo("2.2250738585072014e-308");
+    assertThat(NumberFormatter.toString(Double.MIN_VALUE)).isEqualTo("4.9e-324");
+    assertThat(NumberFormatter.toString(Double.NaN)).isEqualTo("NaN");
+    assertThat(NumberFormatter.toString(Double.NEGATIVE_INFINITY)).isEqualTo("-Infinity");
+  }
+
+  @Test
+  public void testFloatNotation() {
+    assertThat(NumberFormatter.toString(0.1f)).isEqualTo("0.1");
+    assertThat(NumberFormatter.toString(-1.0f)).isEqualTo("-1.0");
+    assertThat(NumberFormatter.toString(3.4e10f)).isEqualTo("34000000000.0");
+    assertThat(NumberFormatter.toString(Float.MAX_VALUE)).isEqualTo("3.4028235e38");
+    assertThat(NumberFormatter.toString(Float.MIN_NORMAL)).isEqualTo("1.1754944e-38");
+    assertThat(NumberFormatter.toString(Float.MIN_VALUE)).isEqualTo("1.4e-45");
+  }
+
+  @Test
+  public void testLong() {
+    long[] values = {0, 1, -1, 9, 10, 99, 100, 123456789, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+    byte[] buf = new byte[NumberFormatter.MAX_LENGTH];
+    for (long value : values) {
+      int length = NumberFormatter.writeLong(value, buf, 0);
+      assertThat(new String(buf, 0, length, StandardCharsets.US_ASCII)).isEqualTo(Long.toString(value));
+    }
+    Random random = new Random(1);
+    for (int i = 0; i < RANDOM_SAMPLES; i++) {
+      long value = random.nextLong() >> random.nextInt(64);
+      int length = NumberFormatter.writeLong(value, buf, 0);
+      assertThat(new String(buf, 0, length, StandardCharsets.US_ASCII)).isEqualTo(Long.toString(value));
+    }
+  }
+
+  @Test
+  public void testDoubleRoundTrip() {
+    double[] values = {1.0, 0.3, 2.0 / 3, 4.35, 1e23, 2.82879384806159E17, 9007199254740993.0, 5e-324, 1e-323,
+      Double.MIN_NORMAL, Double.MAX_VALUE, Math.PI, Math.E};
+    for (double value : values) {
+      assertShortestDouble(value);
+      assertShortestDouble(-value);
+    }
+    for (int e = -324; e <= 308; e++) {
+      assertShortestDouble(Double.parseDouble("1e" + e));
+    }
+    for (int e = -1074; e <= 1023; e++) {
+      assertShortestDouble(Math.scalb(1.0, e));
+    }
+    Random random = new Random(42);
+    for (int i = 0; i < RANDOM_SAMPLES; i++) {
+      double value = Double.longBitsToDouble(random.nextLong());
+      if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+        assertRoundTripDouble(value);
+      }
+      assertRoundTripDouble(random.nextDouble() * 1000);
+      assertRoundTripDouble(random.nextInt(100000) / 100.0);
+    }
+  }
+
+  @Test
+  public void testDoubleShortest() {
+    Random random = new Random(43);
+    for (int i = 0; i < RANDOM_SAMPLES / 50; i++) {
+      double value = Double.longBitsToDouble(random.nextLong());
+      if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+        assertShortestDouble(value);
+      }
+    }
+  }
+
+  @Test
+  public void testFloatRoundTrip() {
+    for (int e = -149; e <= 127; e++) {
+      assertShortestFloat(Math.scalb(1.0f, e));
+    }
+    Random random = new Random(44);
+    for (int i = 0; i < RANDOM_SAMPLES; i++) {
+      float value = Float.intBitsToFloat(random.nextInt());
+      if (Float.isNaN(value) || Float.isInfinite(value)) {
+        continue;
+      }
+      String formatted = NumberFormatter.toString(value);
+      assertThat(Float.parseFloat(formatted)).as(formatted).isEqualTo(value);
+      if (Math.abs(value) >= Float.MIN_NORMAL) {
+        assertThat(significantDigits(formatted)).as(formatted).isLessThanOrEqualTo(significantDigits(Float.toString(value)));
+      }
+    }
+  }
+
+  private static void assertRoundTripDouble(final double value) {
+    String formatted = NumberFormatter.toString(value);
+    assertThat(Double.parseDouble(formatted)).as(formatted).isEqualTo(value);
+    // Double.toString is not always the shortest before JDK 19, it is never shorter for normal values
+    if (Math.abs(value) >= Double.MIN_NORMAL) {
+      assertThat(significantDigits(formatted)).as(formatted).isLessThanOrEqualTo(significantDigits(Double.toString(value)));
+    }
+  }
+
+  private static void assertShortestDouble(final double value) {
+    assertRoundTripDouble(value);
+    String formatted = NumberFormatter.toString(value);
+    int digits = significantDigits(formatted);
+    // the smallest subnormals keep a second digit to stay close to the exact value
+    if (digits > 1 && Math.abs(value) >= Double.MIN_NORMAL) {
+      BigDecimal exact = new BigDecimal(value);
+      assertThat(exact.round(new MathContext(digits - 1, RoundingMode.FLOOR)).doubleValue()).as(formatted).isNotEqualTo(value);
+      assertThat(exact.round(new MathContext(digits - 1, RoundingMode.CEILING)).doubleValue()).as(formatted).isNotEqualTo(value);
+    }
+  }
+
+  private static void assertShortestFloat(final float value) {
+    String formatted = NumberFormatter.toString(value);
+    assertThat(Float.parseFloat(formatted)).as(formatted).isEqualTo(value);
+    int digits = significantDigits(formatted);
+    if (digits > 1 && Math.abs(value) >= Float.MIN_NORMAL) {
+      BigDecimal exact = new BigDecimal(value);
+      assertThat(exact.round(new MathContext(digits - 1, RoundingMode.FLOOR)).floatValue()).as(formatted).isNotEqualTo(value);
+      assertThat(exact.round(new MathContext(digits - 1, RoundingMode.CEILING)).floatValue()).as(formatted).isNotEqualTo(value);
+    }
+  }
+
+  private static int significantDigits(final String formatted) {
+    String mantissa = formatted.toLowerCase();
+    int exponent = mantissa.indexOf('e');
+    if (exponent >= 0) {
+      mantissa = mantissa.substring(0, exponent);
+    }
+    mantissa = mantissa.replace("-", "").replace(".", "").replaceAll("^0+", "").replaceAll("0+$", "");
+    return Math.max(1, mantissa.length());
+  }
+
+}
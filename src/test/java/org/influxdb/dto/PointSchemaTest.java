@@ -0,0 +1,91 @@
+package org.influxdb.dto;
+
+import java.util.concurrent.TimeUnit;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.testng.annotations.Test;
+
+/**
+ * Test for the PointSchema.
+ *
+ */
+public class PointSchemaTest {
+
+  @Test
+  public void testLineProtocolMatchesPoint() {
+    PointSchema schema = PointSchema.measurement("cpu load")
+            .tags("region", "host")
+            .fields("value", "idle")
+            .precision(TimeUnit.SECONDS)
+            .build();
+    Point point = Point.measurement("cpu load")
+            .tag("region", "us,west")
+            .tag("host", "server 01")
+            .field("value", 0.64)
+            .field("idle", 1.0)
+            .time(1452129125, TimeUnit.SECONDS)
+            .build();
+
+    Point encoded = schema.point(new String[]{"us,west", "server 01"}, new double[]{0.64, 1.0}, 1452129125);
+    assertThat(encoded.lineProtocol()).isEqualTo(point.lineProtocol());
+    assertThat(encoded.lineProtocol())
+            .isEqualTo("cpu\\ load,host=server\\ 01,region=us\\,west idle=1.0,value=0.64 1452129125000000000");
+  }
+
+  @Test
+  public void testBatchPrecision() {
+    PointSchema schema = PointSchema.measurement("cpu").fields("value").precision(TimeUnit.MILLISECONDS).build();
+    BatchPoints batchPoints = BatchPoints.database("db").precision(TimeUnit.SECONDS).build();
+    batchPoints.point(schema.point(new String[0], new double[]{1}, 1452129125999L));
+    batchPoints.point(Point.measurement("cpu").field("value", 2.0).time(1452129126, TimeUnit.SECONDS).build());
+    batchPoints.point(schema.point(new String[0], new double[]{3}, -1500));
+
+    assertThat(batchPoints.lineProtocol()).isEqualTo("cpu value=1.0 1452129125\ncpu value=2.0 1452129126\ncpu value=3.0 -1\n");
+  }
+
+  @Test
+  public void testIntegerFields() {
+    PointSchema schema = PointSchema.measurement("mem")
+            .fields("used")
+            .integerFields("free", "buffers")
+            .build();
+
+    Point encoded = schema.point(new String[0], new double[]{0.5}, new long[]{10, -2}, 1);
+    assertThat(encoded.lineProtocol()).isEqualTo("mem buffers=-2i,free=10i,used=0.5 1");
+  }
+
+  @Test
+  public void testBatchPoints() {
+    PointSchema schema = PointSchema.measurement("cpu").tags("host").fields("value").build();
+    BatchPoints batchPoints = BatchPoints.database("db").build();
+    batchPoints.point(schema.point(new String[]{"a"}, new double[]{1.0}, 1));
+    batchPoints.point(schema.point(new String[]{"b"}, new double[]{2.0}, 2));
+
+    assertThat(batchPoints.lineProtocol()).isEqualTo("cpu,host=a value=1.0 1\ncpu,host=b value=2.0 2\n");
+  }
+
+  @Test
+  public void testBatchPointsTagsAreMerged() {
+    PointSchema schema = PointSchema.measurement("cpu load").tags("host", "zone").fields("value").build();
+    BatchPoints batchPoints = BatchPoints.database("db").tag("region", "eu,west").tag("zone", "b").build();
+    batchPoints.point(schema.point(new String[]{"server 01", "a"}, new double[]{1.0}, 1));
+    batchPoints.point(PointSchema.measurement("mem").fields("free").build().point(new String[0], new double[]{2.0}, 2));
+
+    Point expected = Point.measurement("cpu load").tag("host", "server 01").tag("region", "eu,west").tag("zone", "b")
+            .field("value", 1.0).time(1, TimeUnit.NANOSECONDS).build();
+    assertThat(batchPoints.lineProtocol()).isEqualTo(expected.lineProtocol()
+            + "\nmem,region=eu\\,west,zone=b free=2.0 2\n");
+    assertThat(batchPoints.getPoints().get(0).getTags()).containsEntry("host", "server 01").containsEntry("zone", "b");
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testWrongNumberOfValuesThrowsAnError() {
+    PointSchema schema = PointSchema.measurement("cpu").tags("host").fields("value").build();
+    schema.point(new String[]{"a", "b"}, new double[]{1.0}, 1);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testDuplicateNamesThrowsAnError() {
+    PointSchema.measurement("cpu").fields("value").integerFields("value").build();
+  }
+
+}
@@ -135,7 +135,7 @@ public class PointTest {
 
     Float floatNumber = Float.valueOf(0.1f);
     point = Point.measurement("test").time(1, TimeUnit.NANOSECONDS).field("a", floatNumber).build();
-    assertThat(point.lineProtocol()).asString().startsWith("test a=0.10");
+    assertThat(point.lineProtocol()).asString().isEqualTo("test a=0.1 1");
 
     BigDecimal bigDecimalNumber = BigDecimal.valueOf(100000000.00000001);
     point = Point.measurement("test").time(1, TimeUnit.NANOSECONDS).field("a", bigDecimalNumber).build();
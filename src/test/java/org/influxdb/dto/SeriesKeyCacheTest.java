@@ -0,0 +1,72 @@
+package org.influxdb.dto;
+
+import java.util.concurrent.TimeUnit;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.testng.annotations.Test;
+
+/**
+ * Test for the SeriesKeyCache.
+ *
+ */
+public class SeriesKeyCacheTest {
+
+  @Test
+  public void testCachedSeriesKeyMatchesLineProtocol() {
+    SeriesKeyCache cache = new SeriesKeyCache(16);
+    LineProtocolEncoder encoder = new LineProtocolEncoder(64, cache);
+
+    Point point = Point.measurement("cpu load").tag("host", "server 01").tag("region", "us,west").field("value", 0.64)
+            .time(1, TimeUnit.SECONDS).build();
+    for (int i = 0; i < 3; i++) {
+      encoder.reset().encode(point);
+      assertThat(encoder.toString()).isEqualTo("cpu\\ load,host=server\\ 01,region=us\\,west value=0.64 1000000000");
+    }
+
+    assertThat(cache.getMissCount()).isEqualTo(1);
+    assertThat(cache.getHitCount()).isEqualTo(2);
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void testDifferentTagsAreDifferentSeries() {
+    SeriesKeyCache cache = new SeriesKeyCache(16);
+    LineProtocolEncoder encoder = new LineProtocolEncoder(64, cache);
+
+    Point[] points = new Point[]{
+      Point.measurement("cpu").tag("host", "a").field("value", 1).time(1, TimeUnit.SECONDS).build(),
+      Point.measurement("cpu").tag("host", "b").field("value", 1).time(1, TimeUnit.SECONDS).build(),
+      Point.measurement("cpu").tag("hostname", "a").field("value", 1).time(1, TimeUnit.SECONDS).build(),
+      Point.measurement("cpu").tag("host", "a").tag("region", "eu").field("value", 1).time(1, TimeUnit.SECONDS).build(),
+      Point.measurement("mem").tag("host", "a").field("value", 1).time(1, TimeUnit.SECONDS).build(),
+      Point.measurement("mem").field("value", 1).time(1, TimeUnit.SECONDS).build()
+    };
+    for (int round = 0; round < 2; round++) {
+      for (Point point : points) {
+        encoder.reset().encode(point);
+        assertThat(encoder.toString()).isEqualTo(point.lineProtocol());
+      }
+    }
+    assertThat(cache.getMissCount() + cache.getHitCount()).isEqualTo(2 * points.length);
+  }
+
+  @Test
+  public void testSizeIsBounded() {
+    SeriesKeyCache cache = new SeriesKeyCache(5);
+    assertThat(cache.getMaxEntries()).isEqualTo(8);
+
+    LineProtocolEncoder encoder = new LineProtocolEncoder(64, cache);
+    for (int i = 0; i < 1000; i++) {
+      Point point = Point.measurement("cpu").tag("host", "server" + i).field("value", i).time(i, TimeUnit.SECONDS).build();
+      encoder.reset().encode(point);
+      assertThat(encoder.toString()).isEqualTo(point.lineProtocol());
+    }
+
+    assertThat(cache.size()).isLessThanOrEqualTo(8);
+    assertThat(cache.getMissCount()).isEqualTo(1000);
+    assertThat(cache.getEvictionCount()).isEqualTo(1000 - cache.size());
+
+    cache.clear();
+    assertThat(cache.size()).isEqualTo(0);
+  }
+
+}